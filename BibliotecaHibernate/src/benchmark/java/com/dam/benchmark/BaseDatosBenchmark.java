@@ -0,0 +1,128 @@
+package com.dam.benchmark;
+
+import com.dam.gestion.ImportadorCatalogo;
+import com.dam.util.HibernateUtil;
+
+import org.hibernate.Session;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Base de datos H2 en memoria compartida por todos los benchmarks de una ejecución (un fork).
+ * Se siembra con ImportadorCatalogo a partir de un fichero generado con el volumen indicado por los @Param:
+ *   java -jar target/benchmarks.jar -p autores=20000 -p librosPorAutor=5 -p ejemplaresPorLibro=10
+ */
+@State(Scope.Benchmark)
+public class BaseDatosBenchmark {
+
+  @Param("1000")
+  public int autores;
+
+  @Param("5")
+  public int librosPorAutor;
+
+  @Param("4")
+  public int ejemplaresPorLibro;
+
+  // Contador para generar ISBN y códigos únicos en los benchmarks que insertan
+  private final AtomicLong secuencia = new AtomicLong();
+
+  private PrintStream salidaOriginal;
+  private int minIdLibro;
+  private int maxIdLibro;
+  private int minIdAutor;
+  private int maxIdAutor;
+
+  @Setup(Level.Trial)
+  public void arrancar() throws IOException {
+    if (System.getProperty(HibernateUtil.PROPIEDAD_CONFIGURACION) == null) {
+      System.setProperty(HibernateUtil.PROPIEDAD_CONFIGURACION, "hibernate-h2.cfg.xml");
+    }
+
+    // Los métodos de GestionBiblioteca imprimen por consola: se descarta la salida para medir solo la operación
+    salidaOriginal = System.out;
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+    Path fichero = Files.createTempFile("catalogo-benchmark", ".txt");
+    try {
+      generarCatalogo(fichero);
+      new ImportadorCatalogo().importar(fichero);
+    } finally {
+      Files.deleteIfExists(fichero);
+    }
+
+    try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+      Object[] libros = session.createQuery("SELECT MIN(l.idLibro), MAX(l.idLibro) FROM Libro l", Object[].class).uniqueResult();
+      Object[] autoresIds = session.createQuery("SELECT MIN(a.idAutor), MAX(a.idAutor) FROM Autor a", Object[].class).uniqueResult();
+      minIdLibro = (Integer) libros[0];
+      maxIdLibro = (Integer) libros[1];
+      minIdAutor = (Integer) autoresIds[0];
+      maxIdAutor = (Integer) autoresIds[1];
+    }
+    HibernateUtil.getEstadisticasBiblioteca().conciliar();
+    HibernateUtil.getIndiceBusqueda().reconstruir();
+    HibernateUtil.getDisponibilidadLibros().reconstruir();
+  }
+
+  @TearDown(Level.Trial)
+  public void parar() {
+    System.setOut(salidaOriginal);
+    HibernateUtil.shutdown();
+  }
+
+  private void generarCatalogo(Path fichero) throws IOException {
+    try (BufferedWriter escritor = Files.newBufferedWriter(fichero, StandardCharsets.UTF_8)) {
+      for (int a = 0; a < autores; a++) {
+        escritor.write("AUTOR;Nombre" + a + ";Apellido" + a + ";Nacionalidad" + (a % 20) + ";01/01/1970\n");
+        for (int l = 0; l < librosPorAutor; l++) {
+          escritor.write("LIBRO;Titulo " + a + "-" + l + ";ISBN-" + a + "-" + l + ";01/01/2000;" + (100 + l) + "\n");
+          for (int e = 0; e < ejemplaresPorLibro; e++) {
+            escritor.write("EJEMPLAR;" + codigoEjemplar(a, l, e) + ";DISPONIBLE;Estantería " + (e % 10) + "\n");
+          }
+        }
+      }
+    }
+  }
+
+  // DATOS ALEATORIOS DEL CATÁLOGO SEMBRADO
+
+  public static String codigoEjemplar(int autor, int libro, int ejemplar) {
+    return "EJ-" + autor + "-" + libro + "-" + ejemplar;
+  }
+
+  public String codigoEjemplarAleatorio() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    return codigoEjemplar(random.nextInt(autores), random.nextInt(librosPorAutor), random.nextInt(ejemplaresPorLibro));
+  }
+
+  public String isbnAleatorio() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    return "ISBN-" + random.nextInt(autores) + "-" + random.nextInt(librosPorAutor);
+  }
+
+  public int idLibroAleatorio() {
+    return ThreadLocalRandom.current().nextInt(minIdLibro, maxIdLibro + 1);
+  }
+
+  public int idAutorAleatorio() {
+    return ThreadLocalRandom.current().nextInt(minIdAutor, maxIdAutor + 1);
+  }
+
+  public long siguiente() {
+    return secuencia.incrementAndGet();
+  }
+}
@@ -0,0 +1,67 @@
+package com.dam.benchmark;
+
+import com.dam.gestion.BibliotecaAsincrona;
+import com.dam.gestion.ConsultasBiblioteca;
+import com.dam.gestion.ConsultasBiblioteca.PlanCargaLibro;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pantalla "agregada" (ficha de dos libros y primera página de autores): lecturas independientes hechas una tras
+ * otra frente a lanzadas a la vez con BibliotecaAsincrona. Sin caché de segundo nivel, para medir ida y vuelta a la BD.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dbiblioteca.hibernate.cfg=hibernate-h2.cfg.xml", "-Dhibernate.cache.use_second_level_cache=false",
+  "-Dhibernate.cache.use_query_cache=false"})
+@State(Scope.Benchmark)
+public class BibliotecaAsincronaBenchmark {
+
+  private final ConsultasBiblioteca consultas = new ConsultasBiblioteca();
+  private BibliotecaAsincrona asincrona;
+
+  @Setup(Level.Trial)
+  public void arrancar(BaseDatosBenchmark bd) {
+    asincrona = new BibliotecaAsincrona();
+  }
+
+  @TearDown(Level.Trial)
+  public void parar() {
+    asincrona.close();
+  }
+
+  @Benchmark
+  public void pantallaSecuencial(BaseDatosBenchmark bd, Blackhole blackhole) {
+    blackhole.consume(consultas.buscarLibroPorId(bd.idLibroAleatorio()));
+    blackhole.consume(consultas.buscarLibroPorId(bd.idLibroAleatorio(), PlanCargaLibro.RESUMEN));
+    blackhole.consume(consultas.listarAutoresResumen(null, 50));
+  }
+
+  @Benchmark
+  public void pantallaEnParalelo(BaseDatosBenchmark bd, Blackhole blackhole) {
+    CompletableFuture<?> libro = asincrona.buscarLibroPorId(bd.idLibroAleatorio());
+    CompletableFuture<?> relacionado = asincrona.buscarLibroPorId(bd.idLibroAleatorio(), PlanCargaLibro.RESUMEN);
+    CompletableFuture<?> autores = asincrona.listarAutoresResumen(null, 50);
+    CompletableFuture.allOf(libro, relacionado, autores).join();
+    blackhole.consume(libro.join());
+    blackhole.consume(relacionado.join());
+    blackhole.consume(autores.join());
+  }
+}
@@ -0,0 +1,87 @@
+package com.dam.benchmark;
+
+import com.dam.dto.DisponibilidadLibro;
+import com.dam.dto.EjemplarResumen;
+import com.dam.gestion.ConsultasBiblioteca;
+import com.dam.modelo.Ejemplar.EstadoEjemplar;
+import com.dam.modelo.Libro;
+import com.dam.util.DisponibilidadLibros;
+import com.dam.util.HibernateUtil;
+
+import org.hibernate.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * "¿Hay algún ejemplar disponible de este libro?" y "¿cuántos hay en cada estado?", resueltos de cuatro formas:
+ *   - memoria*:        DisponibilidadLibros (mapa primitivo mantenido por listeners, sin SQL)
+ *   - entidadCacheada: Libro desde la caché de segundo nivel y sus contadores
+ *   - contadoresSql:   ConsultasBiblioteca.consultarDisponibilidad (SELECT por clave de los contadores)
+ *   - fichaCompleta:   el camino sin contadores: la ficha con sus ejemplares y un filtro en Java
+ * Con -prof gc se ve además la memoria asignada por operación (cero en las de memoria).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dbiblioteca.hibernate.cfg=hibernate-h2.cfg.xml")
+@State(Scope.Benchmark)
+public class DisponibilidadBenchmark {
+  // values() crea un array en cada llamada: se guarda para no medir esa asignación
+  private static final EstadoEjemplar[] ESTADOS = EstadoEjemplar.values();
+
+  private final ConsultasBiblioteca consultas = new ConsultasBiblioteca();
+  private DisponibilidadLibros disponibilidad;
+
+  @Setup(Level.Trial)
+  public void preparar(BaseDatosBenchmark bd) {
+    disponibilidad = HibernateUtil.getDisponibilidadLibros();
+  }
+
+  @Benchmark
+  public boolean memoriaHayDisponible(BaseDatosBenchmark bd) {
+    return disponibilidad.hayDisponible(bd.idLibroAleatorio());
+  }
+
+  @Benchmark
+  public void memoriaPorEstado(BaseDatosBenchmark bd, Blackhole blackhole) {
+    int idLibro = bd.idLibroAleatorio();
+    for (EstadoEjemplar estado : ESTADOS) {
+      blackhole.consume(disponibilidad.getEjemplares(idLibro, estado));
+    }
+  }
+
+  @Benchmark
+  public boolean entidadCacheadaHayDisponible(BaseDatosBenchmark bd) {
+    try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+      session.setDefaultReadOnly(true);
+      Libro libro = session.get(Libro.class, bd.idLibroAleatorio());
+      return libro != null && libro.getEjemplaresDisponibles() > 0;
+    }
+  }
+
+  @Benchmark
+  public Optional<DisponibilidadLibro> contadoresSql(BaseDatosBenchmark bd) {
+    return consultas.consultarDisponibilidad(bd.idLibroAleatorio());
+  }
+
+  @Benchmark
+  public long fichaCompletaDisponibles(BaseDatosBenchmark bd) {
+    return consultas.buscarLibroPorId(bd.idLibroAleatorio())
+      .map(libro -> libro.ejemplares().stream().map(EjemplarResumen::estado).filter(EstadoEjemplar.DISPONIBLE::equals).count())
+      .orElse(0L);
+  }
+}
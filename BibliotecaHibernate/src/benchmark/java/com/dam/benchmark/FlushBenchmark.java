@@ -0,0 +1,80 @@
+package com.dam.benchmark;
+
+import com.dam.modelo.Ejemplar;
+import com.dam.util.HibernateUtil;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coste del flush con una sesión grande: todos los autores, libros y ejemplares del catálogo sembrado
+ * (26.000 entidades con los @Param por defecto) gestionados por una única sesión con la transacción abierta.
+ *
+ * Sin mejora de bytecode, cada flush compara todas las entidades con su snapshot; con ella (perfil mejora-bytecode)
+ * cada entidad sabe qué atributos han cambiado y el flush solo mira las modificadas. Para comparar:
+ *   mvn -Pbenchmark clean package                && java -jar target/benchmarks.jar FlushBenchmark
+ *   mvn -Pbenchmark -Dsin-mejora clean package   && java -jar target/benchmarks.jar FlushBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dbiblioteca.hibernate.cfg=hibernate-h2.cfg.xml", "-Dhibernate.cache.use_second_level_cache=false"})
+@State(Scope.Benchmark)
+public class FlushBenchmark {
+
+  // Ejemplares que se modifican antes de cada flush con cambios
+  private static final int MODIFICADOS = 10;
+
+  private Session session;
+  private Transaction transaction;
+  private List<Ejemplar> ejemplares;
+  private long cambio;
+
+  @Setup(Level.Trial)
+  public void cargar(BaseDatosBenchmark bd) {
+    session = HibernateUtil.getSessionFactory().openSession();
+    transaction = session.beginTransaction();
+    session.createQuery("FROM Autor", Object.class).list();
+    session.createQuery("FROM Libro", Object.class).list();
+    ejemplares = session.createQuery("FROM Ejemplar", Ejemplar.class).list();
+  }
+
+  @TearDown(Level.Trial)
+  public void descartar() {
+    transaction.rollback();
+    session.close();
+  }
+
+  // Solo la comprobación de cambios: no hay nada que escribir
+  @Benchmark
+  public void flushSinCambios() {
+    session.flush();
+  }
+
+  // Unos pocos ejemplares modificados entre miles de entidades sin cambios
+  @Benchmark
+  public void flushConCambios() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (int i = 0; i < MODIFICADOS; i++) {
+      ejemplares.get(random.nextInt(ejemplares.size())).setUbicacion("Estantería " + (++cambio));
+    }
+    session.flush();
+  }
+}
@@ -0,0 +1,224 @@
+package com.dam.benchmark;
+
+import com.dam.dto.AutorResumen;
+import com.dam.dto.DisponibilidadLibro;
+import com.dam.dto.LibroDetalle;
+import com.dam.dto.Pagina;
+import com.dam.gestion.ConsultasBiblioteca;
+import com.dam.gestion.ConsultasBiblioteca.PlanCargaLibro;
+import com.dam.gestion.GestionBiblioteca;
+import com.dam.modelo.Autor;
+import com.dam.modelo.Ejemplar;
+import com.dam.modelo.Ejemplar.EstadoEjemplar;
+import com.dam.modelo.Libro;
+import com.dam.util.IndiceBusqueda.ResultadoBusqueda;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Un benchmark por operación de GestionBiblioteca y ConsultasBiblioteca, todos sobre el catálogo sembrado en BaseDatosBenchmark
+ * (cada método recibe ese estado, aunque no lo use, para que JMH siembre la base de datos antes de medir).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dbiblioteca.hibernate.cfg=hibernate-h2.cfg.xml")
+@State(Scope.Benchmark)
+public class GestionBibliotecaBenchmark {
+
+  // Tamaño del "carro de devoluciones" para comparar el cambio de estado por lotes con el uno a uno
+  private static final int TAMANO_CARRO = 500;
+  // Tamaño de página de los benchmarks de paginación de libros
+  private static final int TAMANO_PAGINA_LIBROS = 20;
+
+  private final GestionBiblioteca gestion = new GestionBiblioteca();
+  private final ConsultasBiblioteca consultas = new ConsultasBiblioteca();
+  // Token de la última página de libros, obtenido recorriendo el listado una vez antes de medir
+  private String tokenUltimaPaginaLibros;
+
+  @Setup(Level.Trial)
+  public void prepararPaginacion(BaseDatosBenchmark bd) {
+    Pagina<LibroDetalle> pagina = consultas.listarLibros(null, TAMANO_PAGINA_LIBROS);
+    while (pagina.hayMas()) {
+      tokenUltimaPaginaLibros = pagina.siguiente();
+      pagina = consultas.listarLibros(tokenUltimaPaginaLibros, TAMANO_PAGINA_LIBROS);
+    }
+  }
+
+  // CREATE
+
+  @Benchmark
+  public void crearAutorConLibros(BaseDatosBenchmark bd) {
+    gestion.crearAutorConLibros(nuevoAutor(bd, 3, 2));
+  }
+
+  @Benchmark
+  public void agregarEjemplarALibroExistente(BaseDatosBenchmark bd) {
+    gestion.agregarEjemplarALibroExistente(bd.isbnAleatorio(), "BENCH-" + bd.siguiente());
+  }
+
+  // READ
+
+  @Benchmark
+  public long listarTodosLosAutores(BaseDatosBenchmark bd, Blackhole blackhole) {
+    long total = 0;
+    Pagina<AutorResumen> pagina = consultas.listarAutoresResumen(null, ConsultasBiblioteca.TAMANO_PAGINA_AUTORES);
+    while (true) {
+      blackhole.consume(pagina.elementos());
+      total += pagina.elementos().size();
+      if (!pagina.hayMas()) {
+        break;
+      }
+      pagina = consultas.listarAutoresResumen(pagina.siguiente(), ConsultasBiblioteca.TAMANO_PAGINA_AUTORES);
+    }
+    return total;
+  }
+
+  // Paginación por clave: la primera página y la última deben costar lo mismo
+  @Benchmark
+  public Pagina<LibroDetalle> listarLibrosPrimeraPagina(BaseDatosBenchmark bd) {
+    return consultas.listarLibros(null, TAMANO_PAGINA_LIBROS);
+  }
+
+  @Benchmark
+  public Pagina<LibroDetalle> listarLibrosUltimaPagina(BaseDatosBenchmark bd) {
+    return consultas.listarLibros(tokenUltimaPaginaLibros, TAMANO_PAGINA_LIBROS);
+  }
+
+  @Benchmark
+  public Optional<LibroDetalle> buscarLibroPorId(BaseDatosBenchmark bd) {
+    return consultas.buscarLibroPorId(bd.idLibroAleatorio());
+  }
+
+  @Benchmark
+  public Optional<LibroDetalle> buscarLibroPorIdResumen(BaseDatosBenchmark bd) {
+    return consultas.buscarLibroPorId(bd.idLibroAleatorio(), PlanCargaLibro.RESUMEN);
+  }
+
+  // Disponibilidad desde los contadores del libro, frente a contar sus ejemplares con la ficha completa
+  @Benchmark
+  public Optional<DisponibilidadLibro> consultarDisponibilidad(BaseDatosBenchmark bd) {
+    return consultas.consultarDisponibilidad(bd.idLibroAleatorio());
+  }
+
+  @Benchmark
+  public long recorrerEjemplaresPorEstado(BaseDatosBenchmark bd, Blackhole blackhole) {
+    return consultas.recorrerEjemplaresPorEstado(EstadoEjemplar.DISPONIBLE, blackhole::consume);
+  }
+
+  // Búsqueda en el índice en memoria: un título concreto ("titulo 42") y un prefijo que casa con muchos autores
+  @Benchmark
+  public List<ResultadoBusqueda> buscarEnCatalogo(BaseDatosBenchmark bd) {
+    return consultas.buscarEnCatalogo("titulo " + ThreadLocalRandom.current().nextInt(bd.autores), 20);
+  }
+
+  @Benchmark
+  public List<ResultadoBusqueda> buscarEnCatalogoPorPrefijo(BaseDatosBenchmark bd) {
+    return consultas.buscarEnCatalogo("apellido" + ThreadLocalRandom.current().nextInt(10) + "*", 20);
+  }
+
+  @Benchmark
+  public void mostrarEstadisticas(BaseDatosBenchmark bd) {
+    gestion.mostrarEstadisticas();
+  }
+
+  // UPDATE
+
+  @Benchmark
+  public void actualizarEstadoEjemplar(BaseDatosBenchmark bd) {
+    gestion.actualizarEstadoEjemplar(bd.codigoEjemplarAleatorio(), estadoAleatorio(bd).name());
+  }
+
+  @Benchmark
+  public void actualizarEstadoEjemplaresUnoAUno(BaseDatosBenchmark bd) {
+    String estado = estadoAleatorio(bd).name();
+    for (String codigo : carro(bd)) {
+      gestion.actualizarEstadoEjemplar(codigo, estado);
+    }
+  }
+
+  @Benchmark
+  public Object actualizarEstadoEjemplaresPorLotes(BaseDatosBenchmark bd) {
+    return gestion.actualizarEstadoEjemplares(carro(bd), estadoAleatorio(bd));
+  }
+
+  @Benchmark
+  public void actualizarDatosLibro(BaseDatosBenchmark bd) {
+    gestion.actualizarDatosLibro(bd.idLibroAleatorio(), "Titulo " + bd.siguiente(), null);
+  }
+
+  // DELETE (cada invocación borra datos creados en su @Setup, fuera de la medición)
+
+  @State(Scope.Thread)
+  public static class AutorParaBorrar {
+    Autor autor;
+
+    @Setup(Level.Invocation)
+    public void crear(BaseDatosBenchmark bd) {
+      autor = nuevoAutor(bd, 5, 10);
+      new GestionBiblioteca().crearAutorConLibros(autor);
+    }
+  }
+
+  @Benchmark
+  public void eliminarEjemplar(AutorParaBorrar datos) {
+    gestion.eliminarEjemplar(datos.autor.getLibros().get(0).getEjemplares().get(0).getCodigoEjemplar());
+  }
+
+  @Benchmark
+  public void eliminarLibro(AutorParaBorrar datos) {
+    gestion.eliminarLibro(datos.autor.getLibros().get(0).getIdLibro());
+  }
+
+  @Benchmark
+  public void eliminarAutor(AutorParaBorrar datos) {
+    gestion.eliminarAutor(datos.autor.getIdAutor());
+  }
+
+  // DATOS
+
+  static Autor nuevoAutor(BaseDatosBenchmark bd, int libros, int ejemplaresPorLibro) {
+    long n = bd.siguiente();
+    Autor autor = new Autor("Bench", "Autor " + n, "Benchmark", null);
+    for (int l = 0; l < libros; l++) {
+      Libro libro = new Libro("Bench " + n + "-" + l, "BENCH-ISBN-" + n + "-" + l, null, 100);
+      for (int e = 0; e < ejemplaresPorLibro; e++) {
+        libro.addEjemplar(new Ejemplar("BENCH-" + n + "-" + l + "-" + e, EstadoEjemplar.DISPONIBLE, "Benchmark"));
+      }
+      autor.addLibro(libro);
+    }
+    return autor;
+  }
+
+  private static List<String> carro(BaseDatosBenchmark bd) {
+    List<String> codigos = new ArrayList<>(TAMANO_CARRO);
+    for (int i = 0; i < TAMANO_CARRO; i++) {
+      codigos.add(bd.codigoEjemplarAleatorio());
+    }
+    return codigos;
+  }
+
+  private static EstadoEjemplar estadoAleatorio(BaseDatosBenchmark bd) {
+    // Sin BAJA: es un estado final y dejaría ejemplares del catálogo inutilizables para el resto de la ejecución
+    EstadoEjemplar[] estados = {EstadoEjemplar.DISPONIBLE, EstadoEjemplar.PRESTADO, EstadoEjemplar.REPARACION};
+    return estados[(int) (bd.siguiente() % estados.length)];
+  }
+}
@@ -1,24 +1,85 @@
 package com.dam;
 
+import com.dam.dto.AutorResumen;
+import com.dam.dto.DisponibilidadLibro;
+import com.dam.dto.EjemplarResumen;
+import com.dam.dto.LibroDetalle;
+import com.dam.dto.Pagina;
+import com.dam.gestion.ConsultasBiblioteca;
 import com.dam.gestion.GestionBiblioteca;
+import com.dam.metricas.MetricasOperaciones;
+import com.dam.servidor.ServidorBiblioteca;
+import com.dam.gestion.ImportadorCatalogo;
+import com.dam.gestion.MotorPrestamos;
+import com.dam.gestion.ImportadorCatalogo.ResultadoImportacion;
+import com.dam.util.EstadisticasCache;
 import com.dam.util.HibernateUtil;
+import com.dam.util.IndiceBusqueda.ResultadoBusqueda;
+import com.dam.util.ProveedorConexionesMedido;
+import com.dam.util.ReplicasLectura.EstadoReplica;
 import com.dam.modelo.Autor;
 import com.dam.modelo.Libro;
 import com.dam.modelo.Ejemplar;
 import com.dam.modelo.Ejemplar.EstadoEjemplar;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Scanner;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.InputMismatchException;
 
 public class Main {
+  // Puerto por defecto del modo servidor (--servidor)
+  private static final int PUERTO_SERVIDOR = 8080;
+  // Resultados que se muestran en la búsqueda del catálogo (Opción 20)
+  private static final int RESULTADOS_BUSQUEDA = 20;
 
   public static void main(String[] args) {
-    // Inicializa la utilidad de Hibernate para configurar la SessionFactory
+    // Arranque para entrenar un archivo AppCDS: java -XX:ArchiveClassesAtExit=biblioteca.jsa ... com.dam.Main --solo-arranque
+    if (args.length > 0 && args[0].equals("--solo-arranque")) {
+      HibernateUtil.getSessionFactory();
+      mostrarFasesArranque();
+      HibernateUtil.shutdown();
+      return;
+    }
+
+    // La SessionFactory se construye en segundo plano mientras aparece el menú; la primera opción que
+    // acceda a la base de datos espera a que termine
     System.out.println("Iniciando conexión con Hibernate...");
-    HibernateUtil.getSessionFactory();
+    HibernateUtil.iniciarEnSegundoPlano();
+
+    // Volcado periódico de métricas por operación: -Dbiblioteca.metricas.intervalo=<segundos>
+    String intervaloMetricas = System.getProperty("biblioteca.metricas.intervalo");
+    if (intervaloMetricas != null) {
+      try {
+        MetricasOperaciones.iniciarVolcadoPeriodico(Duration.ofSeconds(Long.parseLong(intervaloMetricas)), System.out);
+      } catch (NumberFormatException e) {
+        System.err.println("Intervalo de métricas no válido: " + intervaloMetricas);
+      }
+    }
+
+    // Modo servidor: java ... com.dam.Main --servidor [puerto]
+    if (args.length > 0 && args[0].equals("--servidor")) {
+      int puerto = PUERTO_SERVIDOR;
+      if (args.length > 1) {
+        try {
+          puerto = Integer.parseInt(args[1]);
+        } catch (NumberFormatException e) {
+          System.err.println("Puerto no válido: " + args[1] + " (se usa " + PUERTO_SERVIDOR + ")");
+        }
+      }
+      iniciarServidor(puerto);
+      return;
+    }
 
     GestionBiblioteca gestion = new GestionBiblioteca();
+    ConsultasBiblioteca consultas = new ConsultasBiblioteca();
+    MotorPrestamos motorPrestamos = new MotorPrestamos();
     Scanner scanner = new Scanner(System.in);
     int opcion = -1;
 
@@ -39,13 +100,13 @@ public class Main {
             solicitarDatosEjemplar(gestion, scanner);
             break;
           case 3:
-            gestion.listarTodosLosAutores();
+            mostrarAutores(consultas);
             break;
           case 4:
-            solicitarDatosBusquedaLibro(gestion, scanner);
+            solicitarDatosBusquedaLibro(consultas, scanner);
             break;
           case 5:
-            solicitarDatosBusquedaEjemplarPorEstado(gestion, scanner);
+            solicitarDatosBusquedaEjemplarPorEstado(consultas, scanner);
             break;
           case 6:
             gestion.mostrarEstadisticas();
@@ -65,6 +126,42 @@ public class Main {
           case 11:
             solicitarDatosEliminarAutor(gestion, scanner);
             break;
+          case 12:
+            solicitarDatosImportacion(scanner);
+            break;
+          case 13:
+            mostrarEstadoPool();
+            break;
+          case 14:
+            mostrarEstadisticasCache();
+            break;
+          case 15:
+            solicitarDatosActualizacionEjemplares(gestion, scanner);
+            break;
+          case 16:
+            gestion.conciliarEstadisticas();
+            break;
+          case 17:
+            MetricasOperaciones.volcar(System.out);
+            break;
+          case 18:
+            solicitarDatosPrestamo(motorPrestamos, scanner, true);
+            break;
+          case 19:
+            solicitarDatosPrestamo(motorPrestamos, scanner, false);
+            break;
+          case 20:
+            solicitarDatosBusquedaCatalogo(consultas, scanner);
+            break;
+          case 21:
+            mostrarFasesArranque();
+            break;
+          case 22:
+            solicitarDatosDisponibilidad(consultas, scanner);
+            break;
+          case 23:
+            repararContadoresEjemplares(gestion);
+            break;
           case 0:
             System.out.println("\nCerrando aplicación...");
             break;
@@ -90,6 +187,7 @@ public class Main {
 
     } while (opcion != 0);
 
+    MetricasOperaciones.detenerVolcadoPeriodico();
     HibernateUtil.shutdown();
     scanner.close();
   }
@@ -107,6 +205,18 @@ public class Main {
     System.out.println(" 9. Eliminar ejemplar.");
     System.out.println("10. Eliminar libro.");
     System.out.println("11. Eliminar autor (con cascada).");
+    System.out.println("12. Importar catálogo desde fichero.");
+    System.out.println("13. Mostrar estado del pool de conexiones.");
+    System.out.println("14. Mostrar estadísticas de la caché.");
+    System.out.println("15. Actualizar estado de varios ejemplares.");
+    System.out.println("16. Conciliar estadísticas con la base de datos.");
+    System.out.println("17. Mostrar métricas por operación.");
+    System.out.println("18. Prestar ejemplar.");
+    System.out.println("19. Devolver ejemplar.");
+    System.out.println("20. Buscar en el catálogo (títulos y autores).");
+    System.out.println("21. Mostrar tiempos de arranque.");
+    System.out.println("22. Consultar disponibilidad de un libro.");
+    System.out.println("23. Reparar contadores de ejemplares de los libros.");
     System.out.println(" 0. Salir.");
     System.out.print("Seleccione una opción: ");
   }
@@ -237,29 +347,66 @@ public class Main {
   /**
    * Opción 4: Solicita el ID del libro.
    */
-  private static void solicitarDatosBusquedaLibro(GestionBiblioteca gestion, Scanner scanner) {
+  private static void solicitarDatosBusquedaLibro(ConsultasBiblioteca consultas, Scanner scanner) {
     try {
       System.out.print("Introduzca el ID del Libro a buscar: ");
       Integer idLibro = scanner.nextInt();
       scanner.nextLine();
 
-      gestion.buscarLibroPorId(idLibro);
+      Optional<LibroDetalle> libro = consultas.buscarLibroPorId(idLibro);
+      if (libro.isPresent()) {
+        mostrarLibro(libro.get());
+      } else {
+        System.out.println("No se encontró ningún libro con el ID: " + idLibro);
+      }
 
     } catch (InputMismatchException e) {
       System.err.println("Error: El ID del libro debe ser un número entero.");
       scanner.nextLine();
+    } catch (Exception e) {
+      System.err.println("Error al buscar libro por ID: " + e.getMessage());
     }
   }
 
   /**
    * Opción 5: Solicita el estado de los ejemplares a buscar.
    */
-  private static void solicitarDatosBusquedaEjemplarPorEstado(GestionBiblioteca gestion, Scanner scanner) {
+  private static void solicitarDatosBusquedaEjemplarPorEstado(ConsultasBiblioteca consultas, Scanner scanner) {
     System.out.println("Estados disponibles: DISPONIBLE, PRESTADO, REPARACION, BAJA");
     System.out.print("Introduzca el estado por el que desea buscar: ");
     String estadoStr = scanner.nextLine();
 
-    gestion.buscarEjemplaresPorEstado(estadoStr);
+    EstadoEjemplar estado;
+    try {
+      estado = EstadoEjemplar.valueOf(estadoStr.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      System.err.println("Error: El estado '" + estadoStr + "' no es válido. Opciones: DISPONIBLE, PRESTADO, REPARACION, BAJA.");
+      return;
+    }
+
+    try {
+      // La cabecera se imprime con la primera fila para poder avisar si no hay resultados
+      boolean[] cabeceraImpresa = {false};
+
+      long total = consultas.recorrerEjemplaresPorEstado(estado, ejemplar -> {
+        if (!cabeceraImpresa[0]) {
+          System.out.println("\n=== EJEMPLARES EN ESTADO: " + estado + " ===");
+          System.out.printf("%-15s | %-40s | %s\n", "CÓDIGO", "TÍTULO DEL LIBRO", "UBICACIÓN");
+          System.out.println("-------------------------------------------------------------------------");
+          cabeceraImpresa[0] = true;
+        }
+        System.out.printf("%-15s | %-40s | %s\n", ejemplar.codigoEjemplar(), ejemplar.tituloLibro(), ejemplar.ubicacion());
+      });
+
+      if (total == 0) {
+        System.out.println("No se encontraron ejemplares en estado: " + estado);
+        return;
+      }
+      System.out.println("=========================================================================");
+
+    } catch (Exception e) {
+      System.err.println("Error al buscar ejemplares por estado: " + e.getMessage());
+    }
   }
 
   /**
@@ -274,6 +421,41 @@ public class Main {
     gestion.actualizarEstadoEjemplar(codigoEjemplar, nuevoEstadoStr);
   }
 
+  /**
+   * Opción 15: Solicita una lista de códigos separados por comas y el nuevo estado común.
+   */
+  private static void solicitarDatosActualizacionEjemplares(GestionBiblioteca gestion, Scanner scanner) {
+    System.out.print("Introduzca los Códigos de Ejemplar separados por comas: ");
+    List<String> codigos = new ArrayList<>();
+    for (String codigo : scanner.nextLine().split(",")) {
+      if (!codigo.isBlank()) {
+        codigos.add(codigo.trim());
+      }
+    }
+    System.out.println("Estados disponibles: DISPONIBLE, PRESTADO, REPARACION, BAJA");
+    System.out.print("Introduzca el NUEVO estado: ");
+    String nuevoEstadoStr = scanner.nextLine();
+
+    EstadoEjemplar nuevoEstado;
+    try {
+      nuevoEstado = EstadoEjemplar.valueOf(nuevoEstadoStr.trim().toUpperCase());
+    } catch (IllegalArgumentException e) {
+      System.err.println("Error: El estado '" + nuevoEstadoStr + "' no es válido.");
+      return;
+    }
+
+    try {
+      Map<String, GestionBiblioteca.ResultadoCambioEstado> resultados = gestion.actualizarEstadoEjemplares(codigos, nuevoEstado);
+      System.out.println("\n=== RESULTADO DEL CAMBIO DE ESTADO A " + nuevoEstado + " ===");
+      for (Map.Entry<String, GestionBiblioteca.ResultadoCambioEstado> resultado : resultados.entrySet()) {
+        System.out.printf("%-15s | %s\n", resultado.getKey(), resultado.getValue());
+      }
+      System.out.println("===============================================");
+    } catch (Exception e) {
+      System.err.println("Error al actualizar los ejemplares: " + e.getMessage());
+    }
+  }
+
   private static void solicitarDatosActualizacionLibro(GestionBiblioteca gestion, Scanner scanner) {
     try {
       System.out.print("Introduzca el ID del Libro a actualizar: ");
@@ -326,4 +508,255 @@ public class Main {
       scanner.nextLine();
     }
   }
+
+  /**
+   * Opción 12: Solicita la ruta del fichero y lanza la importación masiva.
+   */
+  private static void solicitarDatosImportacion(Scanner scanner) {
+    System.out.println("Formato: AUTOR;nombre;apellidos;nacionalidad;dd/MM/yyyy | LIBRO;titulo;isbn;dd/MM/yyyy;paginas | EJEMPLAR;codigo;estado;ubicacion");
+    System.out.println("(o .jsonl: un objeto por línea con \"tipo\" y los mismos campos por su nombre)");
+    System.out.print("Ruta del fichero a importar: ");
+    String ruta = scanner.nextLine().trim();
+
+    try {
+      ResultadoImportacion resultado = new ImportadorCatalogo().importar(Path.of(ruta));
+      System.out.println("\n=== IMPORTACIÓN COMPLETADA ===");
+      System.out.println("  Autores: " + resultado.autores());
+      System.out.println("  Libros: " + resultado.libros());
+      System.out.println("  Ejemplares: " + resultado.ejemplares());
+      System.out.printf("  Tiempo: %.2f s (%.0f filas/s)%n", resultado.milisegundos() / 1000.0, resultado.filasPorSegundo());
+      System.out.println("==============================");
+    } catch (IOException e) {
+      System.err.println("Error al leer el fichero '" + ruta + "': " + e.getMessage());
+    } catch (Exception e) {
+      System.err.println("Error en la importación: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Opción 13: Muestra el estado del pool de conexiones y la latencia de obtención, y el de las réplicas de lectura.
+   */
+  private static void mostrarEstadoPool() {
+    ProveedorConexionesMedido.EstadisticasPool pool = HibernateUtil.getEstadisticasPool();
+    System.out.println("\n=== POOL DE CONEXIONES ===");
+    System.out.println("  Activas: " + pool.activas() + " / " + pool.maximo());
+    System.out.println("  Inactivas: " + pool.inactivas());
+    System.out.println("  Hilos esperando conexión: " + pool.enEspera());
+    System.out.println("  Conexiones entregadas: " + pool.adquisiciones());
+    System.out.printf("  Latencia de obtención: media %.3f ms, máx %.3f ms%n", pool.latenciaMediaMs(), pool.latenciaMaxMs());
+    List<EstadoReplica> replicas = HibernateUtil.getEstadoReplicas();
+    if (!replicas.isEmpty()) {
+      System.out.println("  Réplicas de lectura:");
+      for (EstadoReplica replica : replicas) {
+        System.out.printf("    %-8s %s (lecturas: %d, comprobaciones fallidas: %d)%n",
+          replica.sana() ? "SANA" : "CAÍDA", replica.url(), replica.lecturas(), replica.fallosComprobacion());
+      }
+    }
+    System.out.println("==========================");
+  }
+
+  /**
+   * Opción 14: Muestra aciertos, fallos, inserciones y desalojos de cada región de la caché de segundo nivel.
+   */
+  private static void mostrarEstadisticasCache() {
+    System.out.println("\n=== CACHÉ DE SEGUNDO NIVEL ===");
+    System.out.printf("%-35s | %10s | %10s | %10s | %10s | %s\n", "REGIÓN", "ACIERTOS", "FALLOS", "INSERCIONES", "DESALOJOS", "% ACIERTOS");
+    System.out.println("----------------------------------------------------------------------------------------------------");
+    for (EstadisticasCache.EstadisticasRegion region : EstadisticasCache.obtener()) {
+      System.out.printf("%-35s | %10d | %10d | %10d | %10s | %.1f%%\n",
+        region.region(),
+        region.aciertos(),
+        region.fallos(),
+        region.inserciones(),
+        region.desalojos() < 0 ? "N/D" : String.valueOf(region.desalojos()),
+        region.ratioAciertos() * 100
+      );
+    }
+    System.out.println("====================================================================================================");
+  }
+
+  /**
+   * Opción 3: Lista todos los autores con su número de libros, página a página.
+   */
+  private static void mostrarAutores(ConsultasBiblioteca consultas) {
+    try {
+      Pagina<AutorResumen> pagina = consultas.listarAutoresResumen(null, ConsultasBiblioteca.TAMANO_PAGINA_AUTORES);
+
+      if (pagina.elementos().isEmpty()) {
+        System.out.println("No hay autores registrados en la base de datos.");
+        return;
+      }
+
+      System.out.println("\n=== LISTADO DE AUTORES REGISTRADOS ===");
+      System.out.printf("%-5s | %-30s | %-15s | %s\n", "ID", "NOMBRE COMPLETO", "NACIONALIDAD", "Nº LIBROS");
+      System.out.println("------------------------------------------------------------------");
+
+      while (true) {
+        for (AutorResumen autor : pagina.elementos()) {
+          System.out.printf("%-5d | %-30s | %-15s | %d\n", autor.idAutor(), autor.nombreCompleto(), autor.nacionalidad(), autor.numeroLibros());
+        }
+        if (!pagina.hayMas()) {
+          break;
+        }
+        pagina = consultas.listarAutoresResumen(pagina.siguiente(), ConsultasBiblioteca.TAMANO_PAGINA_AUTORES);
+      }
+      System.out.println("==================================================================");
+
+    } catch (Exception e) {
+      System.err.println("Error al listar autores: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Opción 4: Muestra la ficha de un libro con sus ejemplares.
+   */
+  private static void mostrarLibro(LibroDetalle libro) {
+    System.out.println("\n=== DETALLES DEL LIBRO (ID: " + libro.idLibro() + ") ===");
+    System.out.println("Título: " + libro.titulo());
+    System.out.println("ISBN: " + libro.isbn());
+    System.out.println("Páginas: " + libro.numeroPaginas());
+
+    if (libro.autor() != null) {
+      System.out.println("Autor: " + libro.autor());
+    }
+
+    if (libro.ejemplares() == null) {
+      // Plan de carga sin ejemplares (PlanCargaLibro.RESUMEN)
+      System.out.println("=========================================");
+      return;
+    }
+    System.out.println("--- Ejemplares (" + libro.ejemplares().size() + ") ---");
+    if (libro.ejemplares().isEmpty()) {
+      System.out.println("Sin ejemplares registrados");
+    } else {
+      for (EjemplarResumen ejemplar : libro.ejemplares()) {
+        System.out.println("  [Código: " + ejemplar.codigoEjemplar() + " | Estado: " + ejemplar.estado() + " | Ubicación: " + ejemplar.ubicacion() + "]");
+      }
+    }
+    System.out.println("=========================================");
+  }
+
+  /**
+   * Opciones 18 y 19: Solicita el código del ejemplar a prestar o devolver.
+   */
+  private static void solicitarDatosPrestamo(MotorPrestamos motor, Scanner scanner, boolean prestar) {
+    System.out.print("Introduzca el Código de Ejemplar a " + (prestar ? "prestar" : "devolver") + ": ");
+    String codigoEjemplar = scanner.nextLine().trim();
+
+    try {
+      MotorPrestamos.ResultadoPrestamo resultado = prestar ? motor.prestar(codigoEjemplar) : motor.devolver(codigoEjemplar);
+      switch (resultado) {
+        case REALIZADO:
+          System.out.println("Ejemplar '" + codigoEjemplar + "' " + (prestar ? "prestado." : "devuelto."));
+          break;
+        case NO_ENCONTRADO:
+          System.out.println("No se encontró el ejemplar con código: " + codigoEjemplar);
+          break;
+        case ESTADO_INCORRECTO:
+          System.out.println("El ejemplar '" + codigoEjemplar + "' no está " + (prestar ? "DISPONIBLE." : "PRESTADO."));
+          break;
+        case CONFLICTO:
+          System.out.println("El ejemplar '" + codigoEjemplar + "' se está modificando desde otro puesto. Inténtelo de nuevo.");
+          break;
+      }
+    } catch (Exception e) {
+      System.err.println("Error al " + (prestar ? "prestar" : "devolver") + " el ejemplar: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Opción 20: Solicita los términos a buscar en títulos y autores.
+   */
+  private static void solicitarDatosBusquedaCatalogo(ConsultasBiblioteca consultas, Scanner scanner) {
+    System.out.print("Introduzca los términos a buscar (termine uno en * para buscar por prefijo): ");
+    String consulta = scanner.nextLine().trim();
+
+    try {
+      long inicio = System.nanoTime();
+      List<ResultadoBusqueda> resultados = consultas.buscarEnCatalogo(consulta, RESULTADOS_BUSQUEDA);
+      long micros = (System.nanoTime() - inicio) / 1000;
+
+      if (resultados.isEmpty()) {
+        System.out.println("No hay resultados para: " + consulta);
+        return;
+      }
+      System.out.println("\n=== RESULTADOS (" + resultados.size() + ", " + micros + " µs) ===");
+      for (ResultadoBusqueda resultado : resultados) {
+        System.out.printf("%-6s %6d  %-60s %6.2f%n", resultado.tipo(), resultado.id(), resultado.texto(), resultado.puntuacion());
+      }
+    } catch (Exception e) {
+      System.err.println("Error al buscar en el catálogo: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Opción 21 (y --solo-arranque): Muestra la duración de cada fase del arranque de Hibernate.
+   */
+  private static void mostrarFasesArranque() {
+    boolean terminado = HibernateUtil.isIniciada();
+    System.out.println("\n=== TIEMPOS DE ARRANQUE" + (terminado ? "" : " (en curso)") + " ===");
+    for (Map.Entry<String, Duration> fase : HibernateUtil.getFasesArranque().entrySet()) {
+      System.out.printf("%-16s %8d ms%n", fase.getKey(), fase.getValue().toMillis());
+    }
+  }
+
+  /**
+   * Opción 22: Solicita el ID del libro y muestra cuántos ejemplares tiene en cada estado.
+   */
+  private static void solicitarDatosDisponibilidad(ConsultasBiblioteca consultas, Scanner scanner) {
+    try {
+      System.out.print("Introduzca el ID del Libro: ");
+      Integer idLibro = scanner.nextInt();
+      scanner.nextLine();
+
+      Optional<DisponibilidadLibro> disponibilidad = consultas.consultarDisponibilidad(idLibro);
+      if (disponibilidad.isEmpty()) {
+        System.out.println("No se encontró ningún libro con el ID: " + idLibro);
+        return;
+      }
+      DisponibilidadLibro libro = disponibilidad.get();
+      System.out.println("\n=== DISPONIBILIDAD: " + libro.titulo() + " ===");
+      for (EstadoEjemplar estado : EstadoEjemplar.values()) {
+        System.out.printf("  %-11s %d%n", estado + ":", libro.ejemplares(estado));
+      }
+      System.out.println("  Total:      " + libro.total());
+
+    } catch (InputMismatchException e) {
+      System.err.println("Error: El ID del libro debe ser un número entero.");
+      scanner.nextLine();
+    } catch (Exception e) {
+      System.err.println("Error al consultar la disponibilidad: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Opción 23: Recuenta los contadores de ejemplares de los libros que no cuadran con la tabla de ejemplares.
+   */
+  private static void repararContadoresEjemplares(GestionBiblioteca gestion) {
+    try {
+      int corregidos = gestion.repararContadoresEjemplares();
+      System.out.println("Contadores de ejemplares revisados: " + corregidos + " libro(s) corregido(s).");
+    } catch (Exception e) {
+      System.err.println("Error al reparar los contadores de ejemplares: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Modo servidor: atiende peticiones HTTP/JSON en lugar del menú hasta que se detiene el proceso.
+   */
+  private static void iniciarServidor(int puerto) {
+    try {
+      ServidorBiblioteca servidor = new ServidorBiblioteca(puerto);
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        System.out.println("\nDeteniendo servidor...");
+        servidor.detener();
+        MetricasOperaciones.detenerVolcadoPeriodico();
+        HibernateUtil.shutdown();
+      }));
+      servidor.iniciar();
+    } catch (IOException e) {
+      System.err.println("No se pudo iniciar el servidor en el puerto " + puerto + ": " + e.getMessage());
+      HibernateUtil.shutdown();
+    }
+  }
 }
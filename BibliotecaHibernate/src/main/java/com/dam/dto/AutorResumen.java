@@ -0,0 +1,13 @@
+package com.dam.dto;
+
+/**
+ * DTO de solo lectura con los datos de un autor y su número de libros.
+ * Se construye directamente desde una consulta HQL (SELECT new ...), por lo que
+ * no es una entidad gestionada y no dispara cargas perezosas de 'Autor.libros'.
+ */
+public record AutorResumen(Integer idAutor, String nombre, String apellidos, String nacionalidad, Long numeroLibros) {
+
+  public String nombreCompleto() {
+    return nombre + " " + apellidos;
+  }
+}
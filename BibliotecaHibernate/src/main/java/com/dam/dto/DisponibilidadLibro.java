@@ -0,0 +1,23 @@
+package com.dam.dto;
+
+import com.dam.modelo.Ejemplar.EstadoEjemplar;
+
+/**
+ * DTO de solo lectura con el número de ejemplares de un libro en cada estado.
+ * Sale de los contadores en memoria (DisponibilidadLibros) o de los que mantiene la propia fila del libro, sin contar ejemplares.
+ */
+public record DisponibilidadLibro(Integer idLibro, String titulo, int disponibles, int prestados, int enReparacion, int deBaja) {
+
+  public int total() {
+    return disponibles + prestados + enReparacion + deBaja;
+  }
+
+  public int ejemplares(EstadoEjemplar estado) {
+    return switch (estado) {
+      case DISPONIBLE -> disponibles;
+      case PRESTADO -> prestados;
+      case REPARACION -> enReparacion;
+      case BAJA -> deBaja;
+    };
+  }
+}
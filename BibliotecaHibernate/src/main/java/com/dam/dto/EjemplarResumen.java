@@ -0,0 +1,10 @@
+package com.dam.dto;
+
+import com.dam.modelo.Ejemplar.EstadoEjemplar;
+
+/**
+ * DTO de solo lectura con los datos de un ejemplar y el título de su libro.
+ * El título llega en la misma fila (JOIN), por lo que no se carga el 'Libro' asociado.
+ */
+public record EjemplarResumen(String codigoEjemplar, EstadoEjemplar estado, String ubicacion, String tituloLibro) {
+}
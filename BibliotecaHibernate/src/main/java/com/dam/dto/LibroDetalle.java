@@ -0,0 +1,15 @@
+package com.dam.dto;
+
+import java.util.List;
+
+/**
+ * DTO de solo lectura con la ficha de un libro: sus datos, el nombre de su autor y sus ejemplares.
+ * Se rellena dentro de la sesión de lectura, así quien lo recibe no depende de colecciones perezosas.
+ * 'ejemplares' es null cuando el plan de carga no los incluye (PlanCargaLibro.RESUMEN).
+ */
+public record LibroDetalle(Integer idLibro, String titulo, String isbn, Integer numeroPaginas, String autor, List<EjemplarResumen> ejemplares) {
+
+  public LibroDetalle {
+    ejemplares = ejemplares != null ? List.copyOf(ejemplares) : null;
+  }
+}
@@ -0,0 +1,18 @@
+package com.dam.dto;
+
+import java.util.List;
+
+/**
+ * Una página de un listado paginado por clave (keyset): los elementos y el token opaco para pedir la siguiente.
+ * 'siguiente' es null en la última página; el token solo sirve para el mismo listado y filtro que lo generó.
+ */
+public record Pagina<T>(List<T> elementos, String siguiente) {
+
+  public Pagina {
+    elementos = List.copyOf(elementos);
+  }
+
+  public boolean hayMas() {
+    return siguiente != null;
+  }
+}
@@ -0,0 +1,217 @@
+package com.dam.gestion;
+
+import com.dam.dto.AutorResumen;
+import com.dam.dto.DisponibilidadLibro;
+import com.dam.dto.EjemplarResumen;
+import com.dam.dto.LibroDetalle;
+import com.dam.dto.Pagina;
+import com.dam.gestion.ConsultasBiblioteca.PlanCargaLibro;
+import com.dam.gestion.GestionBiblioteca.ResultadoCambioEstado;
+import com.dam.gestion.GestionBiblioteca.ResultadoOperacion;
+import com.dam.gestion.MotorPrestamos.ResultadoPrestamo;
+import com.dam.modelo.Autor;
+import com.dam.modelo.Ejemplar.EstadoEjemplar;
+import com.dam.util.HibernateUtil;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Fachada asíncrona de las operaciones de la biblioteca: cada método devuelve un CompletableFuture con el
+ * resultado tipado, así quien llama puede lanzar a la vez lecturas independientes y combinarlas
+ * (p. ej. la ficha de un libro y el listado de autores) en lugar de esperarlas una tras otra.
+ *
+ * - Las tareas corren en un pool propio acotado: por defecto tantos hilos como conexiones tiene el pool JDBC
+ *   (más hilos solo esperarían conexión) y una cola limitada; si está llena, el future falla al instante con
+ *   RejectedExecutionException en lugar de acumular trabajo.
+ * - Cada future caduca con TimeoutException tras el timeout configurado (o el que aplique quien llama con orTimeout).
+ * - Cancelar el future (cancel) o que caduque cancela también la tarea: si seguía en cola ya no se ejecuta y,
+ *   si estaba en marcha, se interrumpe su hilo (p. ej. mientras espera una conexión del pool).
+ */
+public class BibliotecaAsincrona implements AutoCloseable {
+  // Tareas en cola por hilo antes de rechazar nuevas
+  private static final int COLA_POR_HILO = 100;
+  // Timeout por defecto de cada operación
+  private static final Duration TIMEOUT_POR_DEFECTO = Duration.ofSeconds(30);
+
+  private final ConsultasBiblioteca consultas = new ConsultasBiblioteca();
+  private final GestionBiblioteca gestion = new GestionBiblioteca();
+  private final MotorPrestamos motorPrestamos;
+  private final ThreadPoolExecutor ejecutor;
+  private final Duration timeout;
+
+  // Hilos = tamaño del pool de conexiones, cola de COLA_POR_HILO por hilo y timeout de 30 s
+  public BibliotecaAsincrona() {
+    this(HibernateUtil.getTamanoPool(), HibernateUtil.getTamanoPool() * COLA_POR_HILO, TIMEOUT_POR_DEFECTO, new MotorPrestamos());
+  }
+
+  public BibliotecaAsincrona(int hilos, int capacidadCola, Duration timeout, MotorPrestamos motorPrestamos) {
+    if (hilos <= 0 || capacidadCola <= 0) {
+      throw new IllegalArgumentException("El número de hilos y la capacidad de la cola deben ser > 0.");
+    }
+    this.motorPrestamos = motorPrestamos;
+    this.timeout = timeout;
+    this.ejecutor = new ThreadPoolExecutor(hilos, hilos, 0, TimeUnit.MILLISECONDS,
+      new ArrayBlockingQueue<>(capacidadCola), new FabricaHilos());
+  }
+
+  // CONSULTAS
+
+  public CompletableFuture<Pagina<AutorResumen>> listarAutoresResumen(String desde, int tamanoPagina) {
+    return ejecutar(() -> consultas.listarAutoresResumen(desde, tamanoPagina));
+  }
+
+  public CompletableFuture<Pagina<LibroDetalle>> listarLibros(String desde, int tamanoPagina) {
+    return ejecutar(() -> consultas.listarLibros(desde, tamanoPagina));
+  }
+
+  public CompletableFuture<Pagina<EjemplarResumen>> listarEjemplares(EstadoEjemplar estado, String desde, int tamanoPagina) {
+    return ejecutar(() -> consultas.listarEjemplares(estado, desde, tamanoPagina));
+  }
+
+  public CompletableFuture<Optional<LibroDetalle>> buscarLibroPorId(Integer idLibro) {
+    return ejecutar(() -> consultas.buscarLibroPorId(idLibro));
+  }
+
+  public CompletableFuture<Optional<LibroDetalle>> buscarLibroPorId(Integer idLibro, PlanCargaLibro plan) {
+    return ejecutar(() -> consultas.buscarLibroPorId(idLibro, plan));
+  }
+
+  public CompletableFuture<Optional<DisponibilidadLibro>> consultarDisponibilidad(Integer idLibro) {
+    return ejecutar(() -> consultas.consultarDisponibilidad(idLibro));
+  }
+
+  // El consumidor se llama desde el hilo del pool; el future se completa con el número de filas recorridas
+  public CompletableFuture<Long> recorrerEjemplaresPorEstado(EstadoEjemplar estado, Consumer<EjemplarResumen> consumidor) {
+    return ejecutar(() -> consultas.recorrerEjemplaresPorEstado(estado, consumidor));
+  }
+
+  // CIRCULACIÓN
+
+  public CompletableFuture<ResultadoPrestamo> prestar(String codigoEjemplar) {
+    return ejecutar(() -> motorPrestamos.prestar(codigoEjemplar));
+  }
+
+  public CompletableFuture<ResultadoPrestamo> devolver(String codigoEjemplar) {
+    return ejecutar(() -> motorPrestamos.devolver(codigoEjemplar));
+  }
+
+  public CompletableFuture<Map<String, ResultadoCambioEstado>> actualizarEstadoEjemplares(Collection<String> codigos, EstadoEjemplar nuevoEstado) {
+    return ejecutar(() -> gestion.actualizarEstadoEjemplares(codigos, nuevoEstado));
+  }
+
+  // CATÁLOGO: el future se completa con el ResultadoOperacion de GestionBiblioteca, así que un fallo de la BD
+  // llega como CONFLICTO o ERROR y no como excepción
+
+  public CompletableFuture<ResultadoOperacion> crearAutorConLibros(Autor autor) {
+    return ejecutar(() -> gestion.crearAutorConLibros(autor));
+  }
+
+  public CompletableFuture<ResultadoOperacion> agregarEjemplarALibroExistente(String isbn, String codigoEjemplar) {
+    return ejecutar(() -> gestion.agregarEjemplarALibroExistente(isbn, codigoEjemplar));
+  }
+
+  public CompletableFuture<ResultadoOperacion> actualizarEstadoEjemplar(String codigoEjemplar, String nuevoEstado) {
+    return ejecutar(() -> gestion.actualizarEstadoEjemplar(codigoEjemplar, nuevoEstado));
+  }
+
+  public CompletableFuture<ResultadoOperacion> actualizarDatosLibro(Integer idLibro, String nuevoTitulo, Integer nuevasPaginas) {
+    return ejecutar(() -> gestion.actualizarDatosLibro(idLibro, nuevoTitulo, nuevasPaginas));
+  }
+
+  public CompletableFuture<ResultadoOperacion> eliminarEjemplar(String codigoEjemplar) {
+    return ejecutar(() -> gestion.eliminarEjemplar(codigoEjemplar));
+  }
+
+  public CompletableFuture<ResultadoOperacion> eliminarLibro(Integer idLibro) {
+    return ejecutar(() -> gestion.eliminarLibro(idLibro));
+  }
+
+  public CompletableFuture<ResultadoOperacion> eliminarAutor(Integer idAutor) {
+    return ejecutar(() -> gestion.eliminarAutor(idAutor));
+  }
+
+  // MANTENIMIENTO
+
+  public CompletableFuture<ResultadoOperacion> conciliarEstadisticas() {
+    return ejecutar(gestion::conciliarEstadisticas);
+  }
+
+  // El future se completa con el número de libros cuyos contadores se han corregido
+  public CompletableFuture<Integer> repararContadoresEjemplares() {
+    return ejecutar(gestion::repararContadoresEjemplares);
+  }
+
+  // Tareas aceptadas que aún no han empezado
+  public int getTareasEnCola() {
+    return ejecutor.getQueue().size();
+  }
+
+  @Override
+  public void close() {
+    ejecutor.shutdown();
+    try {
+      if (!ejecutor.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+        ejecutor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      ejecutor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // Encola la tarea y enlaza su ciclo de vida con el del future (timeout y cancelación en ambos sentidos)
+  private <T> CompletableFuture<T> ejecutar(Callable<T> tarea) {
+    CompletableFuture<T> resultado = new CompletableFuture<>();
+    FutureTask<Void> ejecucion = new FutureTask<>(() -> {
+      try {
+        resultado.complete(tarea.call());
+      } catch (Throwable e) {
+        resultado.completeExceptionally(e);
+      }
+      return null;
+    });
+
+    resultado.whenComplete((valor, error) -> {
+      if (error instanceof CancellationException || error instanceof TimeoutException) {
+        ejecucion.cancel(true);
+      }
+    });
+
+    try {
+      ejecutor.execute(ejecucion);
+    } catch (RejectedExecutionException e) {
+      resultado.completeExceptionally(e);
+      return resultado;
+    }
+    if (timeout != null) {
+      resultado.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+    return resultado;
+  }
+
+  private static class FabricaHilos implements ThreadFactory {
+    private final AtomicInteger contador = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable tarea) {
+      Thread hilo = new Thread(tarea, "biblioteca-async-" + contador.incrementAndGet());
+      hilo.setDaemon(true);
+      return hilo;
+    }
+  }
+}
@@ -0,0 +1,495 @@
+package com.dam.gestion;
+
+import com.dam.dto.AutorResumen;
+import com.dam.dto.DisponibilidadLibro;
+import com.dam.dto.EjemplarResumen;
+import com.dam.dto.LibroDetalle;
+import com.dam.dto.Pagina;
+import com.dam.metricas.MetricasOperaciones;
+import com.dam.metricas.MetricasOperaciones.Medicion;
+import com.dam.modelo.Ejemplar;
+import com.dam.modelo.Ejemplar.EstadoEjemplar;
+import com.dam.modelo.Libro;
+import com.dam.util.HibernateUtil;
+import com.dam.util.IndiceBusqueda.ResultadoBusqueda;
+import com.dam.util.Particiones;
+
+import org.hibernate.FlushMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.exception.JDBCConnectionException;
+import org.hibernate.graph.GraphSemantic;
+import org.hibernate.query.Query;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Operaciones de consulta de la biblioteca (Opciones 3, 4, 5, 20 y 22) y listados paginados por clave.
+ * Devuelven DTOs inmutables ('dto') en lugar de imprimir entidades; la presentación queda en Main.
+ * Todas trabajan sobre sesiones de solo lectura: las entidades cargadas no guardan copia para el
+ * dirty checking y la sesión nunca hace flush.
+ * Los listados paginados y el recorrido por estado van a una réplica de lectura si las hay
+ * (HibernateUtil.getSessionFactoryLectura()); la ficha de un libro y su disponibilidad van siempre a la
+ * principal, porque se consultan justo después de escribir y de ellas depende prestar o no un ejemplar.
+ *
+ * Con varias particiones (Particiones) la ficha y la disponibilidad de un libro van a la partición de su id, y los
+ * listados y el recorrido se lanzan en paralelo en todas: los ids llevan la partición en los bits altos, así que
+ * juntar los resultados en orden de partición conserva el orden por id.
+ */
+public class ConsultasBiblioteca {
+  // Nº de autores que se recuperan por consulta al listar (Opción 3)
+  public static final int TAMANO_PAGINA_AUTORES = 500;
+  // Tamaño máximo de página de cualquier listado paginado
+  public static final int TAMANO_PAGINA_MAXIMO = 1000;
+  // Prefijos de los tokens de página, para no aceptar el token de un listado en otro
+  private static final String LISTADO_AUTORES = "autores";
+  private static final String LISTADO_LIBROS = "libros";
+  private static final String LISTADO_EJEMPLARES = "ejemplares";
+  // Nº de filas que el driver trae por bloque al recorrer ejemplares con cursor (Opción 5)
+  private static final int TAMANO_BLOQUE_CURSOR = 1000;
+  // Marca el final de las filas de una partición en el recorrido en paralelo
+  private static final Object FIN_PARTICION = new Object();
+
+  // Planes de carga de un Libro (grafos con nombre declarados en la entidad)
+  public enum PlanCargaLibro {
+    DETALLE(Libro.GRAFO_DETALLE),   // libro + autor + ejemplares
+    RESUMEN(Libro.GRAFO_RESUMEN);   // libro + autor
+
+    private final String grafo;
+
+    PlanCargaLibro(String grafo) {
+      this.grafo = grafo;
+    }
+  }
+
+  // Opción 3: Devuelve una página de autores con su número de libros en una única consulta (LEFT JOIN + GROUP BY).
+  // El resultado son DTOs 'AutorResumen', no entidades gestionadas, por lo que cada página cuesta una sola SELECT.
+  // Paginación por clave: 'desde' es el token de la página anterior (null para la primera) y la consulta filtra
+  // "idAutor > último" sobre la clave primaria en lugar de usar OFFSET, así la página 10.000 cuesta lo mismo que la 1.
+
+  public Pagina<AutorResumen> listarAutoresResumen(String desde, int tamanoPagina) {
+    try (Medicion medicion = MetricasOperaciones.iniciar("listarAutoresResumen")) {
+      validarTamanoPagina(tamanoPagina);
+      int ultimo = leerToken(desde, LISTADO_AUTORES, null);
+
+      try {
+        List<AutorResumen> autores = leerPagina(ultimo, session -> {
+          Query<AutorResumen> query = session.createQuery(
+            "SELECT new com.dam.dto.AutorResumen(a.idAutor, a.nombre, a.apellidos, a.nacionalidad, COUNT(l)) "
+              + "FROM Autor a LEFT JOIN a.libros l "
+              + "WHERE a.idAutor > :ultimo "
+              + "GROUP BY a.idAutor, a.nombre, a.apellidos, a.nacionalidad "
+              + "ORDER BY a.idAutor",
+            AutorResumen.class);
+          query.setParameter("ultimo", ultimo);
+          query.setCacheable(true);
+          query.setMaxResults(tamanoPagina + 1);
+          return query.list();
+        });
+
+        String siguiente = recortar(autores, tamanoPagina, LISTADO_AUTORES, null, AutorResumen::idAutor);
+        return new Pagina<>(autores, siguiente);
+
+      } catch (RuntimeException e) {
+        medicion.fallo();
+        throw e;
+      }
+    }
+  }
+
+  // Página de libros (sin ejemplares) ordenada por id, con el mismo esquema de paginación por clave.
+
+  public Pagina<LibroDetalle> listarLibros(String desde, int tamanoPagina) {
+    try (Medicion medicion = MetricasOperaciones.iniciar("listarLibros")) {
+      validarTamanoPagina(tamanoPagina);
+      int ultimo = leerToken(desde, LISTADO_LIBROS, null);
+
+      try {
+        List<Object[]> filas = leerPagina(ultimo, session -> {
+          Query<Object[]> query = session.createQuery(
+            "SELECT l.idLibro, l.titulo, l.isbn, l.numeroPaginas, a.nombre, a.apellidos "
+              + "FROM Libro l LEFT JOIN l.autor a "
+              + "WHERE l.idLibro > :ultimo "
+              + "ORDER BY l.idLibro",
+            Object[].class);
+          query.setParameter("ultimo", ultimo);
+          query.setMaxResults(tamanoPagina + 1);
+          return query.list();
+        });
+
+        String siguiente = recortar(filas, tamanoPagina, LISTADO_LIBROS, null, fila -> (Integer) fila[0]);
+        List<LibroDetalle> libros = new ArrayList<>(filas.size());
+        for (Object[] fila : filas) {
+          String autor = fila[4] != null ? fila[4] + " " + fila[5] : null;
+          libros.add(new LibroDetalle((Integer) fila[0], (String) fila[1], (String) fila[2], (Integer) fila[3], autor, null));
+        }
+        return new Pagina<>(libros, siguiente);
+
+      } catch (RuntimeException e) {
+        medicion.fallo();
+        throw e;
+      }
+    }
+  }
+
+  // Página de ejemplares ordenada por id, opcionalmente de un solo estado (estado == null: todos).
+  // El estado va dentro del token: un token no se puede reutilizar con otro filtro. Con filtro, la consulta
+  // recorre el índice (estado, id_ejemplar) a partir del último id en lugar de contar y descartar filas.
+
+  public Pagina<EjemplarResumen> listarEjemplares(EstadoEjemplar estado, String desde, int tamanoPagina) {
+    try (Medicion medicion = MetricasOperaciones.iniciar("listarEjemplares")) {
+      validarTamanoPagina(tamanoPagina);
+      String filtro = estado != null ? estado.name() : null;
+      int ultimo = leerToken(desde, LISTADO_EJEMPLARES, filtro);
+
+      try {
+        List<Object[]> filas = leerPagina(ultimo, session -> {
+          Query<Object[]> query = session.createQuery(
+            "SELECT e.idEjemplar, e.codigoEjemplar, e.estado, e.ubicacion, l.titulo "
+              + "FROM Ejemplar e JOIN e.libro l "
+              + "WHERE e.idEjemplar > :ultimo " + (estado != null ? "AND e.estado = :estado " : "")
+              + "ORDER BY e.idEjemplar",
+            Object[].class);
+          query.setParameter("ultimo", ultimo);
+          if (estado != null) {
+            query.setParameter("estado", estado);
+          }
+          query.setMaxResults(tamanoPagina + 1);
+          return query.list();
+        });
+
+        String siguiente = recortar(filas, tamanoPagina, LISTADO_EJEMPLARES, filtro, fila -> (Integer) fila[0]);
+        List<EjemplarResumen> ejemplares = new ArrayList<>(filas.size());
+        for (Object[] fila : filas) {
+          ejemplares.add(new EjemplarResumen((String) fila[1], (EstadoEjemplar) fila[2], (String) fila[3], (String) fila[4]));
+        }
+        return new Pagina<>(ejemplares, siguiente);
+
+      } catch (RuntimeException e) {
+        medicion.fallo();
+        throw e;
+      }
+    }
+  }
+
+  // Opción 4: Devuelve la ficha completa de un Libro (con autor y ejemplares) por su clave primaria (ID), o vacío si no existe.
+
+  public Optional<LibroDetalle> buscarLibroPorId(Integer idLibro) {
+    return buscarLibroPorId(idLibro, PlanCargaLibro.DETALLE);
+  }
+
+  // Igual que la anterior, pero eligiendo qué se carga (ver PlanCargaLibro). Con RESUMEN 'ejemplares' queda a null.
+  // El plan se aplica como fetch graph: si el libro no está en la caché de segundo nivel, libro + autor (+ ejemplares)
+  // llegan en una única SELECT con JOIN en lugar de una por asociación perezosa.
+  // Se copia a 'LibroDetalle' antes de cerrar la sesión; al ser de solo lectura no se guardan snapshots.
+
+  public Optional<LibroDetalle> buscarLibroPorId(Integer idLibro, PlanCargaLibro plan) {
+    try (Medicion medicion = MetricasOperaciones.iniciar(plan == PlanCargaLibro.DETALLE ? "buscarLibroPorId" : "buscarLibroPorIdResumen")) {
+      Session session = null;
+
+      try {
+        session = abrirSesionLectura(HibernateUtil.getParticiones().deEntidad(idLibro));
+        Libro libro = session.find(Libro.class, idLibro,
+          Map.of(GraphSemantic.FETCH.getJpaHintName(), session.getEntityGraph(plan.grafo)));
+
+        if (libro == null) {
+          return Optional.empty();
+        }
+
+        List<EjemplarResumen> ejemplares = null;
+        if (plan == PlanCargaLibro.DETALLE) {
+          ejemplares = new ArrayList<>(libro.getEjemplares().size());
+          for (Ejemplar ejemplar : libro.getEjemplares()) {
+            ejemplares.add(new EjemplarResumen(ejemplar.getCodigoEjemplar(), ejemplar.getEstado(), ejemplar.getUbicacion(), libro.getTitulo()));
+          }
+        }
+
+        String autor = libro.getAutor() != null
+          ? libro.getAutor().getNombre() + " " + libro.getAutor().getApellidos()
+          : null;
+
+        return Optional.of(new LibroDetalle(libro.getIdLibro(), libro.getTitulo(), libro.getIsbn(), libro.getNumeroPaginas(), autor, ejemplares));
+
+      } catch (RuntimeException e) {
+        medicion.fallo();
+        throw e;
+      } finally {
+        if (session != null && session.isOpen()) {
+          session.close();
+        }
+      }
+    }
+  }
+
+  // Opción 22: Ejemplares de un libro en cada estado, o vacío si no existe.
+  // Responde sin SQL desde memoria: los contadores de DisponibilidadLibros y el título de IndiceBusqueda, ambos al
+  // día tras cada commit. Solo si el libro no está en memoria (id desconocido, o un alta cuyo aviso aún no ha
+  // llegado) se leen los contadores que mantiene la fila del libro (ContadoresEjemplares): una SELECT por clave
+  // primaria, sin cargar ni contar ejemplares, que no pasa por la caché de segundo nivel.
+
+  public Optional<DisponibilidadLibro> consultarDisponibilidad(Integer idLibro) {
+    try (Medicion medicion = MetricasOperaciones.iniciar("consultarDisponibilidad")) {
+      Session session = null;
+
+      try {
+        int[] enMemoria = HibernateUtil.getDisponibilidadLibros().getEjemplaresPorEstado(idLibro);
+        Optional<String> titulo = HibernateUtil.getIndiceBusqueda().getTituloLibro(idLibro);
+        if (enMemoria != null && titulo.isPresent()) {
+          return Optional.of(new DisponibilidadLibro(idLibro, titulo.get(),
+            enMemoria[EstadoEjemplar.DISPONIBLE.ordinal()], enMemoria[EstadoEjemplar.PRESTADO.ordinal()],
+            enMemoria[EstadoEjemplar.REPARACION.ordinal()], enMemoria[EstadoEjemplar.BAJA.ordinal()]));
+        }
+
+        session = abrirSesionLectura(HibernateUtil.getParticiones().deEntidad(idLibro));
+        return session.createQuery(
+            "SELECT new com.dam.dto.DisponibilidadLibro(l.idLibro, l.titulo, l.ejemplaresDisponibles, "
+              + "l.ejemplaresPrestados, l.ejemplaresReparacion, l.ejemplaresBaja) "
+              + "FROM Libro l WHERE l.idLibro = :id",
+            DisponibilidadLibro.class)
+          .setParameter("id", idLibro)
+          .uniqueResultOptional();
+
+      } catch (RuntimeException e) {
+        medicion.fallo();
+        throw e;
+      } finally {
+        if (session != null && session.isOpen()) {
+          session.close();
+        }
+      }
+    }
+  }
+
+  // Opción 5: Recorre en streaming los ejemplares de un estado y entrega cada fila al consumidor. Devuelve el número de filas.
+  // - Cursor FORWARD_ONLY con 'fetchSize' para que el driver traiga las filas por bloques (en MySQL requiere useCursorFetch=true).
+  // - El título se proyecta con un JOIN, así la consulta es única sea cual sea el número de filas (sin cargas perezosas de Libro).
+  // - La sesión se limpia cada TAMANO_BLOQUE_CURSOR filas para que la memoria se mantenga constante.
+  // - Con varias particiones cada una se recorre en su hilo y deja sus filas en una cola acotada; el consumidor las
+  //   vacía en orden de partición (orden por id), así mientras entrega las de una ya se están leyendo las siguientes.
+
+  public long recorrerEjemplaresPorEstado(EstadoEjemplar estado, Consumer<EjemplarResumen> consumidor) {
+    try (Medicion medicion = MetricasOperaciones.iniciar("recorrerEjemplaresPorEstado")) {
+      try {
+        Particiones particiones = HibernateUtil.getParticiones();
+        if (particiones.getNumero() == 1) {
+          try (Session session = abrirSesionReplica()) {
+            return recorrer(session, estado, consumidor);
+          }
+        }
+        return recorrerEnParticiones(particiones, estado, consumidor);
+
+      } catch (RuntimeException e) {
+        medicion.fallo();
+        throw e;
+      }
+    }
+  }
+
+  private static long recorrer(Session session, EstadoEjemplar estado, Consumer<EjemplarResumen> consumidor) {
+    Query<?> query = session.createQuery(
+      "SELECT e.codigoEjemplar, e.estado, e.ubicacion, l.titulo "
+        + "FROM Ejemplar e JOIN e.libro l "
+        + "WHERE e.estado = :estado "
+        + "ORDER BY e.idEjemplar");
+    query.setParameter("estado", estado);
+    query.setFetchSize(TAMANO_BLOQUE_CURSOR);
+
+    try (ScrollableResults cursor = query.scroll(ScrollMode.FORWARD_ONLY)) {
+      long filas = 0;
+      while (cursor.next()) {
+        consumidor.accept(new EjemplarResumen(
+          (String) cursor.get(0),
+          (EstadoEjemplar) cursor.get(1),
+          (String) cursor.get(2),
+          (String) cursor.get(3)
+        ));
+
+        if (++filas % TAMANO_BLOQUE_CURSOR == 0) {
+          session.clear();
+        }
+      }
+      return filas;
+    }
+  }
+
+  // Si el consumidor falla (o falla una partición), se cancela el resto: cada hilo lo ve al intentar dejar la
+  // siguiente fila en su cola, deja de leer y cierra su cursor.
+  private long recorrerEnParticiones(Particiones particiones, EstadoEjemplar estado, Consumer<EjemplarResumen> consumidor) {
+    List<BlockingQueue<Object>> colas = new ArrayList<>(particiones.getNumero());
+    for (int i = 0; i < particiones.getNumero(); i++) {
+      colas.add(new ArrayBlockingQueue<>(TAMANO_BLOQUE_CURSOR));
+    }
+    AtomicBoolean cancelado = new AtomicBoolean();
+
+    List<CompletableFuture<Long>> tareas = particiones.lanzarEnTodas(p -> {
+      BlockingQueue<Object> cola = colas.get(p);
+      try (Session session = p == 0 ? abrirSesionReplica() : abrirSesionLectura(particiones.get(p))) {
+        return recorrer(session, estado, fila -> poner(cola, fila, cancelado));
+      } finally {
+        // También si ha fallado: el error lo recoge el consumidor al llegar a esta partición
+        if (!cancelado.get()) {
+          poner(cola, FIN_PARTICION, cancelado);
+        }
+      }
+    });
+
+    try {
+      long filas = 0;
+      for (int p = 0; p < colas.size(); p++) {
+        BlockingQueue<Object> cola = colas.get(p);
+        Object fila;
+        while ((fila = cola.take()) != FIN_PARTICION) {
+          consumidor.accept((EjemplarResumen) fila);
+          filas++;
+        }
+        try {
+          tareas.get(p).join();
+        } catch (CompletionException e) {
+          throw e.getCause() instanceof RuntimeException causa ? causa : e;
+        }
+      }
+      return filas;
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Recorrido de ejemplares interrumpido", e);
+    } finally {
+      cancelado.set(true);
+    }
+  }
+
+  // Espera sitio en la cola mientras el recorrido no se cancele
+  private static void poner(BlockingQueue<Object> cola, Object elemento, AtomicBoolean cancelado) {
+    try {
+      while (!cola.offer(elemento, 100, TimeUnit.MILLISECONDS)) {
+        if (cancelado.get()) {
+          throw new CancellationException();
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException();
+    }
+  }
+
+  // Opción 20: Busca libros por título y autores por nombre, apellidos o nacionalidad en el índice en memoria
+  // (IndiceBusqueda), sin consultar la base de datos. Un término acabado en '*' se busca como prefijo.
+
+  public List<ResultadoBusqueda> buscarEnCatalogo(String consulta, int limite) {
+    try (Medicion medicion = MetricasOperaciones.iniciar("buscarEnCatalogo")) {
+      try {
+        if (consulta == null || limite <= 0) {
+          throw new IllegalArgumentException("La consulta es obligatoria y el límite debe ser > 0.");
+        }
+        return HibernateUtil.getIndiceBusqueda().buscar(consulta, limite);
+      } catch (RuntimeException e) {
+        medicion.fallo();
+        throw e;
+      }
+    }
+  }
+
+  // PAGINACIÓN POR CLAVE
+  // Se pide una fila más que el tamaño de página: si llega, hay página siguiente y su token apunta a la última fila
+  // devuelta. El token es "listado:filtro:último id" en Base64 URL; es opaco para el cliente, que solo lo reenvía.
+
+  // Ejecuta la consulta de una página en cada partición que puede tener filas tras 'ultimo' (la suya y las
+  // siguientes), en paralelo, y junta los resultados en orden de partición. Cada una devuelve como mucho una página
+  // más la fila de más, así que las primeras filas de la lista son las de la página, en orden por id.
+  private <T> List<T> leerPagina(int ultimo, Function<Session, List<T>> consulta) {
+    Particiones particiones = HibernateUtil.getParticiones();
+    int primera = ultimo > 0 ? particiones.particionDeId(ultimo) : 0;
+    List<T> filas = new ArrayList<>();
+    for (List<T> deParticion : particiones.enTodas(p -> {
+      if (p < primera) {
+        return List.<T>of();
+      }
+      try (Session session = p == 0 ? abrirSesionReplica() : abrirSesionLectura(particiones.get(p))) {
+        return consulta.apply(session);
+      }
+    })) {
+      filas.addAll(deParticion);
+    }
+    return filas;
+  }
+
+  private static void validarTamanoPagina(int tamanoPagina) {
+    if (tamanoPagina <= 0 || tamanoPagina > TAMANO_PAGINA_MAXIMO) {
+      throw new IllegalArgumentException("El tamaño de página debe estar entre 1 y " + TAMANO_PAGINA_MAXIMO + ".");
+    }
+  }
+
+  // Quita la fila de más (si la hay) y devuelve el token de la página siguiente, o null si es la última
+  private static <T> String recortar(List<T> filas, int tamanoPagina, String listado, String filtro, ToIntFunction<T> id) {
+    if (filas.size() <= tamanoPagina) {
+      return null;
+    }
+    filas.subList(tamanoPagina, filas.size()).clear();
+    String contenido = listado + ":" + (filtro != null ? filtro : "") + ":" + id.applyAsInt(filas.get(tamanoPagina - 1));
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(contenido.getBytes(StandardCharsets.UTF_8));
+  }
+
+  // Devuelve el último id de la página anterior (o uno menor que cualquier id si 'token' es null)
+  private static int leerToken(String token, String listado, String filtro) {
+    if (token == null || token.isEmpty()) {
+      return Integer.MIN_VALUE;
+    }
+    try {
+      String[] partes = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":", -1);
+      if (partes.length == 3 && partes[0].equals(listado) && partes[1].equals(filtro != null ? filtro : "")) {
+        return Integer.parseInt(partes[2]);
+      }
+    } catch (IllegalArgumentException e) {
+      // Base64 o número mal formados: se informa igual que un token de otro listado
+    }
+    throw new IllegalArgumentException("Token de página no válido para este listado: " + token);
+  }
+
+  // Igual, pero en una réplica de lectura (o en la principal si no hay ninguna sana): puede ir algo por detrás.
+  // Las páginas de un mismo listado pueden salir de réplicas distintas; al paginar por clave no se repiten ni se
+  // saltan filas por ello, como mucho aparecen antes o después las filas recién escritas.
+  // La conexión se pide al abrir: si la réplica se ha caído desde su última comprobación, se descarta y se prueba
+  // con la siguiente (o con la principal) en lugar de fallar la consulta.
+  private Session abrirSesionReplica() {
+    SessionFactory principal = HibernateUtil.getSessionFactory();
+    while (true) {
+      SessionFactory sessionFactory = HibernateUtil.getSessionFactoryLectura();
+      Session session = abrirSesionLectura(sessionFactory);
+      if (sessionFactory == principal) {
+        return session;
+      }
+      try {
+        session.doWork(conexion -> { });
+        return session;
+      } catch (JDBCConnectionException e) {
+        session.close();
+        HibernateUtil.descartarReplica(sessionFactory);
+      }
+    }
+  }
+
+  // Sesión de solo lectura: sin snapshots de las entidades cargadas y sin flush automático antes de cada consulta.
+  private static Session abrirSesionLectura(SessionFactory sessionFactory) {
+    Session session = sessionFactory.openSession();
+    session.setDefaultReadOnly(true);
+    session.setHibernateFlushMode(FlushMode.MANUAL);
+    return session;
+  }
+}
@@ -0,0 +1,181 @@
+package com.dam.gestion;
+
+import com.dam.modelo.Ejemplar;
+import com.dam.modelo.Ejemplar.EstadoEjemplar;
+import com.dam.modelo.Libro;
+import com.dam.util.HibernateUtil;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.query.NativeQuery;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Mantenimiento de los contadores de ejemplares por estado de cada Libro (columnas ejemplares_* de 'libros').
+ *
+ * Cada operación que añade, borra o cambia de estado ejemplares anota aquí sus cambios y llama a aplicar() antes
+ * del commit, así los contadores se escriben en la misma transacción que los ejemplares:
+ * - Cambios sueltos (sumar/mover): un UPDATE relativo por libro ("x = x + delta"). No hay lectura previa, por lo que
+ *   dos préstamos simultáneos de ejemplares del mismo libro no se pisan; si la transacción se revierte, el
+ *   incremento se revierte con ella.
+ * - Cambios masivos (recalcular): los contadores del libro se vuelven a contar en la tabla 'ejemplares'.
+ *
+ * Los UPDATE son SQL nativo con un espacio de consulta propio, para que Hibernate no vacíe la región de caché
+ * de todos los libros; tras el commit, invalidarCache() expulsa solo los libros tocados y recarga en
+ * DisponibilidadLibros los recontados (los cambios sueltos ya le llegan por sus listeners).
+ */
+class ContadoresEjemplares {
+  // Nº máximo de ids por cláusula IN al recalcular
+  private static final int TAMANO_BLOQUE = 1000;
+  // Espacio de consulta de los UPDATE de contadores: no coincide con ninguna entidad, así no se invalida ninguna región
+  private static final String ESPACIO_CONSULTA = "contadores_ejemplares";
+
+  private static final String SQL_INCREMENTAR;
+  private static final String SQL_RECALCULAR;
+  private static final String SQL_DESCUADRADOS;
+
+  static {
+    StringBuilder incrementar = new StringBuilder("UPDATE libros SET ");
+    StringBuilder recalcular = new StringBuilder("UPDATE libros SET ");
+    StringBuilder conteo = new StringBuilder("SELECT id_libro");
+    StringBuilder diferencias = new StringBuilder();
+    for (EstadoEjemplar estado : EstadoEjemplar.values()) {
+      String columna = columna(estado);
+      String separador = estado.ordinal() == 0 ? "" : ", ";
+      incrementar.append(separador).append(columna).append(" = ").append(columna).append(" + :").append(estado.name());
+      recalcular.append(separador).append(columna)
+        .append(" = (SELECT COUNT(*) FROM ejemplares e WHERE e.id_libro = libros.id_libro AND e.estado = '").append(estado.name()).append("')");
+      conteo.append(", SUM(CASE WHEN estado = '").append(estado.name()).append("' THEN 1 ELSE 0 END) AS ").append(columna);
+      diferencias.append(estado.ordinal() == 0 ? "" : " OR ")
+        .append("l.").append(columna).append(" <> COALESCE(c.").append(columna).append(", 0)");
+    }
+    SQL_INCREMENTAR = incrementar.append(" WHERE id_libro = :id").toString();
+    SQL_RECALCULAR = recalcular.append(" WHERE id_libro IN (:ids)").toString();
+    SQL_DESCUADRADOS = "SELECT l.id_libro FROM libros l LEFT JOIN (" + conteo.append(" FROM ejemplares GROUP BY id_libro")
+      + ") c ON c.id_libro = l.id_libro WHERE " + diferencias + " ORDER BY l.id_libro";
+  }
+
+  // Incrementos pendientes por libro (índice = ordinal del estado)
+  private final Map<Integer, int[]> incrementos = new HashMap<>();
+  // Libros pendientes de recontar
+  private final Set<Integer> aRecalcular = new LinkedHashSet<>();
+  // Libros cuyos contadores se han escrito en esta transacción (para invalidar la caché tras el commit)
+  private final Set<Integer> afectados = new HashSet<>();
+  // De ellos, los recontados: sus cambios no llegan a los listeners de DisponibilidadLibros
+  private final Set<Integer> recontados = new HashSet<>();
+
+  static String columna(EstadoEjemplar estado) {
+    return switch (estado) {
+      case DISPONIBLE -> "ejemplares_disponibles";
+      case PRESTADO -> "ejemplares_prestados";
+      case REPARACION -> "ejemplares_reparacion";
+      case BAJA -> "ejemplares_baja";
+    };
+  }
+
+  // Id del libro de un ejemplar gestionado (la FK; no hace falta inicializar el proxy de Libro)
+  static Integer idLibro(Ejemplar ejemplar) {
+    return ejemplar.getLibro().getIdLibro();
+  }
+
+  // ANOTACIÓN DE CAMBIOS
+
+  void sumar(Integer idLibro, EstadoEjemplar estado, int cantidad) {
+    incrementos.computeIfAbsent(idLibro, id -> new int[EstadoEjemplar.values().length])[estado.ordinal()] += cantidad;
+  }
+
+  void mover(Integer idLibro, EstadoEjemplar anterior, EstadoEjemplar nuevo) {
+    if (anterior != nuevo) {
+      sumar(idLibro, anterior, -1);
+      sumar(idLibro, nuevo, 1);
+    }
+  }
+
+  void recalcular(Integer idLibro) {
+    aRecalcular.add(idLibro);
+  }
+
+  void recalcular(Collection<Integer> idsLibros) {
+    aRecalcular.addAll(idsLibros);
+  }
+
+  // ESCRITURA (dentro de la transacción, justo antes del commit)
+
+  // Escribe los cambios anotados y los olvida. El flush previo envía antes los cambios de los ejemplares: así un
+  // conflicto de versión falla antes de bloquear la fila del libro, y los recuentos ven los ejemplares nuevos.
+  void aplicar(Session session) {
+    if (incrementos.isEmpty() && aRecalcular.isEmpty()) {
+      return;
+    }
+    session.flush();
+
+    for (Map.Entry<Integer, int[]> entrada : incrementos.entrySet()) {
+      if (aRecalcular.contains(entrada.getKey()) || sinCambios(entrada.getValue())) {
+        continue;
+      }
+      NativeQuery<?> update = session.createNativeQuery(SQL_INCREMENTAR)
+        .addSynchronizedQuerySpace(ESPACIO_CONSULTA)
+        .setParameter("id", entrada.getKey());
+      for (EstadoEjemplar estado : EstadoEjemplar.values()) {
+        update.setParameter(estado.name(), entrada.getValue()[estado.ordinal()]);
+      }
+      update.executeUpdate();
+      afectados.add(entrada.getKey());
+    }
+
+    List<Integer> ids = new ArrayList<>(aRecalcular);
+    for (int desde = 0; desde < ids.size(); desde += TAMANO_BLOQUE) {
+      List<Integer> bloque = ids.subList(desde, Math.min(desde + TAMANO_BLOQUE, ids.size()));
+      session.createNativeQuery(SQL_RECALCULAR)
+        .addSynchronizedQuerySpace(ESPACIO_CONSULTA)
+        .setParameterList("ids", bloque)
+        .executeUpdate();
+      afectados.addAll(bloque);
+      recontados.addAll(bloque);
+    }
+
+    incrementos.clear();
+    aRecalcular.clear();
+  }
+
+  // Tras el commit: la copia en caché de cada libro tocado tiene los contadores anteriores
+  void invalidarCache(SessionFactory sessionFactory) {
+    for (Integer idLibro : afectados) {
+      sessionFactory.getCache().evictEntityData(Libro.class, idLibro);
+    }
+    if (!recontados.isEmpty()) {
+      HibernateUtil.getDisponibilidadLibros().recargar(recontados);
+    }
+    afectados.clear();
+    recontados.clear();
+  }
+
+  // REPARACIÓN
+
+  // Ids de los libros cuyos contadores no coinciden con los ejemplares de la tabla (una SELECT con GROUP BY)
+  static List<Integer> buscarDescuadrados(Session session) {
+    List<?> filas = session.createNativeQuery(SQL_DESCUADRADOS).list();
+    List<Integer> ids = new ArrayList<>(filas.size());
+    for (Object fila : filas) {
+      ids.add(((Number) fila).intValue());
+    }
+    return ids;
+  }
+
+  private static boolean sinCambios(int[] cantidades) {
+    for (int cantidad : cantidades) {
+      if (cantidad != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
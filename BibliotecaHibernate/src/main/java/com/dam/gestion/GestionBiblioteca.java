@@ -1,45 +1,111 @@
 package com.dam.gestion;
 
+import com.dam.metricas.MetricasOperaciones;
+import com.dam.metricas.MetricasOperaciones.Medicion;
+import com.dam.metricas.PresupuestoSentenciasExcedidoException;
 import com.dam.modelo.Autor;
 import com.dam.modelo.Ejemplar;
 import com.dam.modelo.Libro;
+import com.dam.util.ClaveDuplicadaException;
+import com.dam.util.DirectorioClaves;
+import com.dam.util.DisponibilidadLibros;
+import com.dam.util.EstadisticasBiblioteca;
 import com.dam.util.HibernateUtil;
+import com.dam.util.Particiones;
 import com.dam.modelo.Ejemplar.EstadoEjemplar;
 
 import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StaleStateException;
 import org.hibernate.Transaction;
-import org.hibernate.query.Query;
+import org.hibernate.exception.ConstraintViolationException;
 
+import javax.persistence.LockModeType;
+import javax.persistence.OptimisticLockException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class GestionBiblioteca {
+  // Nº máximo de códigos por cláusula IN en las operaciones por lotes
+  private static final int TAMANO_BLOQUE_CODIGOS = 1000;
+
+  // Resultado por código de un cambio de estado por lotes
+  public enum ResultadoCambioEstado {
+    ACTUALIZADO,
+    NO_ENCONTRADO,
+    TRANSICION_INVALIDA
+  }
+
+  // Resultado de las operaciones de escritura de un elemento (opciones 1, 2, 7, 8, 9, 10 y 11), para quien no lee
+  // la consola (servidor, fachada asíncrona). El detalle de un ERROR solo se muestra por consola.
+  public enum ResultadoOperacion {
+    REALIZADO,
+    // El libro, ejemplar o autor indicado no existe
+    NO_ENCONTRADO,
+    // Datos que no permiten la operación (estado desconocido, nada que cambiar)
+    DATOS_NO_VALIDOS,
+    // Choca con lo que hay en la BD: ISBN o código repetido (en esta u otra partición), otra restricción o una
+    // escritura concurrente del mismo ejemplar
+    CONFLICTO,
+    ERROR
+  }
+
   // APARTADO 3: OPERACIONES CREATE (Opciones 1 y 2)
 
   // Opción 1: Persiste un Autor completo con sus Libros y Ejemplares asociados. Recibe el objeto 'Autor' construido desde la capa de presentación (Main).
+  // El autor y todo su grafo van a la misma partición (por turnos entre las configuradas).
   
-  public void crearAutorConLibros(Autor autor) {
-    Session session = null;
-    Transaction transaction = null;
+  public ResultadoOperacion crearAutorConLibros(Autor autor) {
+    try (Medicion medicion = MetricasOperaciones.iniciar("crearAutorConLibros")) {
+      Session session = null;
+      Transaction transaction = null;
+      DirectorioClaves.Reserva reserva = null;
 
-    try {
-      session = HibernateUtil.getSessionFactory().openSession();
-      transaction = session.beginTransaction();
+      try {
+        SessionFactory particion = HibernateUtil.getParticiones().paraNuevoAutor();
+
+        // Los ISBN y códigos de ejemplar son únicos en todo el catálogo, no solo en la partición del autor
+        reserva = HibernateUtil.getDirectorioClaves().reservar(particion);
+        for (Libro libro : autor.getLibros()) {
+          reserva.libro(libro.getIsbn());
+          for (Ejemplar ejemplar : libro.getEjemplares()) {
+            reserva.ejemplar(ejemplar.getCodigoEjemplar());
+          }
+        }
+
+        session = particion.openSession();
+        transaction = session.beginTransaction();
 
       
-      // Pone el objeto 'autor' en estado persistente.
-      session.persist(autor);
+        // Pone el objeto 'autor' en estado persistente.
+        session.persist(autor);
 
-      transaction.commit();
-      System.out.println("Autor '" + autor.getApellidos() + "' y sus relaciones fueron insertados correctamente.");
+        transaction.commit();
+        reserva.confirmar();
+        System.out.println("Autor '" + autor.getApellidos() + "' y sus relaciones fueron insertados correctamente.");
+        return ResultadoOperacion.REALIZADO;
 
-    } catch (Exception e) {
-      if (transaction != null) {
-        transaction.rollback();
-      }
-      System.err.println("Error al persistir el autor y sus relaciones: " + e.getMessage());
-    } finally {
-      if (session != null && session.isOpen()) {
-        session.close();
+      } catch (Exception e) {
+        medicion.fallo();
+        if (transaction != null) {
+          transaction.rollback();
+        }
+        if (reserva != null) {
+          reserva.liberar();
+        }
+        relanzarExcesoPresupuesto(e);
+        System.err.println("Error al persistir el autor y sus relaciones: " + e.getMessage());
+        return resultadoDeError(e);
+      } finally {
+        if (session != null && session.isOpen()) {
+          session.close();
+        }
       }
     }
   }
@@ -47,209 +113,303 @@ public class GestionBiblioteca {
 
   // Opción 2: Busca un libro existente por ISBN y añade un nuevo ejemplar. Recibe los datos primitivos (ISBN, codigoEjemplar) desde el Main.
   
-  public void agregarEjemplarALibroExistente(String isbn, String codigoEjemplar) {
-    Session session = null;
-    Transaction transaction = null;
+  public ResultadoOperacion agregarEjemplarALibroExistente(String isbn, String codigoEjemplar) {
+    try (Medicion medicion = MetricasOperaciones.iniciar("agregarEjemplarALibroExistente")) {
+      Session session = null;
+      Transaction transaction = null;
+      DirectorioClaves.Reserva reserva = null;
 
-    try {
-      session = HibernateUtil.getSessionFactory().openSession();
-      transaction = session.beginTransaction();
+      try {
+        // El ejemplar va a la partición del libro
+        SessionFactory particion = particionDeLibro(isbn);
+        session = particion.openSession();
+        transaction = session.beginTransaction();
 
-      // 1. Buscar el libro por ISBN
-      // Le damos un alias a libro (l) para acortar código y :isbn es un parametro nombrado un marcador de posición que le dice a Hibernate: 
-      // "Aquí voy a insertar el valor del ISBN más adelante, antes de ejecutar la consulta."
-      Query<Libro> query = session.createQuery("FROM Libro l WHERE l.isbn = :isbn", Libro.class);
-      query.setParameter("isbn", isbn); // Asigna el valor real del ISBN (obtenido del Scanner) al marcador de posición ":isbn"
-      Libro libro = query.uniqueResult(); // Ahora sí, se ejecuta la consulta con el valor real insertado de forma segura
+        // 1. Buscar el libro por ISBN
+        // El ISBN es la clave natural de Libro: la caché de claves naturales resuelve ISBN -> id sin ejecutar una consulta
+        Libro libro = session.bySimpleNaturalId(Libro.class).load(isbn);
 
-      if (libro == null) {
-        System.err.println("Error: No se encontró ningún libro con el ISBN: " + isbn);
-        transaction.rollback();
-        return;
-      }
+        if (libro == null) {
+          System.err.println("Error: No se encontró ningún libro con el ISBN: " + isbn);
+          transaction.rollback();
+          return ResultadoOperacion.NO_ENCONTRADO;
+        }
 
-      // 2. Crear el nuevo ejemplar (GestionBiblioteca crea el objeto Ejemplar)
-      Ejemplar nuevoEjemplar = new Ejemplar(
-        codigoEjemplar,
-        EstadoEjemplar.DISPONIBLE,
-        "Almacén"
-      );
+        // 2. Crear el nuevo ejemplar (GestionBiblioteca crea el objeto Ejemplar); su código no puede estar en otra partición
+        reserva = HibernateUtil.getDirectorioClaves().reservar(particion);
+        reserva.ejemplar(codigoEjemplar);
+        Ejemplar nuevoEjemplar = new Ejemplar(
+          codigoEjemplar,
+          EstadoEjemplar.DISPONIBLE,
+          "Almacén"
+        );
 
-      // 3. Asociar ejemplar al libro y actualizar
-      libro.addEjemplar(nuevoEjemplar);
-      session.merge(libro); // Sincroniza el Libro con la sesión, asegurando la persistencia en cascada del nuevo Ejemplar.
+        // 3. Asociar ejemplar al libro y actualizar
+        libro.addEjemplar(nuevoEjemplar);
+        session.merge(libro); // Sincroniza el Libro con la sesión, asegurando la persistencia en cascada del nuevo Ejemplar.
 
-      transaction.commit();
-      System.out.println("Ejemplar '" + codigoEjemplar + "' agregado correctamente al libro: " + libro.getTitulo());
+        // 4. Un disponible más en los contadores del libro, en la misma transacción
+        ContadoresEjemplares contadores = new ContadoresEjemplares();
+        contadores.sumar(libro.getIdLibro(), EstadoEjemplar.DISPONIBLE, 1);
+        contadores.aplicar(session);
 
-    } catch (Exception e) {
-      if (transaction != null) {
-        transaction.rollback();
-      }
-      System.err.println("Error al agregar ejemplar: " + e.getMessage());
-    } finally {
-      if (session != null && session.isOpen()) {
-        session.close();
+        transaction.commit();
+        reserva.confirmar();
+        contadores.invalidarCache(particion);
+        System.out.println("Ejemplar '" + codigoEjemplar + "' agregado correctamente al libro: " + libro.getTitulo());
+        return ResultadoOperacion.REALIZADO;
+
+      } catch (Exception e) {
+        medicion.fallo();
+        if (transaction != null) {
+          transaction.rollback();
+        }
+        if (reserva != null) {
+          reserva.liberar();
+        }
+        relanzarExcesoPresupuesto(e);
+        System.err.println("Error al agregar ejemplar: " + e.getMessage());
+        return resultadoDeError(e);
+      } finally {
+        if (session != null && session.isOpen()) {
+          session.close();
+        }
       }
     }
   }
 
   // APARTADO 4: OPERACIONES READ (Opciones 3, 4, 5 y 6)
   
-  // Opción 3: Recupera todos los autores y muestra el número de libros.
-  
-  public void listarTodosLosAutores() {
-    Session session = null;
-
-    try {
-      session = HibernateUtil.getSessionFactory().openSession();
-      Query<Autor> query = session.createQuery("FROM Autor", Autor.class);
-      List<Autor> autores = query.list();
+  // Las opciones 3, 4 y 5 son consultas puras y están en ConsultasBiblioteca (devuelven DTOs, sin imprimir).
 
-      if (autores.isEmpty()) {
-        System.out.println("No hay autores registrados en la base de datos.");
-        return;
+  // Opción 6: Muestra el número total de autores, libros y ejemplares registrados.
+  // Los totales salen de los contadores en memoria (EstadisticasBiblioteca), sin consultar la base de datos.
+  
+  public void mostrarEstadisticas() {
+    try (Medicion medicion = MetricasOperaciones.iniciar("mostrarEstadisticas")) {
+      try {
+        EstadisticasBiblioteca estadisticas = HibernateUtil.getEstadisticasBiblioteca();
+
+        System.out.println("\n=== ESTADÍSTICAS GLOBALES DE LA BIBLIOTECA ===");
+        System.out.println("  Autores registrados: " + estadisticas.getTotalAutores());
+        System.out.println("  Libros únicos en catálogo: " + estadisticas.getTotalLibros());
+        System.out.println("  Ejemplares físicos en total: " + estadisticas.getTotalEjemplares());
+        for (Map.Entry<EstadoEjemplar, Long> entrada : estadisticas.getEjemplaresPorEstado().entrySet()) {
+          System.out.printf("    - %-11s %d\n", entrada.getKey() + ":", entrada.getValue());
+        }
+        DisponibilidadLibros disponibilidad = HibernateUtil.getDisponibilidadLibros();
+        System.out.printf("  Disponibilidad en memoria: %d libros, %d KB\n", disponibilidad.getTotalLibros(), disponibilidad.getBytes() / 1024);
+        int particiones = HibernateUtil.getParticiones().getNumero();
+        if (particiones > 1) {
+          System.out.println("  Particiones: " + particiones);
+        }
+        System.out.println("==============================================");
+      } catch (RuntimeException e) {
+        medicion.fallo();
+        throw e;
       }
+    }
+  }
 
-      System.out.println("\n=== LISTADO DE AUTORES REGISTRADOS ===");
-      System.out.printf("%-5s | %-30s | %-15s | %s\n", "ID", "NOMBRE COMPLETO", "NACIONALIDAD", "Nº LIBROS");
-      System.out.println("------------------------------------------------------------------");
-
-      for (Autor autor : autores) {
-        int numLibros = autor.getLibros().size();
-
-        System.out.printf("%-5d | %-30s | %-15s | %d\n",
-          autor.getIdAutor(),
-          autor.getNombre() + " " + autor.getApellidos(),
-          autor.getNacionalidad(),
-          numLibros
-        );
-      }
-      System.out.println("==================================================================");
+  // Opción 16: Vuelve a contar en la base de datos y corrige los contadores en memoria.
 
-    } catch (Exception e) {
-      System.err.println("Error al listar autores: " + e.getMessage());
-    } finally {
-      if (session != null && session.isOpen()) {
-        session.close();
+  public ResultadoOperacion conciliarEstadisticas() {
+    try (Medicion medicion = MetricasOperaciones.iniciar("conciliarEstadisticas")) {
+      try {
+        HibernateUtil.getEstadisticasBiblioteca().conciliar();
+        System.out.println("Estadísticas conciliadas con la base de datos.");
+        mostrarEstadisticas();
+        return ResultadoOperacion.REALIZADO;
+      } catch (Exception e) {
+        medicion.fallo();
+        relanzarExcesoPresupuesto(e);
+        System.err.println("Error al conciliar estadísticas: " + e.getMessage());
+        return resultadoDeError(e);
       }
     }
   }
 
+  // APARTADO 5: MÉTODOS DE ACTUALIZACIÓN (UPDATE)
 
-  // Opción 4: Busca un Libro por su clave primaria (ID).
-  
-  public void buscarLibroPorId(Integer idLibro) {
-    Session session = null;
+  // Opción 7: Actualiza el estado de un Ejemplar por su código.
 
-    try {
-      session = HibernateUtil.getSessionFactory().openSession();
-      Libro libro = session.get(Libro.class, idLibro);
+  public ResultadoOperacion actualizarEstadoEjemplar(String codigoEjemplar, String nuevoEstadoStr) {
+    try (Medicion medicion = MetricasOperaciones.iniciar("actualizarEstadoEjemplar")) {
+      Session session = null;
+      Transaction transaction = null;
 
-      if (libro == null) {
-        System.out.println("No se encontró ningún libro con el ID: " + idLibro);
-        return;
+      try {
+          EstadoEjemplar nuevoEstado;
+          // Intenta convertir el String (en mayúsculas) a EstadoEjemplar; si el valor obtenido no es inválido, captura la excepción y notifica el error.
+          try {
+              nuevoEstado = EstadoEjemplar.valueOf(nuevoEstadoStr.toUpperCase());
+          } catch (IllegalArgumentException e) {
+              System.err.println("Error: El estado '" + nuevoEstadoStr + "' no es válido. Opciones: DISPONIBLE, PRESTADO, REPARACION, BAJA.");
+              return ResultadoOperacion.DATOS_NO_VALIDOS;
+          }
+
+          SessionFactory particion = particionDeEjemplar(codigoEjemplar);
+          session = particion.openSession();
+          transaction = session.beginTransaction();
+
+          // Buscar el ejemplar por su código único (clave natural)
+          Ejemplar ejemplar = session.bySimpleNaturalId(Ejemplar.class).load(codigoEjemplar);
+
+          if (ejemplar != null) {
+              ContadoresEjemplares contadores = new ContadoresEjemplares();
+              contadores.mover(ContadoresEjemplares.idLibro(ejemplar), ejemplar.getEstado(), nuevoEstado);
+              ejemplar.setEstado(nuevoEstado);
+              contadores.aplicar(session);
+              transaction.commit();
+              contadores.invalidarCache(particion);
+              System.out.println("Ejemplar '" + codigoEjemplar + "' actualizado a estado: " + nuevoEstado.toString());
+              return ResultadoOperacion.REALIZADO;
+          } else {
+              transaction.rollback(); // Revierte todos los cambios de la transacción a la base de datos debido a un error
+              System.out.println("No se encontró el ejemplar con código: " + codigoEjemplar);
+              return ResultadoOperacion.NO_ENCONTRADO;
+          }
+
+      } catch (Exception e) {
+          medicion.fallo();
+          if (transaction != null) {
+              transaction.rollback();
+          }
+          relanzarExcesoPresupuesto(e);
+          System.err.println("Error al actualizar estado del ejemplar: " + e.getMessage());
+          return resultadoDeError(e);
+      } finally {
+          if (session != null && session.isOpen()) {
+              session.close();
+          }
       }
+    }
+  }
 
-      System.out.println("\n=== DETALLES DEL LIBRO (ID: " + idLibro + ") ===");
-      System.out.println("Título: " + libro.getTitulo());
-      System.out.println("ISBN: " + libro.getIsbn());
-      System.out.println("Páginas: " + libro.getNumeroPaginas());
-
-      if (libro.getAutor() != null) {
-        System.out.println("Autor: " + libro.getAutor().getNombre() + " " + libro.getAutor().getApellidos());
+  // Opción 15: Cambia el estado de muchos ejemplares a la vez (p. ej. un carro de devoluciones).
+  // Una sola transacción y, por cada bloque de códigos, una SELECT ... FOR UPDATE para clasificarlos y un UPDATE masivo.
+  // El bloqueo impide que otra transacción cambie esas filas entre la SELECT y el UPDATE, así el UPDATE cambia
+  // exactamente las filas clasificadas como actualizables y el resultado de cada código es el que se aplicó.
+  // Los préstamos siguen siendo optimistas: si chocan con el lote esperan al commit y fallan por versión.
+  // Con varias particiones los códigos se agrupan por la partición que les da DirectorioClaves (los desconocidos van
+  // a la principal, que responde "no encontrado") y solo se tocan las particiones con alguno, una tras otra y cada
+  // una en su transacción: si falla una, los cambios de las anteriores ya están confirmados.
+
+  public Map<String, ResultadoCambioEstado> actualizarEstadoEjemplares(Collection<String> codigos, EstadoEjemplar nuevoEstado) {
+    try (Medicion medicion = MetricasOperaciones.iniciar("actualizarEstadoEjemplares")) {
+      Map<String, ResultadoCambioEstado> resultados = new LinkedHashMap<>();
+      for (String codigo : codigos) {
+        resultados.put(codigo, ResultadoCambioEstado.NO_ENCONTRADO);
+      }
+      if (resultados.isEmpty()) {
+        return resultados;
       }
 
-      System.out.println("--- Ejemplares (" + libro.getEjemplares().size() + ") ---");
-      if (libro.getEjemplares().isEmpty()) {
-        System.out.println("Sin ejemplares registrados");
-      } else {
-        for (Ejemplar ejemplar : libro.getEjemplares()) {
-          System.out.println("  [Código: " + ejemplar.getCodigoEjemplar() + " | Estado: " + ejemplar.getEstado() + " | Ubicación: " + ejemplar.getUbicacion() + "]");
+      // Estados desde los que se puede pasar a 'nuevoEstado'
+      List<EstadoEjemplar> origenesValidos = new ArrayList<>();
+      for (EstadoEjemplar estado : EstadoEjemplar.values()) {
+        if (estado.puedeCambiarA(nuevoEstado)) {
+          origenesValidos.add(estado);
         }
       }
-      System.out.println("=========================================");
 
-    } catch (Exception e) {
-      System.err.println("Error al buscar libro por ID: " + e.getMessage());
-    } finally {
-      if (session != null && session.isOpen()) {
-        session.close();
+      try {
+        Map<SessionFactory, List<String>> porParticion = new HashMap<>();
+        for (String codigo : resultados.keySet()) {
+          porParticion.computeIfAbsent(particionDeEjemplar(codigo), particion -> new ArrayList<>()).add(codigo);
+        }
+        for (SessionFactory particion : HibernateUtil.getParticiones().todas()) {
+          List<String> deParticion = porParticion.get(particion);
+          if (deParticion != null) {
+            actualizarEstadoEjemplares(particion, deParticion, nuevoEstado, origenesValidos, resultados);
+          }
+        }
+        return resultados;
+
+      } catch (RuntimeException e) {
+        medicion.fallo();
+        throw e;
       }
     }
   }
 
-  
-  // Opción 5: Busca y lista todos los ejemplares que se encuentren en el estado proporcionado.
-  
-  public void buscarEjemplaresPorEstado(String estadoStr) {
+  // Cambio de estado por lotes de los códigos 'pendientes' de una partición; anota en 'resultados' los que encuentra
+
+  private void actualizarEstadoEjemplares(SessionFactory particion, List<String> pendientes, EstadoEjemplar nuevoEstado,
+                                          List<EstadoEjemplar> origenesValidos, Map<String, ResultadoCambioEstado> resultados) {
+    // Ejemplares que los UPDATE han cambiado de verdad, por estado previo, para avisar a las estadísticas tras el commit
+    Map<EstadoEjemplar, Long> cambiados = new EnumMap<>(EstadoEjemplar.class);
+    // Los contadores de los libros afectados se recuentan en la BD al final, después de los UPDATE masivos
+    ContadoresEjemplares contadores = new ContadoresEjemplares();
+
     Session session = null;
+    Transaction transaction = null;
 
     try {
-      EstadoEjemplar estado;
-      try {
-        estado = EstadoEjemplar.valueOf(estadoStr.toUpperCase());
-      } catch (IllegalArgumentException e) {
-        System.err.println("Error: El estado '" + estadoStr + "' no es válido. Opciones: DISPONIBLE, PRESTADO, REPARACION, BAJA.");
-        return;
-      }
-
-      session = HibernateUtil.getSessionFactory().openSession();
+      session = particion.openSession();
+      transaction = session.beginTransaction();
 
-      Query<Ejemplar> query = session.createQuery("FROM Ejemplar e WHERE e.estado = :estado", Ejemplar.class);
-      query.setParameter("estado", estado);
-      List<Ejemplar> ejemplares = query.list();
+      for (int desde = 0; desde < pendientes.size(); desde += TAMANO_BLOQUE_CODIGOS) {
+        List<String> bloque = pendientes.subList(desde, Math.min(desde + TAMANO_BLOQUE_CODIGOS, pendientes.size()));
+
+        // 1. Clasificar los códigos del bloque según su estado actual, bloqueando sus filas hasta el commit
+        List<Object[]> filas = session.createQuery(
+            "SELECT e.codigoEjemplar, e.estado, e.libro.idLibro FROM Ejemplar e WHERE e.codigoEjemplar IN :codigos", Object[].class)
+          .setParameterList("codigos", bloque)
+          .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+          .list();
+
+        List<String> actualizables = new ArrayList<>();
+        Map<EstadoEjemplar, Long> previosBloque = new EnumMap<>(EstadoEjemplar.class);
+        for (Object[] fila : filas) {
+          String codigo = (String) fila[0];
+          EstadoEjemplar estadoActual = (EstadoEjemplar) fila[1];
+          if (estadoActual.puedeCambiarA(nuevoEstado)) {
+            actualizables.add(codigo);
+            previosBloque.merge(estadoActual, 1L, Long::sum);
+            contadores.recalcular((Integer) fila[2]);
+          } else {
+            resultados.put(codigo, ResultadoCambioEstado.TRANSICION_INVALIDA);
+          }
+        }
+        if (actualizables.isEmpty() || origenesValidos.isEmpty()) {
+          continue;
+        }
 
-      if (ejemplares.isEmpty()) {
-        System.out.println("No se encontraron ejemplares en estado: " + estado.toString());
-        return;
+        // 2. Un único UPDATE para todo el bloque (VERSIONED incrementa 'version', así invalida los préstamos en curso)
+        int actualizados = session.createQuery(
+            "UPDATE VERSIONED Ejemplar e SET e.estado = :nuevoEstado "
+              + "WHERE e.codigoEjemplar IN :codigos AND e.estado IN :origenes")
+          .setParameter("nuevoEstado", nuevoEstado)
+          .setParameterList("codigos", actualizables)
+          .setParameterList("origenes", origenesValidos)
+          .executeUpdate();
+
+        // Con las filas bloqueadas nadie ha podido cambiarlas: si no cuadra, no se sabe qué se actualizó y se deshace
+        if (actualizados != actualizables.size()) {
+          throw new IllegalStateException("El UPDATE cambió " + actualizados + " ejemplares de " + actualizables.size() + " clasificados");
+        }
+        for (String codigo : actualizables) {
+          resultados.put(codigo, ResultadoCambioEstado.ACTUALIZADO);
+        }
+        previosBloque.forEach((previo, cantidad) -> cambiados.merge(previo, cantidad, Long::sum));
       }
 
-      System.out.println("\n=== EJEMPLARES EN ESTADO: " + estado.toString() + " ===");
-      System.out.printf("%-15s | %-40s | %s\n", "CÓDIGO", "TÍTULO DEL LIBRO", "UBICACIÓN");
-      System.out.println("-------------------------------------------------------------------------");
-
-      for (Ejemplar ejemplar : ejemplares) {
-        String tituloEjemplar = (ejemplar.getLibro() != null) ? ejemplar.getLibro().getTitulo() : "N/A";
+      contadores.aplicar(session);
+      transaction.commit();
+      contadores.invalidarCache(particion);
 
-        System.out.printf("%-15s | %-40s | %s\n",
-          ejemplar.getCodigoEjemplar(),
-          tituloEjemplar,
-          ejemplar.getUbicacion()
-        );
+      // El UPDATE masivo no dispara los listeners: se informa a los contadores en memoria
+      EstadisticasBiblioteca estadisticas = HibernateUtil.getEstadisticasBiblioteca();
+      for (Map.Entry<EstadoEjemplar, Long> cambio : cambiados.entrySet()) {
+        estadisticas.registrarCambioEstado(cambio.getKey(), nuevoEstado, cambio.getValue());
       }
-      System.out.println("=========================================================================");
 
-    } catch (Exception e) {
-      System.err.println("Error al buscar ejemplares por estado: " + e.getMessage());
-    } finally {
-      if (session != null && session.isOpen()) {
-        session.close();
+    } catch (RuntimeException e) {
+      if (transaction != null) {
+        transaction.rollback();
       }
-    }
-  }
-
-  // Opción 6: Muestra el número total de autores, libros y ejemplares registrados.
-  
-  public void mostrarEstadisticas() {
-    Session session = null;
-
-    try {
-      session = HibernateUtil.getSessionFactory().openSession();
-      
-      // 
-      Long totalAutores = session.createQuery("SELECT COUNT(a) FROM Autor a", Long.class).uniqueResult();
-      Long totalLibros = session.createQuery("SELECT COUNT(l) FROM Libro l", Long.class).uniqueResult();
-      Long totalEjemplares = session.createQuery("SELECT COUNT(e) FROM Ejemplar e", Long.class).uniqueResult();
-
-      System.out.println("\n=== ESTADÍSTICAS GLOBALES DE LA BIBLIOTECA ===");
-      System.out.println("  Autores registrados: " + totalAutores);
-      System.out.println("  Libros únicos en catálogo: " + totalLibros);
-      System.out.println("  Ejemplares físicos en total: " + totalEjemplares);
-      System.out.println("==============================================");
-
-    } catch (Exception e) {
-      System.err.println("Error al mostrar estadísticas: " + e.getMessage());
+      throw e;
     } finally {
       if (session != null && session.isOpen()) {
         session.close();
@@ -257,102 +417,114 @@ public class GestionBiblioteca {
     }
   }
 
-  // APARTADO 5: MÉTODOS DE ACTUALIZACIÓN (UPDATE)
-
-  // Opción 7: Actualiza el estado de un Ejemplar por su código.
-
-  public void actualizarEstadoEjemplar(String codigoEjemplar, String nuevoEstadoStr) {
-    Session session = null;
-    Transaction transaction = null;
-
-    try {
-        EstadoEjemplar nuevoEstado;
-        // Intenta convertir el String (en mayúsculas) a EstadoEjemplar; si el valor obtenido no es inválido, captura la excepción y notifica el error.
-        try {
-            nuevoEstado = EstadoEjemplar.valueOf(nuevoEstadoStr.toUpperCase());
-        } catch (IllegalArgumentException e) {
-            System.err.println("Error: El estado '" + nuevoEstadoStr + "' no es válido. Opciones: DISPONIBLE, PRESTADO, REPARACION, BAJA.");
-            return;
-        }
+  // Opción 8: Actualiza el título y/o el número de páginas de un Libro por su ID.
+  
+  public ResultadoOperacion actualizarDatosLibro(Integer idLibro, String nuevoTitulo, Integer nuevasPaginas) {
+    try (Medicion medicion = MetricasOperaciones.iniciar("actualizarDatosLibro")) {
+      Session session = null;
+      Transaction transaction = null;
 
-        session = HibernateUtil.getSessionFactory().openSession();
+      try {
+        session = HibernateUtil.getParticiones().deEntidad(idLibro).openSession();
         transaction = session.beginTransaction();
 
-        // Buscar el ejemplar por su código único
-        Query<Ejemplar> query = session.createQuery("FROM Ejemplar e WHERE e.codigoEjemplar = :codigo", Ejemplar.class);
-        query.setParameter("codigo", codigoEjemplar);
-        Ejemplar ejemplar = query.uniqueResult();
+        // 1. Cargar el Libro por su ID
+        Libro libro = session.get(Libro.class, idLibro);
 
-        if (ejemplar != null) {
-            ejemplar.setEstado(nuevoEstado);
-            transaction.commit();
-            System.out.println("Ejemplar '" + codigoEjemplar + "' actualizado a estado: " + nuevoEstado.toString());
+        if (libro != null) {
+          boolean modificado = false;
+        
+          // 2. Actualizar Título si se proporciona un valor no vacío
+          if (nuevoTitulo != null && !nuevoTitulo.trim().isEmpty()) {
+            libro.setTitulo(nuevoTitulo.trim());
+            modificado = true;
+            System.out.println(" --> Título actualizado a: " + nuevoTitulo);
+          }
+
+          // 3. Actualizar Número de Páginas si es mayor que 0
+          // Se maneja la nulidad, crucial cuando el parámetro es Integer
+          if (nuevasPaginas != null && nuevasPaginas > 0) {
+            libro.setNumeroPaginas(nuevasPaginas); 
+            modificado = true;
+            System.out.println(" --> Nº de Páginas actualizado a: " + nuevasPaginas);
+          }
+        
+          if (modificado) {
+              transaction.commit();
+              System.out.println("Libro con ID " + idLibro + " actualizado correctamente en la base de datos.");
+              return ResultadoOperacion.REALIZADO;
+          } else {
+              transaction.rollback();
+              System.out.println("No se realizaron cambios en el libro con ID " + idLibro + " (datos vacíos o no válidos).");
+              return ResultadoOperacion.DATOS_NO_VALIDOS;
+          }
+        
         } else {
-            transaction.rollback(); // Revierte todos los cambios de la transacción a la base de datos debido a un error
-            System.out.println("No se encontró el ejemplar con código: " + codigoEjemplar);
+          transaction.rollback();
+          System.out.println("No se encontró el libro con ID: " + idLibro + ". No se pudo actualizar.");
+          return ResultadoOperacion.NO_ENCONTRADO;
         }
 
-    } catch (Exception e) {
+      } catch (Exception e) {
+        medicion.fallo();
         if (transaction != null) {
-            transaction.rollback();
+          transaction.rollback();
         }
-        System.err.println("Error al actualizar estado del ejemplar: " + e.getMessage());
-    } finally {
+        relanzarExcesoPresupuesto(e);
+        System.err.println("Error al actualizar datos del libro: " + e.getMessage());
+        return resultadoDeError(e);
+      } finally {
         if (session != null && session.isOpen()) {
-            session.close();
+          session.close();
         }
+      }
     }
   }
 
-  // Opción 8: Actualiza el título y/o el número de páginas de un Libro por su ID.
-  
-  public void actualizarDatosLibro(Integer idLibro, String nuevoTitulo, Integer nuevasPaginas) {
+
+  // Opción 23: Repara los contadores de ejemplares por estado de los libros (Libro.getEjemplaresDisponibles()...).
+  // Una SELECT con GROUP BY localiza los libros descuadrados (p. ej. por cambios hechos fuera de la aplicación)
+  // y solo esos se recuentan. Devuelve el número de libros corregidos (en todas las particiones, a la vez).
+
+  public int repararContadoresEjemplares() {
+    try (Medicion medicion = MetricasOperaciones.iniciar("repararContadoresEjemplares")) {
+      try {
+        Particiones particiones = HibernateUtil.getParticiones();
+        int corregidos = 0;
+        for (int reparados : particiones.enTodas(p -> repararContadoresEjemplares(particiones.get(p)))) {
+          corregidos += reparados;
+        }
+        return corregidos;
+
+      } catch (RuntimeException e) {
+        medicion.fallo();
+        throw e;
+      }
+    }
+  }
+
+  private int repararContadoresEjemplares(SessionFactory particion) {
     Session session = null;
     Transaction transaction = null;
 
     try {
-      session = HibernateUtil.getSessionFactory().openSession();
+      session = particion.openSession();
       transaction = session.beginTransaction();
 
-      // 1. Cargar el Libro por su ID
-      Libro libro = session.get(Libro.class, idLibro);
-
-      if (libro != null) {
-        boolean modificado = false;
-        
-        // 2. Actualizar Título si se proporciona un valor no vacío
-        if (nuevoTitulo != null && !nuevoTitulo.trim().isEmpty()) {
-          libro.setTitulo(nuevoTitulo.trim());
-          modificado = true;
-          System.out.println(" --> Título actualizado a: " + nuevoTitulo);
-        }
+      List<Integer> descuadrados = ContadoresEjemplares.buscarDescuadrados(session);
+      ContadoresEjemplares contadores = new ContadoresEjemplares();
+      contadores.recalcular(descuadrados);
+      contadores.aplicar(session);
 
-        // 3. Actualizar Número de Páginas si es mayor que 0
-        // Se maneja la nulidad, crucial cuando el parámetro es Integer
-        if (nuevasPaginas != null && nuevasPaginas > 0) {
-          libro.setNumeroPaginas(nuevasPaginas); 
-          modificado = true;
-          System.out.println(" --> Nº de Páginas actualizado a: " + nuevasPaginas);
-        }
-        
-        if (modificado) {
-            transaction.commit();
-            System.out.println("Libro con ID " + idLibro + " actualizado correctamente en la base de datos.");
-        } else {
-            transaction.rollback();
-            System.out.println("No se realizaron cambios en el libro con ID " + idLibro + " (datos vacíos o no válidos).");
-        }
-        
-      } else {
-        transaction.rollback();
-        System.out.println("No se encontró el libro con ID: " + idLibro + ". No se pudo actualizar.");
-      }
+      transaction.commit();
+      contadores.invalidarCache(particion);
+      return descuadrados.size();
 
-    } catch (Exception e) {
+    } catch (RuntimeException e) {
       if (transaction != null) {
         transaction.rollback();
       }
-      System.err.println("Error al actualizar datos del libro: " + e.getMessage());
+      throw e;
     } finally {
       if (session != null && session.isOpen()) {
         session.close();
@@ -365,106 +537,243 @@ public class GestionBiblioteca {
 
   // Opción 9: Elimina un ejemplar por su código.
   
-  public void eliminarEjemplar(String codigoEjemplar) {
-    Session session = null;
-    Transaction transaction = null;
+  public ResultadoOperacion eliminarEjemplar(String codigoEjemplar) {
+    try (Medicion medicion = MetricasOperaciones.iniciar("eliminarEjemplar")) {
+      Session session = null;
+      Transaction transaction = null;
 
-    try {
-        session = HibernateUtil.getSessionFactory().openSession();
-        transaction = session.beginTransaction();
-
-        // Buscar el ejemplar por su código único
-        Query<Ejemplar> query = session.createQuery("FROM Ejemplar e WHERE e.codigoEjemplar = :codigo", Ejemplar.class);
-        query.setParameter("codigo", codigoEjemplar);
-        Ejemplar ejemplar = query.uniqueResult();
+      try {
+          SessionFactory particion = particionDeEjemplar(codigoEjemplar);
+          session = particion.openSession();
+          transaction = session.beginTransaction();
+
+          // Buscar el ejemplar por su código único (clave natural)
+          Ejemplar ejemplar = session.bySimpleNaturalId(Ejemplar.class).load(codigoEjemplar);
+
+          if (ejemplar != null) {
+              ContadoresEjemplares contadores = new ContadoresEjemplares();
+              contadores.sumar(ContadoresEjemplares.idLibro(ejemplar), ejemplar.getEstado(), -1);
+              session.remove(ejemplar);
+              contadores.aplicar(session);
+              transaction.commit();
+              contadores.invalidarCache(particion);
+              System.out.println("Ejemplar '" + codigoEjemplar + "' eliminado correctamente.");
+              return ResultadoOperacion.REALIZADO;
+          } else {
+              transaction.rollback();
+              System.out.println("No se encontró el ejemplar con código: " + codigoEjemplar);
+              return ResultadoOperacion.NO_ENCONTRADO;
+          }
+
+      } catch (Exception e) {
+          medicion.fallo();
+          if (transaction != null) {
+              transaction.rollback();
+          }
+          relanzarExcesoPresupuesto(e);
+          System.err.println("Error al eliminar ejemplar: " + e.getMessage());
+          return resultadoDeError(e);
+      } finally {
+          if (session != null && session.isOpen()) {
+              session.close();
+          }
+      }
+    }
+  }
 
-        if (ejemplar != null) {
-            session.remove(ejemplar);
-            transaction.commit();
-            System.out.println("Ejemplar '" + codigoEjemplar + "' eliminado correctamente.");
-        } else {
-            transaction.rollback();
-            System.out.println("No se encontró el ejemplar con código: " + codigoEjemplar);
-        }
+  // Opción 10: Elimina un libro por su ID.
+  // Borrado por conjuntos: un DELETE para sus ejemplares y otro para el libro, sin cargar el grafo en memoria.
+  // Los DELETE masivos de HQL invalidan las regiones de caché afectadas (entidades, colecciones y claves naturales).
+  
+  public ResultadoOperacion eliminarLibro(Integer idLibro) {
+    try (Medicion medicion = MetricasOperaciones.iniciar("eliminarLibro")) {
+      Session session = null;
+      Transaction transaction = null;
 
-    } catch (Exception e) {
-        if (transaction != null) {
-            transaction.rollback();
-        }
-        System.err.println("Error al eliminar ejemplar: " + e.getMessage());
-    } finally {
-        if (session != null && session.isOpen()) {
-            session.close();
-        }
+      try {
+          session = HibernateUtil.getParticiones().deEntidad(idLibro).openSession();
+          transaction = session.beginTransaction();
+
+          // 1. Comprobar que existe (solo se lee el título para el mensaje)
+          String titulo = session.createQuery("SELECT l.titulo FROM Libro l WHERE l.idLibro = :id", String.class)
+              .setParameter("id", idLibro)
+              .uniqueResult();
+
+          if (titulo != null) {
+              // Los DELETE masivos no disparan listeners: se cuentan antes los ejemplares por estado para las estadísticas
+              Map<EstadoEjemplar, Long> ejemplaresPorEstado = contarEjemplaresPorEstado(session,
+                  "WHERE e.libro.idLibro = :id", idLibro);
+              // Y sus claves naturales, para quitarlas del directorio de particiones
+              List<String> isbns = clavesABorrar(session, "SELECT l.isbn FROM Libro l WHERE l.idLibro = :id", idLibro);
+              List<String> codigos = clavesABorrar(session,
+                  "SELECT e.codigoEjemplar FROM Ejemplar e WHERE e.libro.idLibro = :id", idLibro);
+
+              int ejemplares = session.createQuery("DELETE FROM Ejemplar e WHERE e.libro.idLibro = :id")
+                  .setParameter("id", idLibro)
+                  .executeUpdate();
+              session.createQuery("DELETE FROM Libro l WHERE l.idLibro = :id")
+                  .setParameter("id", idLibro)
+                  .executeUpdate();
+              transaction.commit();
+              HibernateUtil.getEstadisticasBiblioteca().registrarBorradoMasivo(0, 1, ejemplaresPorEstado);
+              HibernateUtil.getIndiceBusqueda().eliminarLibro(idLibro);
+              HibernateUtil.getDisponibilidadLibros().eliminarLibros(List.of(idLibro));
+              HibernateUtil.getDirectorioClaves().eliminar(HibernateUtil.getParticiones().particionDeId(idLibro), isbns, codigos);
+              System.out.println("Libro con ID " + idLibro + " ('" + titulo + "') eliminado correctamente.");
+              System.out.println("Ejemplares del libro tambien eliminados: " + ejemplares);
+              return ResultadoOperacion.REALIZADO;
+          } else {
+              transaction.rollback();
+              System.out.println("No se encontró el libro con ID: " + idLibro);
+              return ResultadoOperacion.NO_ENCONTRADO;
+          }
+
+      } catch (Exception e) {
+          medicion.fallo();
+          if (transaction != null) {
+              transaction.rollback();
+          }
+          relanzarExcesoPresupuesto(e);
+          System.err.println("Error al eliminar libro: " + e.getMessage());
+          return resultadoDeError(e);
+      } finally {
+          if (session != null && session.isOpen()) {
+              session.close();
+          }
+      }
     }
   }
 
-  // Opción 10: Elimina un libro por su ID.
+  // Opción 11: Elimina un autor por su ID (con cascada).
+  // Equivale a la cascada Autor -> Libro -> Ejemplar, pero con tres DELETE por conjuntos: el coste no depende
+  // del número de libros y ejemplares del autor y no se carga ninguna entidad.
   
-  public void eliminarLibro(Integer idLibro) {
-    Session session = null;
-    Transaction transaction = null;
+  public ResultadoOperacion eliminarAutor(Integer idAutor) {
+    try (Medicion medicion = MetricasOperaciones.iniciar("eliminarAutor")) {
+      Session session = null;
+      Transaction transaction = null;
 
-    try {
-        session = HibernateUtil.getSessionFactory().openSession();
-        transaction = session.beginTransaction();
+      try {
+          // El autor y todo su grafo están en la partición que indica su id
+          session = HibernateUtil.getParticiones().deEntidad(idAutor).openSession();
+          transaction = session.beginTransaction();
+
+          // 1. Comprobar que existe (solo se leen los apellidos para el mensaje)
+          String apellidos = session.createQuery("SELECT a.apellidos FROM Autor a WHERE a.idAutor = :id", String.class)
+              .setParameter("id", idAutor)
+              .uniqueResult();
+
+          if (apellidos != null) {
+              Map<EstadoEjemplar, Long> ejemplaresPorEstado = contarEjemplaresPorEstado(session,
+                  "WHERE e.libro.autor.idAutor = :id", idAutor);
+              // Y los ids de sus libros, para quitarlos del índice de búsqueda
+              List<Integer> idsLibros = session.createQuery(
+                      "SELECT l.idLibro FROM Libro l WHERE l.autor.idAutor = :id", Integer.class)
+                  .setParameter("id", idAutor)
+                  .getResultList();
+              // Y las claves naturales de sus libros y ejemplares, para quitarlas del directorio de particiones
+              List<String> isbns = clavesABorrar(session, "SELECT l.isbn FROM Libro l WHERE l.autor.idAutor = :id", idAutor);
+              List<String> codigos = clavesABorrar(session,
+                  "SELECT e.codigoEjemplar FROM Ejemplar e WHERE e.libro.autor.idAutor = :id", idAutor);
+
+              // 2. Borrar de las hojas a la raíz para respetar las claves foráneas
+              int ejemplares = session.createQuery(
+                      "DELETE FROM Ejemplar e WHERE e.libro.idLibro IN "
+                          + "(SELECT l.idLibro FROM Libro l WHERE l.autor.idAutor = :id)")
+                  .setParameter("id", idAutor)
+                  .executeUpdate();
+              int libros = session.createQuery("DELETE FROM Libro l WHERE l.autor.idAutor = :id")
+                  .setParameter("id", idAutor)
+                  .executeUpdate();
+              session.createQuery("DELETE FROM Autor a WHERE a.idAutor = :id")
+                  .setParameter("id", idAutor)
+                  .executeUpdate();
+              transaction.commit();
+              HibernateUtil.getEstadisticasBiblioteca().registrarBorradoMasivo(1, libros, ejemplaresPorEstado);
+              HibernateUtil.getIndiceBusqueda().eliminarAutor(idAutor, idsLibros);
+              HibernateUtil.getDisponibilidadLibros().eliminarLibros(idsLibros);
+              HibernateUtil.getDirectorioClaves().eliminar(HibernateUtil.getParticiones().particionDeId(idAutor), isbns, codigos);
+              System.out.println("Autor con ID " + idAutor + " ('" + apellidos + "') y todas sus relaciones eliminados correctamente"
+                  + " (" + libros + " libros, " + ejemplares + " ejemplares).");
+              return ResultadoOperacion.REALIZADO;
+          } else {
+              transaction.rollback();
+              System.out.println("No se encontró el autor con ID: " + idAutor);
+              return ResultadoOperacion.NO_ENCONTRADO;
+          }
+
+      } catch (Exception e) {
+          medicion.fallo();
+          if (transaction != null) {
+              transaction.rollback();
+          }
+          relanzarExcesoPresupuesto(e);
+          System.err.println("Error al eliminar autor: " + e.getMessage());
+          return resultadoDeError(e);
+      } finally {
+          if (session != null && session.isOpen()) {
+              session.close();
+          }
+      }
+    }
+  }
 
-        // 1. Cargar el Libro por su ID (PK)
-        Libro libro = session.get(Libro.class, idLibro);
+  // Estos métodos informan de sus errores por consola en lugar de lanzarlos, salvo el exceso de presupuesto de
+  // sentencias (modo FALLAR): se relanza para que falle quien llama, igual que en ConsultasBiblioteca
 
-        if (libro != null) {
-            session.remove(libro); // Asume que la cascada elimina los ejemplares asociados
-            transaction.commit();
-            System.out.println("Libro con ID " + idLibro + " ('" + libro.getTitulo() + "') eliminado correctamente.");
-            System.out.println("Ejemplares del libro tambien eliminados");
-        } else {
-            transaction.rollback();
-            System.out.println("No se encontró el libro con ID: " + idLibro);
-        }
+  private static void relanzarExcesoPresupuesto(Exception e) {
+    for (Throwable causa = e; causa != null; causa = causa.getCause()) {
+      if (causa instanceof PresupuestoSentenciasExcedidoException exceso) {
+        throw exceso;
+      }
+    }
+  }
 
-    } catch (Exception e) {
-        if (transaction != null) {
-            transaction.rollback();
-        }
-        System.err.println("Error al eliminar libro: " + e.getMessage());
-    } finally {
-        if (session != null && session.isOpen()) {
-            session.close();
-        }
+  // Resultado de una operación que ha fallado con 'e' (ya deshecha y mostrada por consola)
+
+  private static ResultadoOperacion resultadoDeError(Exception e) {
+    for (Throwable causa = e; causa != null; causa = causa.getCause()) {
+      if (causa instanceof ClaveDuplicadaException || causa instanceof ConstraintViolationException
+          || causa instanceof StaleStateException || causa instanceof OptimisticLockException) {
+        return ResultadoOperacion.CONFLICTO;
+      }
     }
+    return ResultadoOperacion.ERROR;
   }
 
-  // Opción 11: Elimina un autor por su ID (con cascada).
-  
-  public void eliminarAutor(Integer idAutor) {
-    Session session = null;
-    Transaction transaction = null;
+  // Partición de un libro por su ISBN y de un ejemplar por su código (la principal si no están en ninguna)
 
-    try {
-        session = HibernateUtil.getSessionFactory().openSession();
-        transaction = session.beginTransaction();
+  static SessionFactory particionDeLibro(String isbn) {
+    return HibernateUtil.getDirectorioClaves().particionDeLibro(isbn);
+  }
 
-        // 1. Cargar el Autor por su ID (PK)
-        Autor autor = session.get(Autor.class, idAutor);
+  static SessionFactory particionDeEjemplar(String codigoEjemplar) {
+    return HibernateUtil.getDirectorioClaves().particionDeEjemplar(codigoEjemplar);
+  }
 
-        if (autor != null) {
-            session.remove(autor); // Asume CascadeType.ALL en Autor -> Libro -> Ejemplar
-            transaction.commit();
-            System.out.println("Autor con ID " + idAutor + " ('" + autor.getApellidos() + "') y todas sus relaciones eliminados correctamente.");
-        } else {
-            transaction.rollback();
-            System.out.println("No se encontró el autor con ID: " + idAutor);
-        }
+  // Claves naturales (ISBN o código) que se llevará un borrado masivo; sin particiones el directorio no las guarda
+  // y no hace falta leerlas.
 
-    } catch (Exception e) {
-        if (transaction != null) {
-            transaction.rollback();
-        }
-        System.err.println("Error al eliminar autor: " + e.getMessage());
-    } finally {
-        if (session != null && session.isOpen()) {
-            session.close();
-        }
+  private static List<String> clavesABorrar(Session session, String hql, Integer id) {
+    if (!HibernateUtil.getDirectorioClaves().isActivo()) {
+      return List.of();
+    }
+    return session.createQuery(hql, String.class)
+      .setParameter("id", id)
+      .getResultList();
+  }
+
+  // Cuenta por estado los ejemplares que cumplen el filtro (un solo GROUP BY); se usa antes de los borrados masivos.
+
+  private Map<EstadoEjemplar, Long> contarEjemplaresPorEstado(Session session, String filtro, Integer id) {
+    Map<EstadoEjemplar, Long> conteo = new EnumMap<>(EstadoEjemplar.class);
+    List<Object[]> filas = session.createQuery(
+        "SELECT e.estado, COUNT(e) FROM Ejemplar e " + filtro + " GROUP BY e.estado", Object[].class)
+      .setParameter("id", id)
+      .list();
+    for (Object[] fila : filas) {
+      conteo.put((EstadoEjemplar) fila[0], (Long) fila[1]);
     }
+    return conteo;
   }
 }
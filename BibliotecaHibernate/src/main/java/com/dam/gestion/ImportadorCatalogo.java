@@ -0,0 +1,272 @@
+package com.dam.gestion;
+
+import com.dam.modelo.Autor;
+import com.dam.modelo.Ejemplar;
+import com.dam.modelo.Ejemplar.EstadoEjemplar;
+import com.dam.modelo.Libro;
+import com.dam.util.DirectorioClaves;
+import com.dam.util.HibernateUtil;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Importación masiva del catálogo desde un fichero de texto, leído línea a línea.
+ *
+ * Formato (separador ';', las líneas vacías o que empiezan por '#' se ignoran):
+ *   AUTOR;nombre;apellidos;nacionalidad;dd/MM/yyyy
+ *   LIBRO;titulo;isbn;dd/MM/yyyy;numeroPaginas      (pertenece al último AUTOR leído)
+ *   EJEMPLAR;codigo;estado;ubicacion                 (pertenece al último LIBRO leído)
+ *
+ * Si el fichero termina en .jsonl, cada línea es un objeto JSON con "tipo" y los mismos campos por su nombre:
+ *   {"tipo":"AUTOR","nombre":...,"apellidos":...,"nacionalidad":...,"fechaNacimiento":"dd/MM/yyyy"}
+ *   {"tipo":"LIBRO","titulo":...,"isbn":...,"fechaPublicacion":"dd/MM/yyyy","numeroPaginas":...}
+ *   {"tipo":"EJEMPLAR","codigoEjemplar":...,"estado":...,"ubicacion":...}
+ * Un campo que falta o es null vale como uno vacío en el formato de texto.
+ *
+ * Las entidades no se enlazan en las colecciones 'libros'/'ejemplares' del padre, solo se asigna el lado N:1,
+ * para que el grafo no crezca en memoria. Cada TAMANO_LOTE filas se hace flush + clear (un lote JDBC) y cada
+ * TAMANO_TRANSACCION filas se hace commit, así la memoria y la duración de cada transacción se mantienen acotadas.
+ * Como los libros se insertan antes que sus ejemplares, sus contadores por estado se recuentan antes de cada commit.
+ *
+ * Con varias particiones cada AUTOR va a la siguiente por turnos y sus LIBRO/EJEMPLAR le siguen; se mantiene una
+ * sesión y una transacción abiertas por partición, con sus lotes, y los commits se hacen a la vez en todas.
+ * Los ISBN y códigos de ejemplar se reservan en DirectorioClaves: uno que ya esté en otra partición interrumpe
+ * la importación como cualquier otra línea errónea.
+ */
+public class ImportadorCatalogo {
+  // Debe coincidir con hibernate.jdbc.batch_size
+  private static final int TAMANO_LOTE = 50;
+  private static final int TAMANO_TRANSACCION = 10_000;
+  // Propiedades de cada tipo de registro JSONL, en el orden de los campos del formato de texto
+  private static final Map<String, String[]> CAMPOS_JSON = Map.of(
+    "AUTOR", new String[] {"nombre", "apellidos", "nacionalidad", "fechaNacimiento"},
+    "LIBRO", new String[] {"titulo", "isbn", "fechaPublicacion", "numeroPaginas"},
+    "EJEMPLAR", new String[] {"codigoEjemplar", "estado", "ubicacion"});
+  private static final ObjectMapper JSON = new ObjectMapper();
+
+  // Sesión, transacción, contadores y claves pendientes de una partición durante la importación
+  private static class Destino {
+    final SessionFactory sessionFactory;
+    final Session session;
+    Transaction transaction;
+    final ContadoresEjemplares contadores = new ContadoresEjemplares();
+    final DirectorioClaves.Reserva reserva;
+    long filasEnLote;
+
+    Destino(SessionFactory sessionFactory) {
+      this.sessionFactory = sessionFactory;
+      this.reserva = HibernateUtil.getDirectorioClaves().reservar(sessionFactory);
+      this.session = sessionFactory.openSession();
+      this.transaction = session.beginTransaction();
+    }
+
+    void confirmar() {
+      contadores.aplicar(session);
+      transaction.commit();
+      reserva.confirmar();
+      contadores.invalidarCache(sessionFactory);
+    }
+  }
+
+  // Resultado de una importación: filas por tipo, duración y rendimiento.
+  public record ResultadoImportacion(long autores, long libros, long ejemplares, long milisegundos) {
+
+    public long filas() {
+      return autores + libros + ejemplares;
+    }
+
+    public double filasPorSegundo() {
+      return milisegundos == 0 ? filas() : filas() * 1000.0 / milisegundos;
+    }
+  }
+
+  public ResultadoImportacion importar(Path fichero) throws IOException {
+    SimpleDateFormat formatoFecha = new SimpleDateFormat("dd/MM/yyyy");
+    boolean jsonl = fichero.getFileName().toString().toLowerCase().endsWith(".jsonl");
+    long inicio = System.nanoTime();
+    long autores = 0, libros = 0, ejemplares = 0;
+    long numeroLinea = 0;
+
+    // Una entrada por partición, en el orden en que se empiezan a usar
+    Map<SessionFactory, Destino> destinos = new LinkedHashMap<>();
+
+    try (BufferedReader lector = Files.newBufferedReader(fichero, StandardCharsets.UTF_8)) {
+      Destino destino = null;
+      Autor autorActual = null;
+      Libro libroActual = null;
+      long filasEnTransaccion = 0;
+      String linea;
+
+      while ((linea = lector.readLine()) != null) {
+        numeroLinea++;
+        linea = linea.trim();
+        if (linea.isEmpty() || linea.startsWith("#")) {
+          continue;
+        }
+
+        String[] campos = jsonl ? camposJson(linea, numeroLinea) : linea.split(";", -1);
+        switch (campos[0].trim().toUpperCase()) {
+          case "AUTOR":
+            comprobarCampos(campos, 5, numeroLinea);
+            autorActual = new Autor(campos[1].trim(), campos[2].trim(), campos[3].trim(), leerFecha(formatoFecha, campos[4], numeroLinea));
+            libroActual = null;
+            destino = destinos.computeIfAbsent(HibernateUtil.getParticiones().paraNuevoAutor(), Destino::new);
+            destino.session.persist(autorActual);
+            autores++;
+            break;
+          case "LIBRO":
+            comprobarCampos(campos, 5, numeroLinea);
+            if (autorActual == null) {
+              throw new IllegalArgumentException("Línea " + numeroLinea + ": LIBRO sin AUTOR previo.");
+            }
+            libroActual = new Libro(campos[1].trim(), campos[2].trim(), leerFecha(formatoFecha, campos[3], numeroLinea), leerEntero(campos[4], numeroLinea));
+            libroActual.setAutor(autorActual);
+            destino.reserva.libro(libroActual.getIsbn());
+            destino.session.persist(libroActual);
+            libros++;
+            break;
+          case "EJEMPLAR":
+            comprobarCampos(campos, 4, numeroLinea);
+            if (libroActual == null) {
+              throw new IllegalArgumentException("Línea " + numeroLinea + ": EJEMPLAR sin LIBRO previo.");
+            }
+            Ejemplar ejemplar = new Ejemplar(campos[1].trim(), leerEstado(campos[2], numeroLinea), campos[3].trim());
+            ejemplar.setLibro(libroActual);
+            destino.reserva.ejemplar(ejemplar.getCodigoEjemplar());
+            destino.session.persist(ejemplar);
+            destino.contadores.recalcular(libroActual.getIdLibro());
+            ejemplares++;
+            break;
+          default:
+            throw new IllegalArgumentException("Línea " + numeroLinea + ": tipo de registro desconocido '" + campos[0] + "'.");
+        }
+
+        filasEnTransaccion++;
+        if (++destino.filasEnLote % TAMANO_LOTE == 0) {
+          // Envía el lote pendiente y libera el contexto de persistencia (autorActual/libroActual quedan detached,
+          // lo cual basta para usarlos como referencia de la FK en las siguientes filas)
+          destino.session.flush();
+          destino.session.clear();
+        }
+        if (filasEnTransaccion >= TAMANO_TRANSACCION) {
+          for (Destino pendiente : destinos.values()) {
+            pendiente.confirmar();
+            pendiente.transaction = pendiente.session.beginTransaction();
+          }
+          filasEnTransaccion = 0;
+          System.out.printf(" ... %d filas importadas%n", autores + libros + ejemplares);
+        }
+      }
+
+      for (Destino pendiente : destinos.values()) {
+        pendiente.confirmar();
+      }
+
+    } catch (IOException e) {
+      deshacer(destinos);
+      throw e;
+    } catch (RuntimeException e) {
+      deshacer(destinos);
+      throw new IllegalStateException("Importación interrumpida en la línea " + numeroLinea
+        + " (los bloques anteriores ya confirmados se conservan): " + e.getMessage(), e);
+    } finally {
+      for (Destino pendiente : destinos.values()) {
+        if (pendiente.session.isOpen()) {
+          pendiente.session.close();
+        }
+      }
+    }
+
+    long milisegundos = (System.nanoTime() - inicio) / 1_000_000;
+    return new ResultadoImportacion(autores, libros, ejemplares, milisegundos);
+  }
+
+  private static void deshacer(Map<SessionFactory, Destino> destinos) {
+    for (Destino pendiente : destinos.values()) {
+      if (pendiente.transaction.isActive()) {
+        pendiente.transaction.rollback();
+      }
+      pendiente.reserva.liberar();
+    }
+  }
+
+  // Una línea JSONL convertida en los campos de la línea de texto equivalente (el tipo y sus valores en orden)
+  private static String[] camposJson(String linea, long numeroLinea) {
+    JsonNode registro;
+    try {
+      registro = JSON.readTree(linea);
+    } catch (JsonProcessingException e) {
+      throw new IllegalArgumentException("Línea " + numeroLinea + ": JSON no válido (" + e.getOriginalMessage() + ").");
+    }
+    if (!registro.isObject()) {
+      throw new IllegalArgumentException("Línea " + numeroLinea + ": se esperaba un objeto JSON.");
+    }
+
+    String tipo = registro.path("tipo").asText();
+    String[] propiedades = CAMPOS_JSON.get(tipo.trim().toUpperCase());
+    if (propiedades == null) {
+      // El switch de importar() lo rechaza como tipo desconocido
+      return new String[] {tipo};
+    }
+    String[] campos = new String[propiedades.length + 1];
+    campos[0] = tipo;
+    for (int i = 0; i < propiedades.length; i++) {
+      JsonNode valor = registro.get(propiedades[i]);
+      campos[i + 1] = valor == null || valor.isNull() ? "" : valor.asText();
+    }
+    return campos;
+  }
+
+  private static void comprobarCampos(String[] campos, int esperados, long numeroLinea) {
+    if (campos.length < esperados) {
+      throw new IllegalArgumentException("Línea " + numeroLinea + ": se esperaban " + esperados + " campos y hay " + campos.length + ".");
+    }
+  }
+
+  private static Date leerFecha(SimpleDateFormat formato, String valor, long numeroLinea) {
+    if (valor.isBlank()) {
+      return null;
+    }
+    try {
+      return formato.parse(valor.trim());
+    } catch (ParseException e) {
+      throw new IllegalArgumentException("Línea " + numeroLinea + ": fecha no válida '" + valor + "' (dd/MM/yyyy).");
+    }
+  }
+
+  private static Integer leerEntero(String valor, long numeroLinea) {
+    if (valor.isBlank()) {
+      return null;
+    }
+    try {
+      return Integer.valueOf(valor.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Línea " + numeroLinea + ": número no válido '" + valor + "'.");
+    }
+  }
+
+  private static EstadoEjemplar leerEstado(String valor, long numeroLinea) {
+    try {
+      return EstadoEjemplar.valueOf(valor.trim().toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Línea " + numeroLinea + ": estado no válido '" + valor + "'.");
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package com.dam.gestion;
+
+import com.dam.metricas.MetricasOperaciones;
+import com.dam.metricas.MetricasOperaciones.Medicion;
+import com.dam.modelo.Ejemplar;
+import com.dam.modelo.Ejemplar.EstadoEjemplar;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StaleStateException;
+import org.hibernate.Transaction;
+
+import javax.persistence.OptimisticLockException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Préstamos y devoluciones de ejemplares (Opciones 18 y 19) con bloqueo optimista.
+ *
+ * Solo se admiten las transiciones DISPONIBLE -> PRESTADO (prestar) y PRESTADO -> DISPONIBLE (devolver).
+ * Cada intento lee el ejemplar, comprueba el estado de origen y confirma; el UPDATE lleva la versión leída,
+ * así que si otro mostrador confirmó antes, este intento falla con un conflicto y se repite (hasta MAX_INTENTOS,
+ * con espera aleatoria creciente). No se usan bloqueos pesimistas: ningún hilo espera a otro en la base de datos,
+ * por lo que el motor se puede llamar desde muchos hilos (también virtuales) a la vez; el límite real es el pool.
+ * El contador de disponibles del libro se ajusta en la misma transacción con un UPDATE relativo (ContadoresEjemplares).
+ */
+public class MotorPrestamos {
+  // Intentos por operación antes de rendirse ante conflictos continuos
+  private static final int MAX_INTENTOS = 5;
+  // Espera máxima (ms) antes del primer reintento; se duplica en cada uno
+  private static final long ESPERA_INICIAL_MS = 2;
+
+  public enum ResultadoPrestamo {
+    REALIZADO,
+    NO_ENCONTRADO,
+    ESTADO_INCORRECTO,  // p. ej. prestar un ejemplar ya prestado o devolver uno disponible
+    CONFLICTO           // se agotaron los reintentos por modificaciones concurrentes
+  }
+
+  // Contadores acumulados del motor
+  public record EstadisticasPrestamos(long realizados, long rechazados, long reintentos, long agotados) {
+  }
+
+  private final LongAdder realizados = new LongAdder();
+  private final LongAdder rechazados = new LongAdder();
+  private final LongAdder reintentos = new LongAdder();
+  private final LongAdder agotados = new LongAdder();
+
+  // Opción 18: DISPONIBLE -> PRESTADO
+
+  public ResultadoPrestamo prestar(String codigoEjemplar) {
+    try (Medicion medicion = MetricasOperaciones.iniciar("prestar")) {
+      return cambiarEstado(medicion, codigoEjemplar, EstadoEjemplar.DISPONIBLE, EstadoEjemplar.PRESTADO);
+    }
+  }
+
+  // Opción 19: PRESTADO -> DISPONIBLE
+
+  public ResultadoPrestamo devolver(String codigoEjemplar) {
+    try (Medicion medicion = MetricasOperaciones.iniciar("devolver")) {
+      return cambiarEstado(medicion, codigoEjemplar, EstadoEjemplar.PRESTADO, EstadoEjemplar.DISPONIBLE);
+    }
+  }
+
+  public EstadisticasPrestamos getEstadisticas() {
+    return new EstadisticasPrestamos(realizados.sum(), rechazados.sum(), reintentos.sum(), agotados.sum());
+  }
+
+  private ResultadoPrestamo cambiarEstado(Medicion medicion, String codigoEjemplar, EstadoEjemplar origen, EstadoEjemplar destino) {
+    // El ejemplar no cambia de partición: se localiza una vez para todos los intentos
+    SessionFactory particion = GestionBiblioteca.particionDeEjemplar(codigoEjemplar);
+    for (int intento = 1; ; intento++) {
+      Session session = null;
+      Transaction transaction = null;
+
+      try {
+        session = particion.openSession();
+        transaction = session.beginTransaction();
+
+        Ejemplar ejemplar = session.bySimpleNaturalId(Ejemplar.class).load(codigoEjemplar);
+        if (ejemplar == null) {
+          transaction.rollback();
+          return ResultadoPrestamo.NO_ENCONTRADO;
+        }
+        if (ejemplar.getEstado() != origen) {
+          // Con escrituras concurrentes del mismo ejemplar, la caché READ_WRITE de Hibernate puede quedarse con una
+          // versión anterior: antes de rechazar se lee de la BD (refresh expulsa además la entrada de la caché)
+          session.refresh(ejemplar);
+        }
+        if (ejemplar.getEstado() != origen) {
+          transaction.rollback();
+          rechazados.increment();
+          return ResultadoPrestamo.ESTADO_INCORRECTO;
+        }
+
+        ContadoresEjemplares contadores = new ContadoresEjemplares();
+        contadores.mover(ContadoresEjemplares.idLibro(ejemplar), origen, destino);
+        ejemplar.setEstado(destino);
+        contadores.aplicar(session);
+        transaction.commit();
+        contadores.invalidarCache(particion);
+        realizados.increment();
+        return ResultadoPrestamo.REALIZADO;
+
+      } catch (RuntimeException e) {
+        if (transaction != null && transaction.isActive()) {
+          transaction.rollback();
+        }
+        if (!esConflicto(e)) {
+          medicion.fallo();
+          throw e;
+        }
+        if (intento == MAX_INTENTOS) {
+          // No es un error de la aplicación, pero el préstamo no se ha hecho: cuenta como fallo en las métricas
+          medicion.fallo();
+          agotados.increment();
+          return ResultadoPrestamo.CONFLICTO;
+        }
+        reintentos.increment();
+      } finally {
+        if (session != null && session.isOpen()) {
+          session.close();
+        }
+      }
+
+      // Espera aleatoria creciente para que los hilos en conflicto no vuelvan a chocar a la vez
+      try {
+        Thread.sleep(ThreadLocalRandom.current().nextLong(ESPERA_INICIAL_MS << (intento - 1)) + 1);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        medicion.fallo();
+        agotados.increment();
+        return ResultadoPrestamo.CONFLICTO;
+      }
+    }
+  }
+
+  // Hibernate informa del conflicto de versión como StaleStateException, envuelta o no en OptimisticLockException
+  private static boolean esConflicto(Throwable e) {
+    for (Throwable causa = e; causa != null; causa = causa.getCause()) {
+      if (causa instanceof OptimisticLockException || causa instanceof StaleStateException) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,16 @@
+package com.dam.metricas;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * StatementInspector de la SessionFactory (propiedad 'hibernate.session_factory.statement_inspector').
+ * No modifica el SQL: solo lo cuenta contra el presupuesto de la operación en curso (PresupuestoSentencias).
+ */
+public class InspectorSentencias implements StatementInspector {
+
+  @Override
+  public String inspect(String sql) {
+    PresupuestoSentencias.comprobar(sql);
+    return sql;
+  }
+}
@@ -0,0 +1,165 @@
+package com.dam.metricas;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Métricas acumuladas de una operación: histograma de latencia, sentencias JDBC, entidades cargadas,
+ * tiempo con la sesión abierta y excesos de presupuesto de sentencias. Todos los contadores son sin bloqueo (LongAdder / AtomicLongArray).
+ *
+ * El histograma usa cubos log-lineales: 4 cubos por cada potencia de 2 de microsegundos, así el error de un
+ * percentil es como mucho de un 25 % sea cual sea la escala (microsegundos o segundos) y ocupa un array fijo.
+ */
+public class MetricaOperacion implements MetricaOperacionMBean {
+
+  private static final int CUBOS = 256;
+
+  private final String nombre;
+  private final AtomicLongArray histograma = new AtomicLongArray(CUBOS);
+  private final LongAdder invocaciones = new LongAdder();
+  private final LongAdder errores = new LongAdder();
+  private final LongAdder microsTotales = new LongAdder();
+  private final LongAccumulator maxMicros = new LongAccumulator(Long::max, 0);
+  private final LongAdder sentencias = new LongAdder();
+  private final LongAdder entidadesCargadas = new LongAdder();
+  private final LongAdder microsSesion = new LongAdder();
+  private final LongAdder excesosPresupuesto = new LongAdder();
+
+  MetricaOperacion(String nombre) {
+    this.nombre = nombre;
+  }
+
+  public String getNombre() {
+    return nombre;
+  }
+
+  void registrar(long micros, boolean error, long sentenciasEjecutadas, long entidades, long microsSesionAbierta) {
+    histograma.incrementAndGet(cubo(micros));
+    invocaciones.increment();
+    if (error) {
+      errores.increment();
+    }
+    microsTotales.add(micros);
+    maxMicros.accumulate(micros);
+    sentencias.add(sentenciasEjecutadas);
+    entidadesCargadas.add(entidades);
+    microsSesion.add(microsSesionAbierta);
+  }
+
+  // Invocaciones que superaron su presupuesto de sentencias (PresupuestoSentencias)
+  void registrarExcesoPresupuesto() {
+    excesosPresupuesto.increment();
+  }
+
+  // Índice del cubo: los valores 0-3 tienen cubo propio; a partir de ahí, 4 cubos por potencia de 2.
+  static int cubo(long micros) {
+    if (micros < 4) {
+      return (int) Math.max(micros, 0);
+    }
+    int log2 = 63 - Long.numberOfLeadingZeros(micros);
+    int sub = (int) ((micros >>> (log2 - 2)) & 3);
+    return (log2 - 1) * 4 + sub;
+  }
+
+  // Mayor valor que cae en el cubo indicado (inverso de cubo()).
+  static long limiteSuperior(int cubo) {
+    if (cubo < 4) {
+      return cubo;
+    }
+    int log2 = cubo / 4 + 1;
+    long ancho = 1L << (log2 - 2);
+    return (4 + cubo % 4) * ancho + ancho - 1;
+  }
+
+  public long percentil(double p) {
+    long total = 0;
+    long[] conteos = new long[CUBOS];
+    for (int i = 0; i < CUBOS; i++) {
+      conteos[i] = histograma.get(i);
+      total += conteos[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long objetivo = (long) Math.ceil(total * p);
+    long acumulado = 0;
+    for (int i = 0; i < CUBOS; i++) {
+      acumulado += conteos[i];
+      if (acumulado >= objetivo) {
+        return Math.min(limiteSuperior(i), maxMicros.get());
+      }
+    }
+    return maxMicros.get();
+  }
+
+  @Override
+  public long getInvocaciones() {
+    return invocaciones.sum();
+  }
+
+  @Override
+  public long getErrores() {
+    return errores.sum();
+  }
+
+  @Override
+  public long getP50Micros() {
+    return percentil(0.50);
+  }
+
+  @Override
+  public long getP99Micros() {
+    return percentil(0.99);
+  }
+
+  @Override
+  public long getMaxMicros() {
+    return maxMicros.get();
+  }
+
+  @Override
+  public double getMediaMicros() {
+    return porInvocacion(microsTotales.sum());
+  }
+
+  @Override
+  public double getSentenciasPorInvocacion() {
+    return porInvocacion(sentencias.sum());
+  }
+
+  @Override
+  public double getEntidadesCargadasPorInvocacion() {
+    return porInvocacion(entidadesCargadas.sum());
+  }
+
+  @Override
+  public double getSesionAbiertaMediaMicros() {
+    return porInvocacion(microsSesion.sum());
+  }
+
+  @Override
+  public long getExcesosPresupuesto() {
+    return excesosPresupuesto.sum();
+  }
+
+  private double porInvocacion(long valor) {
+    long n = invocaciones.sum();
+    return n == 0 ? 0 : (double) valor / n;
+  }
+
+  @Override
+  public void reiniciar() {
+    for (int i = 0; i < CUBOS; i++) {
+      histograma.set(i, 0);
+    }
+    invocaciones.reset();
+    errores.reset();
+    microsTotales.reset();
+    maxMicros.reset();
+    sentencias.reset();
+    entidadesCargadas.reset();
+    microsSesion.reset();
+    excesosPresupuesto.reset();
+  }
+}
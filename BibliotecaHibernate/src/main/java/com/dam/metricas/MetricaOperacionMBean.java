@@ -0,0 +1,30 @@
+package com.dam.metricas;
+
+/**
+ * Vista JMX de las métricas de una operación (ObjectName com.dam.biblioteca:type=Operacion,name=...).
+ * Los tiempos están en microsegundos.
+ */
+public interface MetricaOperacionMBean {
+
+  long getInvocaciones();
+
+  long getErrores();
+
+  long getP50Micros();
+
+  long getP99Micros();
+
+  long getMaxMicros();
+
+  double getMediaMicros();
+
+  double getSentenciasPorInvocacion();
+
+  double getEntidadesCargadasPorInvocacion();
+
+  double getSesionAbiertaMediaMicros();
+
+  long getExcesosPresupuesto();
+
+  void reiniciar();
+}
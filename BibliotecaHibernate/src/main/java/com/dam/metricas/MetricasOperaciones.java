@@ -0,0 +1,163 @@
+package com.dam.metricas;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registro de métricas por operación de GestionBiblioteca.
+ *
+ * Uso: try (Medicion medicion = MetricasOperaciones.iniciar("buscarLibroPorId")) { ... }
+ * La medición activa se guarda en el hilo, así MetricasSesion (sentencias JDBC y tiempo de sesión) y el
+ * listener de carga de entidades pueden sumar a la operación en curso sin pasarla como parámetro.
+ * Cada operación se publica como MBean y, si se activa, se vuelca periódicamente por consola.
+ */
+public final class MetricasOperaciones {
+
+  private static final ConcurrentMap<String, MetricaOperacion> METRICAS = new ConcurrentHashMap<>();
+  private static final ThreadLocal<Medicion> ACTUAL = new ThreadLocal<>();
+  private static ScheduledExecutorService volcador;
+
+  private MetricasOperaciones() {
+  }
+
+  public static Medicion iniciar(String operacion) {
+    if (ACTUAL.get() != null) {
+      // Operación anidada (una operación que llama a otra): cuenta para la exterior
+      return Medicion.ANIDADA;
+    }
+    Medicion medicion = new Medicion(obtener(operacion));
+    ACTUAL.set(medicion);
+    return medicion;
+  }
+
+  static Medicion actual() {
+    return ACTUAL.get();
+  }
+
+  // Lo llama el listener PostLoad registrado en HibernateUtil por cada entidad cargada
+  public static void registrarEntidadCargada() {
+    Medicion medicion = ACTUAL.get();
+    if (medicion != null) {
+      medicion.entidades++;
+    }
+  }
+
+  public static MetricaOperacion obtener(String operacion) {
+    return METRICAS.computeIfAbsent(operacion, MetricasOperaciones::crear);
+  }
+
+  public static List<MetricaOperacion> todas() {
+    List<MetricaOperacion> lista = new ArrayList<>(METRICAS.values());
+    lista.sort(Comparator.comparing(MetricaOperacion::getNombre));
+    return lista;
+  }
+
+  private static MetricaOperacion crear(String operacion) {
+    MetricaOperacion metrica = new MetricaOperacion(operacion);
+    try {
+      MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+      ObjectName nombre = new ObjectName("com.dam.biblioteca:type=Operacion,name=" + operacion);
+      if (!servidor.isRegistered(nombre)) {
+        servidor.registerMBean(metrica, nombre);
+      }
+    } catch (Exception e) {
+      System.err.println("No se pudo registrar el MBean de la operación '" + operacion + "': " + e.getMessage());
+    }
+    return metrica;
+  }
+
+  // VOLCADO PERIÓDICO
+
+  public static synchronized void iniciarVolcadoPeriodico(Duration intervalo, PrintStream salida) {
+    if (volcador != null) {
+      return;
+    }
+    volcador = Executors.newSingleThreadScheduledExecutor(tarea -> {
+      Thread hilo = new Thread(tarea, "volcado-metricas");
+      hilo.setDaemon(true);
+      return hilo;
+    });
+    long segundos = Math.max(1, intervalo.toSeconds());
+    volcador.scheduleAtFixedRate(() -> volcar(salida), segundos, segundos, TimeUnit.SECONDS);
+  }
+
+  public static synchronized void detenerVolcadoPeriodico() {
+    if (volcador != null) {
+      volcador.shutdownNow();
+      volcador = null;
+    }
+  }
+
+  public static void volcar(PrintStream salida) {
+    StringBuilder texto = new StringBuilder();
+    texto.append("\n=== MÉTRICAS POR OPERACIÓN (tiempos en µs) ===\n");
+    texto.append(String.format("%-32s | %8s | %6s | %8s | %8s | %8s | %9s | %9s | %9s | %7s%n",
+      "OPERACIÓN", "LLAMADAS", "ERROR", "P50", "P99", "MÁX", "SQL/LLAM.", "ENT/LLAM.", "SESIÓN", "EXCESOS"));
+    for (MetricaOperacion metrica : todas()) {
+      texto.append(String.format("%-32s | %8d | %6d | %8d | %8d | %8d | %9.1f | %9.1f | %9.0f | %7d%n",
+        metrica.getNombre(),
+        metrica.getInvocaciones(),
+        metrica.getErrores(),
+        metrica.getP50Micros(),
+        metrica.getP99Micros(),
+        metrica.getMaxMicros(),
+        metrica.getSentenciasPorInvocacion(),
+        metrica.getEntidadesCargadasPorInvocacion(),
+        metrica.getSesionAbiertaMediaMicros(),
+        metrica.getExcesosPresupuesto()));
+    }
+    texto.append("==============================================");
+    salida.println(texto);
+  }
+
+  /**
+   * Medición en curso de una operación. Se cierra con try-with-resources; si el bloque lanza una excepción
+   * conviene llamar a fallo() antes, aunque los métodos de GestionBiblioteca ya capturan sus errores.
+   */
+  public static class Medicion implements AutoCloseable {
+
+    static final Medicion ANIDADA = new Medicion(null);
+
+    private final MetricaOperacion metrica;
+    private final long inicio = System.nanoTime();
+    long sentencias;
+    long entidades;
+    long nanosSesion;
+    int sentenciasPreparadas;
+    boolean presupuestoExcedido;
+    private boolean error;
+
+    private Medicion(MetricaOperacion metrica) {
+      this.metrica = metrica;
+    }
+
+    MetricaOperacion metrica() {
+      return metrica;
+    }
+
+    public void fallo() {
+      error = true;
+    }
+
+    @Override
+    public void close() {
+      if (metrica == null) {
+        return;
+      }
+      ACTUAL.remove();
+      long micros = (System.nanoTime() - inicio) / 1_000;
+      metrica.registrar(micros, error, sentencias, entidades, nanosSesion / 1_000);
+    }
+  }
+}
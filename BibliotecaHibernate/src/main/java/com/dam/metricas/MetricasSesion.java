@@ -0,0 +1,34 @@
+package com.dam.metricas;
+
+import org.hibernate.BaseSessionEventListener;
+
+/**
+ * SessionEventListener que Hibernate crea para cada sesión (propiedad 'hibernate.session.events.auto').
+ * Suma a la medición activa del hilo las sentencias JDBC ejecutadas y el tiempo que la sesión estuvo abierta.
+ */
+public class MetricasSesion extends BaseSessionEventListener {
+
+  private final transient MetricasOperaciones.Medicion medicion = MetricasOperaciones.actual();
+  private final long apertura = System.nanoTime();
+
+  @Override
+  public void jdbcExecuteStatementStart() {
+    if (medicion != null) {
+      medicion.sentencias++;
+    }
+  }
+
+  @Override
+  public void jdbcExecuteBatchStart() {
+    if (medicion != null) {
+      medicion.sentencias++;
+    }
+  }
+
+  @Override
+  public void end() {
+    if (medicion != null) {
+      medicion.nanosSesion += System.nanoTime() - apertura;
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package com.dam.metricas;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Presupuesto de sentencias SQL por operación (detección de N+1 en pruebas y preproducción).
+ *
+ * Se declara "esta operación puede preparar como mucho N sentencias" por código:
+ *   PresupuestoSentencias.definir("buscarLibroPorId", 1);
+ * o desde la línea de comandos, una propiedad por operación:
+ *   -Dbiblioteca.presupuesto.buscarLibroPorId=1 -Dbiblioteca.presupuesto.modo=FALLAR
+ *
+ * InspectorSentencias cuenta cada sentencia que Hibernate prepara dentro de la medición activa del hilo
+ * (MetricasOperaciones) y, al superar el máximo, lanza o registra una PresupuestoSentenciasExcedidoException.
+ * Las operaciones sin presupuesto no se comprueban.
+ */
+public final class PresupuestoSentencias {
+
+  public static final String PREFIJO_PROPIEDAD = "biblioteca.presupuesto.";
+  public static final String PROPIEDAD_MODO = PREFIJO_PROPIEDAD + "modo";
+
+  public enum Modo {
+    FALLAR,     // lanza la excepción desde la sentencia que supera el presupuesto
+    REGISTRAR   // imprime la excepción con su traza por System.err y deja seguir la operación
+  }
+
+  private static final Map<String, Integer> MAXIMOS = new ConcurrentHashMap<>();
+  private static volatile Modo modo = Modo.REGISTRAR;
+
+  // Un valor mal escrito en la línea de comandos no debe impedir cargar la clase (y con ella todas las consultas):
+  // se avisa por System.err y se ignora esa propiedad
+  static {
+    for (String nombre : System.getProperties().stringPropertyNames()) {
+      String valor = System.getProperty(nombre).trim();
+      if (nombre.equals(PROPIEDAD_MODO)) {
+        try {
+          modo = Modo.valueOf(valor.toUpperCase());
+        } catch (IllegalArgumentException e) {
+          System.err.println("Valor no válido en -D" + nombre + "=" + valor + " (se esperaba FALLAR o REGISTRAR): se usa " + modo);
+        }
+      } else if (nombre.startsWith(PREFIJO_PROPIEDAD)) {
+        try {
+          definir(nombre.substring(PREFIJO_PROPIEDAD.length()), Integer.parseInt(valor));
+        } catch (IllegalArgumentException e) {
+          System.err.println("Valor no válido en -D" + nombre + "=" + valor + " (se esperaba un número >= 0): la operación queda sin presupuesto");
+        }
+      }
+    }
+  }
+
+  private PresupuestoSentencias() {
+  }
+
+  public static void definir(String operacion, int maximo) {
+    if (maximo < 0) {
+      throw new IllegalArgumentException("El presupuesto de sentencias debe ser >= 0.");
+    }
+    MAXIMOS.put(operacion, maximo);
+  }
+
+  public static void eliminar(String operacion) {
+    MAXIMOS.remove(operacion);
+  }
+
+  public static void eliminarTodos() {
+    MAXIMOS.clear();
+  }
+
+  public static Modo getModo() {
+    return modo;
+  }
+
+  public static void setModo(Modo nuevoModo) {
+    modo = nuevoModo;
+  }
+
+  // Lo llama InspectorSentencias por cada sentencia preparada
+  static void comprobar(String sql) {
+    MetricasOperaciones.Medicion medicion = MetricasOperaciones.actual();
+    if (medicion == null) {
+      return;
+    }
+    medicion.sentenciasPreparadas++;
+
+    Integer maximo = MAXIMOS.get(medicion.metrica().getNombre());
+    if (maximo == null || medicion.sentenciasPreparadas <= maximo) {
+      return;
+    }
+
+    PresupuestoSentenciasExcedidoException exceso =
+      new PresupuestoSentenciasExcedidoException(medicion.metrica().getNombre(), maximo, sql);
+    if (modo == Modo.FALLAR) {
+      medicion.metrica().registrarExcesoPresupuesto();
+      throw exceso;
+    }
+    // En modo REGISTRAR se avisa solo de la primera sentencia que lo supera, no de todas las siguientes
+    if (!medicion.presupuestoExcedido) {
+      medicion.presupuestoExcedido = true;
+      medicion.metrica().registrarExcesoPresupuesto();
+      exceso.printStackTrace(System.err);
+    }
+  }
+}
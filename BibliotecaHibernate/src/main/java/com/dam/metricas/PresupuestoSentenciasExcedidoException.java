@@ -0,0 +1,26 @@
+package com.dam.metricas;
+
+/**
+ * Se lanza (modo FALLAR) o se registra con su traza (modo REGISTRAR) cuando una operación prepara más
+ * sentencias SQL de las que permite su presupuesto. La traza apunta a la sentencia que lo superó,
+ * normalmente una carga perezosa dentro de un bucle.
+ */
+public class PresupuestoSentenciasExcedidoException extends RuntimeException {
+
+  private final String operacion;
+  private final int maximo;
+
+  public PresupuestoSentenciasExcedidoException(String operacion, int maximo, String sql) {
+    super("La operación '" + operacion + "' supera su presupuesto de " + maximo + " sentencias SQL. Sentencia: " + sql);
+    this.operacion = operacion;
+    this.maximo = maximo;
+  }
+
+  public String getOperacion() {
+    return operacion;
+  }
+
+  public int getMaximo() {
+    return maximo;
+  }
+}
@@ -1,14 +1,31 @@
 package com.dam.modelo;
 
 import javax.persistence.*;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 import java.util.*;
 
 @Entity
 @Table(name = "autores")
+// Caché de segundo nivel: región acotada en tamaño y tiempo en application.conf
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "biblioteca-autor")
 public class Autor {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY) // Clave primaria autogenerada
+    // Ids por tabla con optimizador pooled: Hibernate reserva bloques de 50 ids y puede agrupar los INSERT en lotes JDBC
+    // (con IDENTITY el id solo se conoce tras cada INSERT y el batching queda desactivado).
+    // GeneradorIdParticion es ese mismo generador por tabla con la partición del autor en los bits altos del id.
+    @GeneratedValue(generator = "autores_gen")
+    @GenericGenerator(name = "autores_gen", strategy = "com.dam.util.GeneradorIdParticion", parameters = {
+        @Parameter(name = "table_name", value = "secuencias_id"),
+        @Parameter(name = "segment_column_name", value = "entidad"),
+        @Parameter(name = "value_column_name", value = "siguiente_valor"),
+        @Parameter(name = "segment_value", value = "autores"),
+        @Parameter(name = "increment_size", value = "50")})
     @Column(name = "id_autor")
     private Integer idAutor;
 
@@ -33,6 +50,7 @@ public class Autor {
         orphanRemoval = true,
         fetch = FetchType.LAZY
     )
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "biblioteca-autor-libros")
     private List<Libro> libros = new ArrayList<>();
 
     // Constructores
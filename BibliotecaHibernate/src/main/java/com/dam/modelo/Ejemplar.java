@@ -2,8 +2,19 @@ package com.dam.modelo;
 
 import javax.persistence.*;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
+import org.hibernate.annotations.Parameter;
+
 @Entity
-@Table(name = "ejemplares")
+// Índice para listar por estado paginando por clave (ConsultasBiblioteca.listarEjemplares)
+@Table(name = "ejemplares", indexes = @Index(name = "idx_ejemplares_estado_id", columnList = "estado, id_ejemplar"))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "biblioteca-ejemplar")
+@NaturalIdCache(region = "biblioteca-ejemplar-codigo")
 public class Ejemplar {
 
   // ENUM ANIDADO (EstadoEjemplar)
@@ -16,15 +27,29 @@ public class Ejemplar {
     DISPONIBLE,
     PRESTADO,
     REPARACION,
-    BAJA
+    BAJA;
+
+    // Regla de transición: BAJA es un estado final y no se "cambia" a un estado igual al actual.
+    public boolean puedeCambiarA(EstadoEjemplar destino) {
+      return this != BAJA && this != destino;
+    }
   }
 
   // ATRIBUTOS DE LA ENTIDAD
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  // Generador por tabla (igual que en Autor) para permitir INSERT en lotes
+  @GeneratedValue(generator = "ejemplares_gen")
+  @GenericGenerator(name = "ejemplares_gen", strategy = "com.dam.util.GeneradorIdParticion", parameters = {
+      @Parameter(name = "table_name", value = "secuencias_id"),
+      @Parameter(name = "segment_column_name", value = "entidad"),
+      @Parameter(name = "value_column_name", value = "siguiente_valor"),
+      @Parameter(name = "segment_value", value = "ejemplares"),
+      @Parameter(name = "increment_size", value = "50")})
   @Column(name = "id_ejemplar")
   private Integer idEjemplar;
 
+  // Código de barras del ejemplar: clave de negocio inmutable
+  @NaturalId
   @Column(name = "codigo_ejemplar", unique = true, nullable = false)
   private String codigoEjemplar;
 
@@ -36,6 +61,12 @@ public class Ejemplar {
   @Column(name = "ubicacion")
   private String ubicacion;
 
+  // Bloqueo optimista: el UPDATE lleva "WHERE version = ?", así dos préstamos simultáneos del mismo ejemplar
+  // no pueden confirmarse los dos (el segundo recibe OptimisticLockException y MotorPrestamos reintenta)
+  @Version
+  @Column(name = "version", nullable = false)
+  private Integer version;
+
   // RELACIÓN (N:1 con Libro)
   @ManyToOne(fetch = FetchType.LAZY)
   @JoinColumn(name = "id_libro", nullable = false)
@@ -60,6 +91,10 @@ public class Ejemplar {
     this.idEjemplar = idEjemplar;
   }
 
+  public Integer getVersion() {
+    return version;
+  }
+
   public String getCodigoEjemplar() {
     return codigoEjemplar;
   }
@@ -1,20 +1,50 @@
 package com.dam.modelo;
 
 import javax.persistence.*;
+
+import com.dam.modelo.Ejemplar.EstadoEjemplar;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
+import org.hibernate.annotations.Parameter;
 import java.util.*;
 
 @Entity
 @Table(name = "libros")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "biblioteca-libro")
+// Caché ISBN -> id para las búsquedas con bySimpleNaturalId
+@NaturalIdCache(region = "biblioteca-libro-isbn")
+// Planes de carga con nombre: traen en la misma SELECT (JOIN) las asociaciones LAZY que usa cada vista
+@NamedEntityGraph(name = Libro.GRAFO_DETALLE, attributeNodes = {
+    @NamedAttributeNode("autor"),
+    @NamedAttributeNode("ejemplares")
+})
+@NamedEntityGraph(name = Libro.GRAFO_RESUMEN, attributeNodes = @NamedAttributeNode("autor"))
 public class Libro {
 
+    public static final String GRAFO_DETALLE = "libro-detalle";
+    public static final String GRAFO_RESUMEN = "libro-resumen";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY) // Clave primaria autogenerada
+    // Generador por tabla (igual que en Autor) para permitir INSERT en lotes
+    @GeneratedValue(generator = "libros_gen")
+    @GenericGenerator(name = "libros_gen", strategy = "com.dam.util.GeneradorIdParticion", parameters = {
+        @Parameter(name = "table_name", value = "secuencias_id"),
+        @Parameter(name = "segment_column_name", value = "entidad"),
+        @Parameter(name = "value_column_name", value = "siguiente_valor"),
+        @Parameter(name = "segment_value", value = "libros"),
+        @Parameter(name = "increment_size", value = "50")})
     @Column(name = "id_libro")
     private Integer idLibro;
 
     @Column(name = "titulo", nullable = false)
     private String titulo;
 
+    // Clave de negocio (inmutable): permite buscar por ISBN sin escribir HQL
+    @NaturalId
     @Column(name = "isbn", unique = true, nullable = false)
     private String isbn;
 
@@ -39,8 +69,25 @@ public class Libro {
         orphanRemoval = true,
         fetch = FetchType.LAZY
     )
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "biblioteca-libro-ejemplares")
     private List<Ejemplar> ejemplares = new ArrayList<>();
 
+    // CONTADORES DE EJEMPLARES POR ESTADO (desnormalizados)
+    // Responden "cuántos ejemplares hay disponibles" sin cargar 'ejemplares' ni contar filas. Solo se escriben al
+    // insertar el libro (onPrePersist) y con UPDATE relativos en la misma transacción que cambia los ejemplares
+    // (ContadoresEjemplares, en gestion); updatable = false evita que el UPDATE de la entidad pise esos incrementos.
+    @Column(name = "ejemplares_disponibles", nullable = false, updatable = false)
+    private int ejemplaresDisponibles;
+
+    @Column(name = "ejemplares_prestados", nullable = false, updatable = false)
+    private int ejemplaresPrestados;
+
+    @Column(name = "ejemplares_reparacion", nullable = false, updatable = false)
+    private int ejemplaresReparacion;
+
+    @Column(name = "ejemplares_baja", nullable = false, updatable = false)
+    private int ejemplaresBaja;
+
     // CONSTRUCTORES
     public Libro() {
     }
@@ -73,6 +120,20 @@ public class Libro {
         ejemplar.setLibro(null);
     }
 
+    // Un libro nuevo parte de los ejemplares que ya lleva en la colección (p. ej. crearAutorConLibros)
+    @PrePersist
+    void onPrePersist() {
+        ejemplaresDisponibles = ejemplaresPrestados = ejemplaresReparacion = ejemplaresBaja = 0;
+        for (Ejemplar ejemplar : ejemplares) {
+            switch (ejemplar.getEstado()) {
+                case DISPONIBLE -> ejemplaresDisponibles++;
+                case PRESTADO -> ejemplaresPrestados++;
+                case REPARACION -> ejemplaresReparacion++;
+                case BAJA -> ejemplaresBaja++;
+            }
+        }
+    }
+
     // Getters and Setters
     public Integer getIdLibro() {
         return idLibro;
@@ -122,6 +183,31 @@ public class Libro {
         this.ejemplares = ejemplares;
     }
 
+    public int getEjemplaresDisponibles() {
+        return ejemplaresDisponibles;
+    }
+
+    public int getEjemplaresPrestados() {
+        return ejemplaresPrestados;
+    }
+
+    public int getEjemplaresReparacion() {
+        return ejemplaresReparacion;
+    }
+
+    public int getEjemplaresBaja() {
+        return ejemplaresBaja;
+    }
+
+    public int getNumeroEjemplares(EstadoEjemplar estado) {
+        return switch (estado) {
+            case DISPONIBLE -> ejemplaresDisponibles;
+            case PRESTADO -> ejemplaresPrestados;
+            case REPARACION -> ejemplaresReparacion;
+            case BAJA -> ejemplaresBaja;
+        };
+    }
+
     // Getter para obtener el Autor asociado a este libro. Es el lado N de la relación N:1.
     public Autor getAutor() {
         return autor;
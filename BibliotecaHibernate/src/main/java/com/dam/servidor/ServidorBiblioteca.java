@@ -0,0 +1,474 @@
+package com.dam.servidor;
+
+import com.dam.dto.AutorResumen;
+import com.dam.dto.DisponibilidadLibro;
+import com.dam.dto.LibroDetalle;
+import com.dam.dto.Pagina;
+import com.dam.gestion.ConsultasBiblioteca;
+import com.dam.gestion.ConsultasBiblioteca.PlanCargaLibro;
+import com.dam.gestion.GestionBiblioteca;
+import com.dam.gestion.GestionBiblioteca.ResultadoCambioEstado;
+import com.dam.gestion.GestionBiblioteca.ResultadoOperacion;
+import com.dam.gestion.MotorPrestamos;
+import com.dam.gestion.MotorPrestamos.ResultadoPrestamo;
+import com.dam.modelo.Autor;
+import com.dam.modelo.Ejemplar;
+import com.dam.modelo.Ejemplar.EstadoEjemplar;
+import com.dam.modelo.Libro;
+import com.dam.util.EstadisticasBiblioteca;
+import com.dam.util.HibernateUtil;
+import com.dam.util.IndiceBusqueda.ResultadoBusqueda;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Modo servidor: expone las operaciones de la biblioteca como endpoints JSON sobre el HttpServer del JDK.
+ *
+ *   GET  /autores?desde=token&tamano=500       página de autores (AutorResumen)
+ *   GET  /libros?desde=token&tamano=100        página de libros sin ejemplares (LibroDetalle)
+ *   GET  /libros/{id}?plan=detalle|resumen     ficha de un libro (LibroDetalle)
+ *   GET  /libros/{id}/disponibilidad           ejemplares del libro por estado (DisponibilidadLibro)
+ *   GET  /ejemplares?estado=DISPONIBLE         ejemplares de un estado, enviados en streaming
+ *   GET  /ejemplares?tamano=100&desde=token    página de ejemplares (de un estado si se indica 'estado')
+ *
+ * Los listados paginados devuelven {"elementos": [...], "siguiente": token}; para la página siguiente se reenvía
+ * 'siguiente' como 'desde' (null en la última página).
+ *   POST /ejemplares/{codigo}/prestamo         préstamo (MotorPrestamos)
+ *   POST /ejemplares/{codigo}/devolucion       devolución (MotorPrestamos)
+ *   POST /ejemplares/estado                    cambio de estado por lotes: {"codigos": [...], "estado": "..."}
+ *
+ * Escrituras del catálogo (GestionBiblioteca); responden {"resultado": ResultadoOperacion, <id o código>} con
+ * 200/201, 404 (no existe), 400 (datos no válidos), 409 (clave repetida o escritura concurrente) o 500:
+ *   POST   /autores                            autor con sus libros y ejemplares (PeticionAutor), 201 con su id
+ *   DELETE /autores/{id}                       autor con todos sus libros y ejemplares
+ *   PUT    /libros/{id}                        título y/o páginas: {"titulo": "...", "numeroPaginas": 100}
+ *   DELETE /libros/{id}                        libro con sus ejemplares
+ *   POST   /ejemplares                         ejemplar nuevo de un libro: {"isbn": "...", "codigoEjemplar": "..."}
+ *   PUT    /ejemplares/{codigo}                estado de un ejemplar: {"estado": "REPARACION"}
+ *   DELETE /ejemplares/{codigo}                ejemplar
+ *
+ *   GET  /estadisticas                         totales en memoria (EstadisticasBiblioteca)
+ *   GET  /buscar?q=cerv*&limite=20             búsqueda en títulos y autores (IndiceBusqueda)
+ *
+ * Cada petición se atiende en su propio hilo virtual y cada operación abre y cierra su propia sesión
+ * (sesión por petición). Como cada petición ocupa como mucho una conexión, un semáforo con tantos permisos
+ * como conexiones tiene el pool limita las que trabajan a la vez: el resto espera como mucho ESPERA_PERMISO_MS
+ * y, si el pool sigue ocupado, recibe 503 con Retry-After en lugar de acumularse esperando conexión.
+ */
+public class ServidorBiblioteca {
+  // Espera máxima (ms) de una petición por un permiso antes de responder 503
+  private static final long ESPERA_PERMISO_MS = 1000;
+  // Conexiones TCP pendientes de aceptar
+  private static final int BACKLOG = 4096;
+  // Tamaño de página por defecto de /libros y /ejemplares
+  private static final int TAMANO_PAGINA = 100;
+  // Resultados por defecto de /buscar
+  private static final int RESULTADOS_BUSQUEDA = 20;
+
+  // Sin flush tras cada valor: en el streaming de ejemplares el generador envía bloques de su búfer, no una fila por chunk
+  private final ObjectMapper json = new ObjectMapper().disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+  private final ConsultasBiblioteca consultas = new ConsultasBiblioteca();
+  private final GestionBiblioteca gestion = new GestionBiblioteca();
+  private final MotorPrestamos motorPrestamos = new MotorPrestamos();
+  private final Semaphore permisos;
+  private final HttpServer servidor;
+
+  // Cuerpo de POST /ejemplares/estado
+  public record PeticionCambioEstado(List<String> codigos, EstadoEjemplar estado) {
+  }
+
+  // Cuerpo de POST /autores (fechas "yyyy-MM-dd"; un ejemplar sin estado está DISPONIBLE)
+  public record PeticionAutor(String nombre, String apellidos, String nacionalidad, Date fechaNacimiento, List<PeticionLibro> libros) {
+  }
+
+  public record PeticionLibro(String titulo, String isbn, Date fechaPublicacion, Integer numeroPaginas, List<PeticionEjemplar> ejemplares) {
+  }
+
+  public record PeticionEjemplar(String codigoEjemplar, EstadoEjemplar estado, String ubicacion) {
+  }
+
+  // Cuerpo de POST /ejemplares
+  public record PeticionNuevoEjemplar(String isbn, String codigoEjemplar) {
+  }
+
+  // Cuerpo de PUT /ejemplares/{codigo}; el estado se valida en GestionBiblioteca (DATOS_NO_VALIDOS -> 400)
+  public record PeticionEstadoEjemplar(String estado) {
+  }
+
+  // Cuerpo de PUT /libros/{id}; los campos que faltan no se cambian
+  public record PeticionDatosLibro(String titulo, Integer numeroPaginas) {
+  }
+
+  public ServidorBiblioteca(int puerto) throws IOException {
+    permisos = new Semaphore(HibernateUtil.getTamanoPool(), true);
+    servidor = HttpServer.create(new InetSocketAddress(puerto), BACKLOG);
+    servidor.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    servidor.createContext("/autores", intercambio -> atender(intercambio, this::autores));
+    servidor.createContext("/libros", intercambio -> atender(intercambio, this::libros));
+    servidor.createContext("/ejemplares", intercambio -> atender(intercambio, this::ejemplares));
+    servidor.createContext("/estadisticas", intercambio -> atender(intercambio, this::estadisticas));
+    servidor.createContext("/buscar", intercambio -> atender(intercambio, this::buscar));
+  }
+
+  public void iniciar() {
+    servidor.start();
+    System.out.println("Servidor escuchando en el puerto " + servidor.getAddress().getPort()
+      + " (" + permisos.availablePermits() + " peticiones simultáneas, una por conexión del pool)");
+  }
+
+  public void detener() {
+    servidor.stop(1);
+  }
+
+  // ENDPOINTS
+
+  private void autores(HttpExchange intercambio) throws IOException {
+    String[] partes = partesRuta(intercambio);
+    if (partes.length == 2) {
+      exigirMetodo(intercambio, "DELETE");
+      Integer idAutor = Integer.valueOf(partes[1]);
+      responderResultado(intercambio, gestion.eliminarAutor(idAutor), "idAutor", idAutor);
+      return;
+    }
+    if (partes.length != 1) {
+      responderError(intercambio, 404, "Ruta no encontrada.");
+      return;
+    }
+    if (intercambio.getRequestMethod().equals("POST")) {
+      crearAutor(intercambio);
+      return;
+    }
+
+    exigirMetodo(intercambio, "GET");
+    Map<String, String> parametros = parametros(intercambio);
+    int tamano = Integer.parseInt(parametros.getOrDefault("tamano", String.valueOf(ConsultasBiblioteca.TAMANO_PAGINA_AUTORES)));
+    Pagina<AutorResumen> autores = consultas.listarAutoresResumen(parametros.get("desde"), tamano);
+    responder(intercambio, 200, autores);
+  }
+
+  private void crearAutor(HttpExchange intercambio) throws IOException {
+    PeticionAutor peticion = leerCuerpo(intercambio, PeticionAutor.class);
+    Autor autor = new Autor(peticion.nombre(), peticion.apellidos(), peticion.nacionalidad(), peticion.fechaNacimiento());
+    for (PeticionLibro datosLibro : Objects.requireNonNullElse(peticion.libros(), List.<PeticionLibro>of())) {
+      Libro libro = new Libro(datosLibro.titulo(), datosLibro.isbn(), datosLibro.fechaPublicacion(), datosLibro.numeroPaginas());
+      for (PeticionEjemplar datosEjemplar : Objects.requireNonNullElse(datosLibro.ejemplares(), List.<PeticionEjemplar>of())) {
+        EstadoEjemplar estado = Objects.requireNonNullElse(datosEjemplar.estado(), EstadoEjemplar.DISPONIBLE);
+        libro.addEjemplar(new Ejemplar(datosEjemplar.codigoEjemplar(), estado, datosEjemplar.ubicacion()));
+      }
+      autor.addLibro(libro);
+    }
+
+    ResultadoOperacion resultado = gestion.crearAutorConLibros(autor);
+    Map<String, Object> respuesta = new LinkedHashMap<>();
+    respuesta.put("idAutor", resultado == ResultadoOperacion.REALIZADO ? autor.getIdAutor() : null);
+    respuesta.put("resultado", resultado);
+    responder(intercambio, resultado == ResultadoOperacion.REALIZADO ? 201 : estadoHttp(resultado), respuesta);
+  }
+
+  private void libros(HttpExchange intercambio) throws IOException {
+    String[] partes = partesRuta(intercambio);
+    String metodo = intercambio.getRequestMethod();
+    if (partes.length == 2 && metodo.equals("PUT")) {
+      Integer idLibro = Integer.valueOf(partes[1]);
+      PeticionDatosLibro peticion = leerCuerpo(intercambio, PeticionDatosLibro.class);
+      responderResultado(intercambio, gestion.actualizarDatosLibro(idLibro, peticion.titulo(), peticion.numeroPaginas()), "idLibro", idLibro);
+      return;
+    }
+    if (partes.length == 2 && metodo.equals("DELETE")) {
+      Integer idLibro = Integer.valueOf(partes[1]);
+      responderResultado(intercambio, gestion.eliminarLibro(idLibro), "idLibro", idLibro);
+      return;
+    }
+
+    exigirMetodo(intercambio, "GET");
+    if (partes.length == 1) {
+      Map<String, String> parametros = parametros(intercambio);
+      int tamano = Integer.parseInt(parametros.getOrDefault("tamano", String.valueOf(TAMANO_PAGINA)));
+      Pagina<LibroDetalle> libros = consultas.listarLibros(parametros.get("desde"), tamano);
+      responder(intercambio, 200, libros);
+      return;
+    }
+    if (partes.length == 3 && partes[2].equals("disponibilidad")) {
+      Integer idLibro = Integer.valueOf(partes[1]);
+      Optional<DisponibilidadLibro> disponibilidad = consultas.consultarDisponibilidad(idLibro);
+      if (disponibilidad.isPresent()) {
+        responder(intercambio, 200, disponibilidad.get());
+      } else {
+        responderError(intercambio, 404, "No se encontró ningún libro con el ID: " + idLibro);
+      }
+      return;
+    }
+    if (partes.length != 2) {
+      responderError(intercambio, 404, "Ruta no encontrada.");
+      return;
+    }
+    Integer idLibro = Integer.valueOf(partes[1]);
+    PlanCargaLibro plan = PlanCargaLibro.valueOf(parametros(intercambio).getOrDefault("plan", "detalle").toUpperCase());
+
+    Optional<LibroDetalle> libro = consultas.buscarLibroPorId(idLibro, plan);
+    if (libro.isPresent()) {
+      responder(intercambio, 200, libro.get());
+    } else {
+      responderError(intercambio, 404, "No se encontró ningún libro con el ID: " + idLibro);
+    }
+  }
+
+  private void ejemplares(HttpExchange intercambio) throws IOException {
+    String[] partes = partesRuta(intercambio);
+
+    String metodo = intercambio.getRequestMethod();
+
+    if (partes.length == 1 && metodo.equals("POST")) {
+      PeticionNuevoEjemplar peticion = leerCuerpo(intercambio, PeticionNuevoEjemplar.class);
+      if (peticion.isbn() == null || peticion.codigoEjemplar() == null) {
+        throw new IllegalArgumentException("El cuerpo debe incluir 'isbn' y 'codigoEjemplar'.");
+      }
+      ResultadoOperacion resultado = gestion.agregarEjemplarALibroExistente(peticion.isbn(), peticion.codigoEjemplar());
+      responderResultado(intercambio, resultado == ResultadoOperacion.REALIZADO ? 201 : estadoHttp(resultado), resultado,
+        "codigoEjemplar", peticion.codigoEjemplar());
+
+    } else if (partes.length == 1) {
+      exigirMetodo(intercambio, "GET");
+      Map<String, String> parametros = parametros(intercambio);
+      String estadoStr = parametros.get("estado");
+      EstadoEjemplar estado = estadoStr != null ? EstadoEjemplar.valueOf(estadoStr.toUpperCase()) : null;
+
+      // Con 'tamano' o 'desde' se pide una página; sin ellos, todos los ejemplares del estado en streaming
+      if (parametros.containsKey("tamano") || parametros.containsKey("desde")) {
+        int tamano = Integer.parseInt(parametros.getOrDefault("tamano", String.valueOf(TAMANO_PAGINA)));
+        responder(intercambio, 200, consultas.listarEjemplares(estado, parametros.get("desde"), tamano));
+      } else if (estado != null) {
+        enviarEjemplaresPorEstado(intercambio, estado);
+      } else {
+        throw new IllegalArgumentException("Falta el parámetro 'estado' (o 'tamano' para paginar).");
+      }
+
+    } else if (partes.length == 2 && metodo.equals("PUT")) {
+      PeticionEstadoEjemplar peticion = leerCuerpo(intercambio, PeticionEstadoEjemplar.class);
+      if (peticion.estado() == null) {
+        throw new IllegalArgumentException("El cuerpo debe incluir 'estado'.");
+      }
+      responderResultado(intercambio, gestion.actualizarEstadoEjemplar(partes[1], peticion.estado()), "codigoEjemplar", partes[1]);
+
+    } else if (partes.length == 2 && metodo.equals("DELETE")) {
+      responderResultado(intercambio, gestion.eliminarEjemplar(partes[1]), "codigoEjemplar", partes[1]);
+
+    } else if (partes.length == 2 && partes[1].equals("estado")) {
+      exigirMetodo(intercambio, "POST");
+      PeticionCambioEstado peticion = leerCuerpo(intercambio, PeticionCambioEstado.class);
+      if (peticion.codigos() == null || peticion.estado() == null) {
+        throw new IllegalArgumentException("El cuerpo debe incluir 'codigos' y 'estado'.");
+      }
+      Map<String, ResultadoCambioEstado> resultados = gestion.actualizarEstadoEjemplares(peticion.codigos(), peticion.estado());
+      responder(intercambio, 200, resultados);
+
+    } else if (partes.length == 3 && (partes[2].equals("prestamo") || partes[2].equals("devolucion"))) {
+      exigirMetodo(intercambio, "POST");
+      String codigo = partes[1];
+      ResultadoPrestamo resultado = partes[2].equals("prestamo") ? motorPrestamos.prestar(codigo) : motorPrestamos.devolver(codigo);
+      int estadoHttp = switch (resultado) {
+        case REALIZADO -> 200;
+        case NO_ENCONTRADO -> 404;
+        case ESTADO_INCORRECTO, CONFLICTO -> 409;
+      };
+      responder(intercambio, estadoHttp, Map.of("codigoEjemplar", codigo, "resultado", resultado));
+
+    } else {
+      responderError(intercambio, 404, "Ruta no encontrada.");
+    }
+  }
+
+  // Las filas se escriben según llegan del cursor (respuesta chunked), sin construir la lista en memoria
+  private void enviarEjemplaresPorEstado(HttpExchange intercambio, EstadoEjemplar estado) throws IOException {
+    intercambio.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    intercambio.sendResponseHeaders(200, 0);
+    try (OutputStream salida = intercambio.getResponseBody();
+         JsonGenerator generador = json.getFactory().createGenerator(salida)) {
+      generador.writeStartArray();
+      consultas.recorrerEjemplaresPorEstado(estado, ejemplar -> {
+        try {
+          generador.writeObject(ejemplar);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+      generador.writeEndArray();
+    }
+  }
+
+  private void estadisticas(HttpExchange intercambio) throws IOException {
+    exigirMetodo(intercambio, "GET");
+    EstadisticasBiblioteca estadisticas = HibernateUtil.getEstadisticasBiblioteca();
+    Map<String, Object> respuesta = new LinkedHashMap<>();
+    respuesta.put("autores", estadisticas.getTotalAutores());
+    respuesta.put("libros", estadisticas.getTotalLibros());
+    respuesta.put("ejemplares", estadisticas.getTotalEjemplares());
+    respuesta.put("ejemplaresPorEstado", estadisticas.getEjemplaresPorEstado());
+    responder(intercambio, 200, respuesta);
+  }
+
+  private void buscar(HttpExchange intercambio) throws IOException {
+    exigirMetodo(intercambio, "GET");
+    Map<String, String> parametros = parametros(intercambio);
+    String consulta = parametros.get("q");
+    if (consulta == null || consulta.isBlank()) {
+      responderError(intercambio, 400, "Falta el parámetro 'q'.");
+      return;
+    }
+    int limite = Integer.parseInt(parametros.getOrDefault("limite", String.valueOf(RESULTADOS_BUSQUEDA)));
+    List<ResultadoBusqueda> resultados = consultas.buscarEnCatalogo(consulta, limite);
+    responder(intercambio, 200, resultados);
+  }
+
+  // INFRAESTRUCTURA
+
+  @FunctionalInterface
+  private interface Manejador {
+    void manejar(HttpExchange intercambio) throws IOException;
+  }
+
+  private static class MetodoNoPermitidoException extends RuntimeException {
+    MetodoNoPermitidoException(String metodo) {
+      super("Método no permitido: " + metodo);
+    }
+  }
+
+  // Control de admisión (semáforo del tamaño del pool) y traducción de errores a códigos HTTP
+  private void atender(HttpExchange intercambio, Manejador manejador) {
+    try (intercambio) {
+      boolean admitida = false;
+      try {
+        admitida = permisos.tryAcquire(ESPERA_PERMISO_MS, TimeUnit.MILLISECONDS);
+        if (!admitida) {
+          intercambio.getResponseHeaders().set("Retry-After", "1");
+          responderError(intercambio, 503, "Servidor ocupado: todas las conexiones están en uso.");
+          return;
+        }
+        manejador.manejar(intercambio);
+
+      } catch (MetodoNoPermitidoException e) {
+        responderError(intercambio, 405, e.getMessage());
+      } catch (JsonProcessingException | IllegalArgumentException e) {
+        // Incluye NumberFormatException y los valueOf de enums con valores no válidos
+        responderError(intercambio, 400, e.getMessage());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        responderError(intercambio, 503, "Petición interrumpida.");
+      } catch (Exception e) {
+        System.err.println("Error al atender " + intercambio.getRequestMethod() + " " + intercambio.getRequestURI() + ": " + e.getMessage());
+        responderError(intercambio, 500, e.getMessage());
+      } finally {
+        if (admitida) {
+          permisos.release();
+        }
+      }
+    } catch (IOException e) {
+      // El cliente cerró la conexión antes de recibir la respuesta: no hay a quién avisar
+    }
+  }
+
+  private void responder(HttpExchange intercambio, int estadoHttp, Object cuerpo) throws IOException {
+    byte[] bytes = json.writeValueAsBytes(cuerpo);
+    intercambio.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    intercambio.sendResponseHeaders(estadoHttp, bytes.length);
+    try (OutputStream salida = intercambio.getResponseBody()) {
+      salida.write(bytes);
+    }
+  }
+
+  // Respuesta de una escritura de GestionBiblioteca: el identificador del elemento y el resultado
+  private void responderResultado(HttpExchange intercambio, ResultadoOperacion resultado, String campo, Object valor) throws IOException {
+    responderResultado(intercambio, estadoHttp(resultado), resultado, campo, valor);
+  }
+
+  private void responderResultado(HttpExchange intercambio, int estadoHttp, ResultadoOperacion resultado, String campo, Object valor)
+      throws IOException {
+    Map<String, Object> respuesta = new LinkedHashMap<>();
+    respuesta.put(campo, valor);
+    respuesta.put("resultado", resultado);
+    responder(intercambio, estadoHttp, respuesta);
+  }
+
+  private static int estadoHttp(ResultadoOperacion resultado) {
+    return switch (resultado) {
+      case REALIZADO -> 200;
+      case NO_ENCONTRADO -> 404;
+      case DATOS_NO_VALIDOS -> 400;
+      case CONFLICTO -> 409;
+      case ERROR -> 500;
+    };
+  }
+
+  private <T> T leerCuerpo(HttpExchange intercambio, Class<T> tipo) throws IOException {
+    try (InputStream cuerpo = intercambio.getRequestBody()) {
+      T peticion = json.readValue(cuerpo, tipo);
+      if (peticion == null) {
+        throw new IllegalArgumentException("Falta el cuerpo JSON de la petición.");
+      }
+      return peticion;
+    }
+  }
+
+  private void responderError(HttpExchange intercambio, int estadoHttp, String mensaje) throws IOException {
+    if (intercambio.getResponseCode() != -1) {
+      // Las cabeceras ya se enviaron (p. ej. error a mitad de un streaming): solo se puede cortar la respuesta
+      return;
+    }
+    responder(intercambio, estadoHttp, Map.of("error", mensaje != null ? mensaje : "Error interno."));
+  }
+
+  private static void exigirMetodo(HttpExchange intercambio, String metodo) {
+    if (!intercambio.getRequestMethod().equals(metodo)) {
+      throw new MetodoNoPermitidoException(intercambio.getRequestMethod());
+    }
+  }
+
+  // "/ejemplares/EJ-1/prestamo" -> ["ejemplares", "EJ-1", "prestamo"]
+  private static String[] partesRuta(HttpExchange intercambio) {
+    String ruta = intercambio.getRequestURI().getRawPath();
+    String[] partes = ruta.replaceAll("^/+|/+$", "").split("/+");
+    for (int i = 0; i < partes.length; i++) {
+      partes[i] = URLDecoder.decode(partes[i], StandardCharsets.UTF_8);
+    }
+    return partes;
+  }
+
+  private static Map<String, String> parametros(HttpExchange intercambio) {
+    Map<String, String> parametros = new HashMap<>();
+    String consulta = intercambio.getRequestURI().getRawQuery();
+    if (consulta == null || consulta.isEmpty()) {
+      return parametros;
+    }
+    for (String par : consulta.split("&")) {
+      int igual = par.indexOf('=');
+      if (igual > 0) {
+        parametros.put(URLDecoder.decode(par.substring(0, igual), StandardCharsets.UTF_8),
+          URLDecoder.decode(par.substring(igual + 1), StandardCharsets.UTF_8));
+      }
+    }
+    return parametros;
+  }
+}
@@ -0,0 +1,25 @@
+package com.dam.util;
+
+/**
+ * Se lanza al reservar en DirectorioClaves un ISBN o código de ejemplar que ya existe (o se está insertando) en
+ * otra partición. Dentro de una misma partición la repetición la detecta la restricción UNIQUE de la BD.
+ */
+public class ClaveDuplicadaException extends IllegalArgumentException {
+
+  private final String clave;
+  private final int particion;
+
+  public ClaveDuplicadaException(String descripcion, String clave, int particion) {
+    super(descripcion + " '" + clave + "' ya existe en la partición " + particion);
+    this.clave = clave;
+    this.particion = particion;
+  }
+
+  public String getClave() {
+    return clave;
+  }
+
+  public int getParticion() {
+    return particion;
+  }
+}
@@ -0,0 +1,270 @@
+package com.dam.util;
+
+import com.dam.modelo.Ejemplar;
+import com.dam.modelo.Libro;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Directorio en memoria de las claves naturales (ISBN de libro, código de ejemplar) con la partición en la que está
+ * cada una, para que una operación por ISBN o por código vaya directa a su partición sin consultar a las demás.
+ *
+ * Solo se usa con varias particiones; con una sola todo está en la principal y la unicidad la garantiza la BD.
+ * Se construye al arrancar con reconstruir(), que falla si una clave aparece en dos particiones, y se mantiene con
+ * listeners post-commit como IndiceBusqueda. Los ISBN y códigos no cambian (son @NaturalId inmutables), así que
+ * basta con las altas y los borrados.
+ *
+ * Cada partición solo garantiza la unicidad de sus filas; la de todo el catálogo la da reservar(): quien va a
+ * insertar libros o ejemplares reserva antes sus claves en la partición destino, y la reserva falla si la clave
+ * ya está (o se está insertando) en otra. Los DELETE masivos de HQL no disparan listeners: quien los ejecuta
+ * debe avisar con eliminar(). Si aun así queda una entrada de una fila que ya no existe (p. ej. borrada por fuera
+ * de la aplicación), solo envía la operación a la partición antigua, que responde "no encontrado", y una reserva
+ * la comprueba contra la BD antes de rechazar la clave.
+ */
+public class DirectorioClaves implements PostCommitInsertEventListener, PostCommitDeleteEventListener, PostCommitUpdateEventListener {
+
+  // Claves de una entidad: en qué partición está cada una y cuáles hay reservadas sin confirmar
+  private static final class Tabla {
+    final String entidad;
+    final String propiedad;
+    final String descripcion;
+    final Map<String, Integer> particiones = new ConcurrentHashMap<>();
+    // Se consulta y modifica con el cerrojo del directorio
+    final Set<String> enCurso = new HashSet<>();
+
+    Tabla(String entidad, String propiedad, String descripcion) {
+      this.entidad = entidad;
+      this.propiedad = propiedad;
+      this.descripcion = descripcion;
+    }
+  }
+
+  private final Particiones particiones;
+  private final Tabla libros = new Tabla("Libro", "isbn", "El ISBN");
+  private final Tabla ejemplares = new Tabla("Ejemplar", "codigoEjemplar", "El código de ejemplar");
+
+  public DirectorioClaves(Particiones particiones) {
+    this.particiones = particiones;
+  }
+
+  // Con una sola partición el directorio no guarda nada: quien avisa de un borrado masivo puede ahorrarse leer
+  // las claves afectadas
+  public boolean isActivo() {
+    return particiones.getNumero() > 1;
+  }
+
+  // CONSTRUCCIÓN: recorre las claves de cada partición con cursor (en paralelo) y reemplaza el directorio.
+  // Una clave repetida en dos particiones haría que sus operaciones fueran a una u otra: se aborta el arranque.
+
+  public void reconstruir() {
+    if (!isActivo()) {
+      return;
+    }
+    List<String> repetidas = Collections.synchronizedList(new ArrayList<>());
+    for (Tabla tabla : List.of(libros, ejemplares)) {
+      Map<String, Integer> nuevas = new ConcurrentHashMap<>();
+      particiones.enTodas(particion -> {
+        try (Session session = particiones.get(particion).openSession()) {
+          session.setDefaultReadOnly(true);
+          try (ScrollableResults cursor = session.createQuery("SELECT t." + tabla.propiedad + " FROM " + tabla.entidad + " t")
+                 .setFetchSize(1000).scroll(ScrollMode.FORWARD_ONLY)) {
+            while (cursor.next()) {
+              String clave = (String) cursor.get(0);
+              Integer previa = nuevas.putIfAbsent(clave, particion);
+              if (previa != null) {
+                repetidas.add(tabla.descripcion + " " + clave + " (particiones " + previa + " y " + particion + ")");
+              }
+            }
+          }
+        }
+        return null;
+      });
+      tabla.particiones.clear();
+      tabla.particiones.putAll(nuevas);
+    }
+    if (!repetidas.isEmpty()) {
+      throw new IllegalStateException("Hay claves naturales repetidas entre particiones: " + String.join("; ", repetidas));
+    }
+  }
+
+  // CONSULTA: partición de un libro por su ISBN y de un ejemplar por su código, o la principal si no están en
+  // ninguna (así la operación sigue y responde "no encontrado" como siempre)
+
+  public SessionFactory particionDeLibro(String isbn) {
+    return particionDe(libros, isbn);
+  }
+
+  public SessionFactory particionDeEjemplar(String codigoEjemplar) {
+    return particionDe(ejemplares, codigoEjemplar);
+  }
+
+  private SessionFactory particionDe(Tabla tabla, String clave) {
+    Integer particion = clave == null ? null : tabla.particiones.get(clave);
+    return particiones.get(particion == null ? 0 : particion);
+  }
+
+  // RESERVAS
+
+  // Reserva de las claves que una transacción va a insertar en 'destino'. Tras el commit se llama a confirmar()
+  // y tras un rollback a liberar(); puede seguir usándose para la siguiente transacción de la misma sesión.
+  public final class Reserva {
+    private final int particion;
+    private final List<String> isbns = new ArrayList<>();
+    private final List<String> codigos = new ArrayList<>();
+
+    private Reserva(int particion) {
+      this.particion = particion;
+    }
+
+    public void libro(String isbn) {
+      reservar(libros, isbn, particion, isbns);
+    }
+
+    public void ejemplar(String codigoEjemplar) {
+      reservar(ejemplares, codigoEjemplar, particion, codigos);
+    }
+
+    // Las filas ya están en la BD: las claves quedan en el directorio y dejan de estar en curso
+    public void confirmar() {
+      terminar(false);
+    }
+
+    // Las filas no se llegaron a insertar: se quitan las claves que añadió esta reserva
+    public void liberar() {
+      terminar(true);
+    }
+
+    private void terminar(boolean quitar) {
+      synchronized (DirectorioClaves.this) {
+        soltar(libros, isbns, particion, quitar);
+        soltar(ejemplares, codigos, particion, quitar);
+      }
+    }
+  }
+
+  public Reserva reservar(SessionFactory destino) {
+    int particion = particiones.todas().indexOf(destino);
+    if (particion < 0) {
+      throw new IllegalArgumentException("La SessionFactory no es de ninguna partición");
+    }
+    return new Reserva(particion);
+  }
+
+  private synchronized void reservar(Tabla tabla, String clave, int particion, List<String> reservadas) {
+    if (!isActivo() || clave == null) {
+      return;
+    }
+    Integer actual = tabla.particiones.get(clave);
+    if (actual != null && actual == particion) {
+      // En la misma partición la repetición la detecta la restricción UNIQUE de la BD
+      return;
+    }
+    if (actual != null && (tabla.enCurso.contains(clave) || existe(tabla, clave, actual))) {
+      throw new ClaveDuplicadaException(tabla.descripcion, clave, actual);
+    }
+    // Clave nueva, o una entrada que dejó un DELETE masivo y ya no está en la BD
+    tabla.particiones.put(clave, particion);
+    tabla.enCurso.add(clave);
+    reservadas.add(clave);
+  }
+
+  private static void soltar(Tabla tabla, List<String> reservadas, int particion, boolean quitar) {
+    for (String clave : reservadas) {
+      tabla.enCurso.remove(clave);
+      if (quitar) {
+        tabla.particiones.remove(clave, particion);
+      }
+    }
+    reservadas.clear();
+  }
+
+  private boolean existe(Tabla tabla, String clave, int particion) {
+    try (Session session = particiones.get(particion).openSession()) {
+      return !session.createQuery("SELECT 1 FROM " + tabla.entidad + " t WHERE t." + tabla.propiedad + " = :clave")
+        .setParameter("clave", clave).setMaxResults(1).list().isEmpty();
+    }
+  }
+
+  // AVISOS DE OPERACIONES MASIVAS (llamar después del commit)
+
+  // Quita las claves de los libros y ejemplares que un DELETE de HQL ha borrado en 'particion'
+  public void eliminar(int particion, Collection<String> isbns, Collection<String> codigosEjemplar) {
+    for (String isbn : isbns) {
+      libros.particiones.remove(isbn, particion);
+    }
+    for (String codigo : codigosEjemplar) {
+      ejemplares.particiones.remove(codigo, particion);
+    }
+  }
+
+  // LISTENERS POST-COMMIT
+
+  @Override
+  public void onPostInsert(PostInsertEvent event) {
+    Object entidad = event.getEntity();
+    if (entidad instanceof Libro libro) {
+      libros.particiones.put(libro.getIsbn(), particiones.particionDeId(libro.getIdLibro()));
+    } else if (entidad instanceof Ejemplar ejemplar) {
+      ejemplares.particiones.put(ejemplar.getCodigoEjemplar(), particiones.particionDeId(ejemplar.getIdEjemplar()));
+    }
+  }
+
+  @Override
+  public void onPostUpdate(PostUpdateEvent event) {
+    // Las claves naturales no cambian
+  }
+
+  @Override
+  public void onPostDelete(PostDeleteEvent event) {
+    Object entidad = event.getEntity();
+    if (entidad instanceof Libro libro) {
+      libros.particiones.remove(libro.getIsbn(), particiones.particionDeId(libro.getIdLibro()));
+    } else if (entidad instanceof Ejemplar ejemplar) {
+      ejemplares.particiones.remove(ejemplar.getCodigoEjemplar(), particiones.particionDeId(ejemplar.getIdEjemplar()));
+    }
+  }
+
+  @Override
+  public boolean requiresPostCommitHandling(EntityPersister persister) {
+    Class<?> clase = persister.getMappedClass();
+    return isActivo() && (clase == Libro.class || clase == Ejemplar.class);
+  }
+
+  @Override
+  @Deprecated
+  public boolean requiresPostCommitHanding(EntityPersister persister) {
+    return requiresPostCommitHandling(persister);
+  }
+
+  @Override
+  public void onPostInsertCommitFailed(PostInsertEvent event) {
+    // La fila no llegó a confirmarse; la reserva la libera quien la hizo
+  }
+
+  @Override
+  public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+  }
+
+  @Override
+  public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+  }
+}
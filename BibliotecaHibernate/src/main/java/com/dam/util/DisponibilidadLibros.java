@@ -0,0 +1,353 @@
+package com.dam.util;
+
+import com.dam.modelo.Ejemplar;
+import com.dam.modelo.Ejemplar.EstadoEjemplar;
+import com.dam.modelo.Libro;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Ejemplares de cada libro por estado, en memoria y sin objetos por libro: responde "¿hay algún ejemplar
+ * disponible?" y "¿cuántos hay en cada estado?" sin SQL ni asignaciones.
+ *
+ * Cada libro ocupa un hueco de MapaEnteros (id_libro -> long): los cuatro contadores van empaquetados en el long,
+ * 16 bits por estado en el orden de EstadoEjemplar (hasta MAXIMO_POR_ESTADO ejemplares por estado). Con un millón
+ * de libros son unas decenas de MB en un único array, frente a una entidad Libro (y su colección) por libro.
+ *
+ * Los listeners de transacciones concurrentes pueden llegar en otro orden que sus commits (la devolución antes que
+ * el préstamo que devuelve), así que un contador puede quedar negativo un instante: cada campo guarda el valor más
+ * SESGO para admitir negativos y que las sumas den lo mismo en cualquier orden. Al leer, un negativo cuenta como 0.
+ *
+ * Se carga al arrancar con reconstruir() desde los contadores de la tabla 'libros' (una consulta por partición,
+ * sin contar ejemplares) y después se mantiene con listeners post-commit sobre Ejemplar y Libro, igual que
+ * EstadisticasBiblioteca. Las operaciones masivas de HQL no disparan listeners: quien las ejecuta debe avisar con
+ * recargar() (vuelve a leer de la BD los libros indicados) o eliminarLibros().
+ *
+ * Las lecturas son optimistas (StampedLock): no bloquean ni escriben en memoria compartida, así muchos hilos
+ * pueden consultar a la vez; solo si coinciden con una escritura se repiten con el cerrojo de lectura.
+ */
+public class DisponibilidadLibros implements PostCommitInsertEventListener, PostCommitDeleteEventListener, PostCommitUpdateEventListener {
+  // Cada campo de 16 bits guarda contador + SESGO, entre 0 y 0x7FFF: el bit alto del long queda libre para AUSENTE
+  private static final int SESGO = 0x4000;
+  // Ejemplares máximos por estado y libro
+  public static final int MAXIMO_POR_ESTADO = 0x7FFF - SESGO;
+  private static final int BITS_POR_ESTADO = 16;
+  // Valor que devuelve el mapa para un libro que no está (nunca coincide con un valor empaquetado)
+  private static final long AUSENTE = -1L;
+  // Libro sin ejemplares: todos los campos a SESGO
+  private static final long SIN_EJEMPLARES = empaquetar(new int[EstadoEjemplar.values().length]);
+  private static final int TAMANO_BLOQUE = 1000;
+
+  private final Particiones particiones;
+  private final StampedLock cerrojo = new StampedLock();
+  private MapaEnteros libros = new MapaEnteros(0);
+
+  public DisponibilidadLibros(Particiones particiones) {
+    this.particiones = particiones;
+  }
+
+  // LECTURA (sin acceso a la base de datos)
+
+  public boolean contiene(int idLibro) {
+    return leer(idLibro) != AUSENTE;
+  }
+
+  public boolean hayDisponible(int idLibro) {
+    return getEjemplares(idLibro, EstadoEjemplar.DISPONIBLE) > 0;
+  }
+
+  // 0 si el libro no existe o no tiene ejemplares en ese estado (contiene() distingue ambos casos)
+  public int getEjemplares(int idLibro, EstadoEjemplar estado) {
+    long contadores = leer(idLibro);
+    return contadores == AUSENTE ? 0 : Math.max(0, contador(contadores, estado));
+  }
+
+  // Ejemplares en cada estado (en el orden de EstadoEjemplar) leídos de una vez, o null si el libro no está
+  public int[] getEjemplaresPorEstado(int idLibro) {
+    long contadores = leer(idLibro);
+    if (contadores == AUSENTE) {
+      return null;
+    }
+    int[] cantidades = new int[EstadoEjemplar.values().length];
+    for (EstadoEjemplar estado : EstadoEjemplar.values()) {
+      cantidades[estado.ordinal()] = Math.max(0, contador(contadores, estado));
+    }
+    return cantidades;
+  }
+
+  public int getTotalLibros() {
+    long sello = cerrojo.readLock();
+    try {
+      return libros.size();
+    } finally {
+      cerrojo.unlockRead(sello);
+    }
+  }
+
+  // Memoria que ocupa la tabla, en bytes
+  public long getBytes() {
+    long sello = cerrojo.readLock();
+    try {
+      return libros.getBytes();
+    } finally {
+      cerrojo.unlockRead(sello);
+    }
+  }
+
+  private long leer(int idLibro) {
+    long sello = cerrojo.tryOptimisticRead();
+    long contadores = libros.get(idLibro, AUSENTE);
+    if (!cerrojo.validate(sello)) {
+      sello = cerrojo.readLock();
+      try {
+        contadores = libros.get(idLibro, AUSENTE);
+      } finally {
+        cerrojo.unlockRead(sello);
+      }
+    }
+    return contadores;
+  }
+
+  // CARGA: recorre los contadores de 'libros' con cursor y reemplaza la tabla entera.
+  // Los eventos que lleguen mientras se carga pueden perderse; se corrigen en la siguiente carga.
+
+  public void reconstruir() {
+    long total = 0;
+    for (long libros : particiones.enTodas(particion -> contarLibros(particiones.get(particion)))) {
+      total += libros;
+    }
+    MapaEnteros nuevos = new MapaEnteros((int) Math.min(total, Integer.MAX_VALUE / 2));
+    for (SessionFactory sessionFactory : particiones.todas()) {
+      try (Session session = sessionFactory.openSession()) {
+        session.setDefaultReadOnly(true);
+        try (ScrollableResults cursor = session.createQuery(
+            "SELECT l.idLibro, l.ejemplaresDisponibles, l.ejemplaresPrestados, l.ejemplaresReparacion, l.ejemplaresBaja FROM Libro l")
+          .setFetchSize(TAMANO_BLOQUE)
+          .scroll(ScrollMode.FORWARD_ONLY)) {
+          while (cursor.next()) {
+            nuevos.put((Integer) cursor.get(0), empaquetarFila(cursor.get()));
+          }
+        }
+      }
+    }
+
+    long sello = cerrojo.writeLock();
+    try {
+      libros = nuevos;
+    } finally {
+      cerrojo.unlockWrite(sello);
+    }
+  }
+
+  private static long contarLibros(SessionFactory sessionFactory) {
+    try (Session session = sessionFactory.openSession()) {
+      return session.createQuery("SELECT COUNT(l) FROM Libro l", Long.class).uniqueResult();
+    }
+  }
+
+  // AVISOS DE OPERACIONES MASIVAS (llamar después del commit)
+
+  // Vuelve a leer de 'libros' los contadores de los libros indicados; los que ya no existen se quitan
+  public void recargar(Collection<Integer> idsLibros) {
+    Map<Integer, List<Integer>> porParticion = new TreeMap<>();
+    for (Integer idLibro : idsLibros) {
+      porParticion.computeIfAbsent(particiones.particionDeId(idLibro), particion -> new ArrayList<>()).add(idLibro);
+    }
+    for (List<Integer> ids : porParticion.values()) {
+      recargar(particiones.deEntidad(ids.get(0)), ids);
+    }
+  }
+
+  private void recargar(SessionFactory sessionFactory, List<Integer> ids) {
+    try (Session session = sessionFactory.openSession()) {
+      session.setDefaultReadOnly(true);
+      for (int desde = 0; desde < ids.size(); desde += TAMANO_BLOQUE) {
+        List<Integer> bloque = ids.subList(desde, Math.min(desde + TAMANO_BLOQUE, ids.size()));
+        List<Object[]> filas = session.createQuery(
+            "SELECT l.idLibro, l.ejemplaresDisponibles, l.ejemplaresPrestados, l.ejemplaresReparacion, l.ejemplaresBaja "
+              + "FROM Libro l WHERE l.idLibro IN :ids", Object[].class)
+          .setParameterList("ids", bloque)
+          .list();
+
+        Set<Integer> sinFila = new HashSet<>(bloque);
+        long sello = cerrojo.writeLock();
+        try {
+          for (Object[] fila : filas) {
+            libros.put((Integer) fila[0], empaquetarFila(fila));
+            sinFila.remove((Integer) fila[0]);
+          }
+          for (Integer idLibro : sinFila) {
+            libros.remove(idLibro);
+          }
+        } finally {
+          cerrojo.unlockWrite(sello);
+        }
+      }
+    }
+  }
+
+  public void eliminarLibros(Collection<Integer> idsLibros) {
+    long sello = cerrojo.writeLock();
+    try {
+      for (Integer idLibro : idsLibros) {
+        libros.remove(idLibro);
+      }
+    } finally {
+      cerrojo.unlockWrite(sello);
+    }
+  }
+
+  // LISTENERS POST-COMMIT
+
+  @Override
+  public void onPostInsert(PostInsertEvent event) {
+    Object entidad = event.getEntity();
+    if (entidad instanceof Libro libro) {
+      // Sus ejemplares llegan como inserciones propias; aquí solo se da de alta el libro (sin ejemplares)
+      long sello = cerrojo.writeLock();
+      try {
+        if (libros.get(libro.getIdLibro(), AUSENTE) == AUSENTE) {
+          libros.put(libro.getIdLibro(), SIN_EJEMPLARES);
+        }
+      } finally {
+        cerrojo.unlockWrite(sello);
+      }
+    } else if (entidad instanceof Ejemplar) {
+      ajustar(leerIdLibro(event.getPersister(), event.getState()), leerEstado(event.getPersister(), event.getState()), 1);
+    }
+  }
+
+  @Override
+  public void onPostDelete(PostDeleteEvent event) {
+    Object entidad = event.getEntity();
+    if (entidad instanceof Libro libro) {
+      eliminarLibros(List.of(libro.getIdLibro()));
+    } else if (entidad instanceof Ejemplar) {
+      // Se usa el estado con el que se borró la fila, no el del objeto
+      ajustar(leerIdLibro(event.getPersister(), event.getDeletedState()), leerEstado(event.getPersister(), event.getDeletedState()), -1);
+    }
+  }
+
+  @Override
+  public void onPostUpdate(PostUpdateEvent event) {
+    if (!(event.getEntity() instanceof Ejemplar)) {
+      return;
+    }
+    // Sin estado anterior (update de un objeto detached) no se sabe qué restar: lo corrige reconstruir()
+    if (event.getOldState() == null) {
+      return;
+    }
+    Integer libroAnterior = leerIdLibro(event.getPersister(), event.getOldState());
+    EstadoEjemplar estadoAnterior = leerEstado(event.getPersister(), event.getOldState());
+    Integer libroNuevo = leerIdLibro(event.getPersister(), event.getState());
+    EstadoEjemplar estadoNuevo = leerEstado(event.getPersister(), event.getState());
+    if (estadoAnterior != estadoNuevo || !Objects.equals(libroAnterior, libroNuevo)) {
+      ajustar(libroAnterior, estadoAnterior, -1);
+      ajustar(libroNuevo, estadoNuevo, 1);
+    }
+  }
+
+  @Override
+  public boolean requiresPostCommitHandling(EntityPersister persister) {
+    Class<?> clase = persister.getMappedClass();
+    return clase == Libro.class || clase == Ejemplar.class;
+  }
+
+  @Override
+  @Deprecated
+  public boolean requiresPostCommitHanding(EntityPersister persister) {
+    return requiresPostCommitHandling(persister);
+  }
+
+  @Override
+  public void onPostInsertCommitFailed(PostInsertEvent event) {
+  }
+
+  @Override
+  public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+  }
+
+  @Override
+  public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+  }
+
+  // MANTENIMIENTO
+
+  private void ajustar(Integer idLibro, EstadoEjemplar estado, int cantidad) {
+    if (idLibro == null || estado == null) {
+      return;
+    }
+    long sello = cerrojo.writeLock();
+    try {
+      long contadores = libros.get(idLibro, AUSENTE);
+      if (contadores == AUSENTE) {
+        contadores = SIN_EJEMPLARES;
+      }
+      int nuevo = Math.max(-SESGO, Math.min(MAXIMO_POR_ESTADO, contador(contadores, estado) + cantidad));
+      int desplazamiento = estado.ordinal() * BITS_POR_ESTADO;
+      libros.put(idLibro, (contadores & ~(0xFFFFL << desplazamiento)) | ((long) (nuevo + SESGO) << desplazamiento));
+    } finally {
+      cerrojo.unlockWrite(sello);
+    }
+  }
+
+  // Valor con signo de un contador (puede ser negativo mientras llegan eventos desordenados)
+  private static int contador(long contadores, EstadoEjemplar estado) {
+    return (int) ((contadores >>> (estado.ordinal() * BITS_POR_ESTADO)) & 0xFFFF) - SESGO;
+  }
+
+  // cantidades en el orden de EstadoEjemplar
+  private static long empaquetar(int[] cantidades) {
+    long contadores = 0L;
+    for (int i = 0; i < cantidades.length; i++) {
+      long campo = Math.max(0, Math.min(MAXIMO_POR_ESTADO, cantidades[i])) + SESGO;
+      contadores |= campo << (i * BITS_POR_ESTADO);
+    }
+    return contadores;
+  }
+
+  // fila = [idLibro, disponibles, prestados, reparación, baja] (el orden de EstadoEjemplar)
+  private static long empaquetarFila(Object[] fila) {
+    int[] cantidades = new int[EstadoEjemplar.values().length];
+    for (int i = 0; i < cantidades.length; i++) {
+      cantidades[i] = ((Number) fila[1 + i]).intValue();
+    }
+    return empaquetar(cantidades);
+  }
+
+  // Id del libro de un ejemplar a partir de su estado de fila (el proxy de Libro no se inicializa)
+  private static Integer leerIdLibro(EntityPersister persister, Object[] estadoFila) {
+    if (estadoFila == null) {
+      return null;
+    }
+    Object libro = estadoFila[persister.getEntityMetamodel().getPropertyIndex("libro")];
+    return libro instanceof Libro l ? l.getIdLibro() : null;
+  }
+
+  private static EstadoEjemplar leerEstado(EntityPersister persister, Object[] estadoFila) {
+    if (estadoFila == null) {
+      return null;
+    }
+    return (EstadoEjemplar) estadoFila[persister.getEntityMetamodel().getPropertyIndex("estado")];
+  }
+}
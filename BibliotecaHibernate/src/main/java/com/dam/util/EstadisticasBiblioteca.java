@@ -0,0 +1,207 @@
+package com.dam.util;
+
+import com.dam.modelo.Autor;
+import com.dam.modelo.Ejemplar;
+import com.dam.modelo.Ejemplar.EstadoEjemplar;
+import com.dam.modelo.Libro;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores en memoria de autores, libros y ejemplares (con histograma por EstadoEjemplar).
+ *
+ * Se siembran una vez al arrancar con conciliar() y después se mantienen con listeners post-commit de Hibernate,
+ * por lo que una transacción revertida no altera los contadores. La lectura es O(1) y no toca la base de datos.
+ * Las operaciones masivas de HQL (UPDATE/DELETE) no disparan listeners: quien las ejecuta debe avisar con
+ * registrarCambioEstado() / registrarBorradoMasivo(). Ante cualquier duda, conciliar() vuelve a contar en la BD.
+ * Con varias particiones los listeners están en todas y conciliar() cuenta en todas a la vez y suma.
+ */
+public class EstadisticasBiblioteca implements PostCommitInsertEventListener, PostCommitDeleteEventListener, PostCommitUpdateEventListener {
+
+  private final Particiones particiones;
+  private final LongAdder autores = new LongAdder();
+  private final LongAdder libros = new LongAdder();
+  private final LongAdder[] ejemplaresPorEstado = new LongAdder[EstadoEjemplar.values().length];
+
+  public EstadisticasBiblioteca(Particiones particiones) {
+    this.particiones = particiones;
+    for (int i = 0; i < ejemplaresPorEstado.length; i++) {
+      ejemplaresPorEstado[i] = new LongAdder();
+    }
+  }
+
+  // LECTURA (O(1), sin acceso a la base de datos)
+
+  public long getTotalAutores() {
+    return autores.sum();
+  }
+
+  public long getTotalLibros() {
+    return libros.sum();
+  }
+
+  public long getTotalEjemplares() {
+    long total = 0;
+    for (LongAdder contador : ejemplaresPorEstado) {
+      total += contador.sum();
+    }
+    return total;
+  }
+
+  public long getTotalEjemplares(EstadoEjemplar estado) {
+    return ejemplaresPorEstado[estado.ordinal()].sum();
+  }
+
+  public Map<EstadoEjemplar, Long> getEjemplaresPorEstado() {
+    Map<EstadoEjemplar, Long> histograma = new EnumMap<>(EstadoEjemplar.class);
+    for (EstadoEjemplar estado : EstadoEjemplar.values()) {
+      histograma.put(estado, getTotalEjemplares(estado));
+    }
+    return histograma;
+  }
+
+  // CONCILIACIÓN: vuelve a contar en la base de datos (3 consultas por partición, en paralelo) y reemplaza los contadores.
+  // Los eventos que lleguen mientras se concilia pueden perderse o contarse dos veces; se corrigen en la siguiente conciliación.
+
+  public void conciliar() {
+    // Por partición: autores, libros y ejemplares de cada estado (en orden de ordinal)
+    List<long[]> recuentos = particiones.enTodas(particion -> contar(particiones.get(particion)));
+
+    long[] totales = new long[2 + ejemplaresPorEstado.length];
+    for (long[] recuento : recuentos) {
+      for (int i = 0; i < totales.length; i++) {
+        totales[i] += recuento[i];
+      }
+    }
+    reemplazar(autores, totales[0]);
+    reemplazar(libros, totales[1]);
+    for (int i = 0; i < ejemplaresPorEstado.length; i++) {
+      reemplazar(ejemplaresPorEstado[i], totales[2 + i]);
+    }
+  }
+
+  private long[] contar(SessionFactory sessionFactory) {
+    try (Session session = sessionFactory.openSession()) {
+      session.setDefaultReadOnly(true);
+      long[] recuento = new long[2 + ejemplaresPorEstado.length];
+      recuento[0] = session.createQuery("SELECT COUNT(a) FROM Autor a", Long.class).uniqueResult();
+      recuento[1] = session.createQuery("SELECT COUNT(l) FROM Libro l", Long.class).uniqueResult();
+      List<Object[]> porEstado = session.createQuery(
+          "SELECT e.estado, COUNT(e) FROM Ejemplar e GROUP BY e.estado", Object[].class)
+        .list();
+      for (Object[] fila : porEstado) {
+        recuento[2 + ((EstadoEjemplar) fila[0]).ordinal()] = (Long) fila[1];
+      }
+      return recuento;
+    }
+  }
+
+  private static void reemplazar(LongAdder contador, long valor) {
+    contador.add(valor - contador.sum());
+  }
+
+  // AVISOS DE OPERACIONES MASIVAS (llamar después del commit)
+
+  public void registrarCambioEstado(EstadoEjemplar anterior, EstadoEjemplar nuevo, long cantidad) {
+    ejemplaresPorEstado[anterior.ordinal()].add(-cantidad);
+    ejemplaresPorEstado[nuevo.ordinal()].add(cantidad);
+  }
+
+  public void registrarBorradoMasivo(long autoresBorrados, long librosBorrados, Map<EstadoEjemplar, Long> ejemplaresBorrados) {
+    autores.add(-autoresBorrados);
+    libros.add(-librosBorrados);
+    for (Map.Entry<EstadoEjemplar, Long> entrada : ejemplaresBorrados.entrySet()) {
+      ejemplaresPorEstado[entrada.getKey().ordinal()].add(-entrada.getValue());
+    }
+  }
+
+  // LISTENERS POST-COMMIT
+
+  @Override
+  public void onPostInsert(PostInsertEvent event) {
+    Object entidad = event.getEntity();
+    if (entidad instanceof Autor) {
+      autores.increment();
+    } else if (entidad instanceof Libro) {
+      libros.increment();
+    } else if (entidad instanceof Ejemplar ejemplar) {
+      ejemplaresPorEstado[ejemplar.getEstado().ordinal()].increment();
+    }
+  }
+
+  @Override
+  public void onPostDelete(PostDeleteEvent event) {
+    Object entidad = event.getEntity();
+    if (entidad instanceof Autor) {
+      autores.decrement();
+    } else if (entidad instanceof Libro) {
+      libros.decrement();
+    } else if (entidad instanceof Ejemplar) {
+      // Se usa el estado con el que se borró la fila, no el del objeto (que pudo cambiarse sin llegar a guardarse)
+      EstadoEjemplar estado = leerEstado(event.getPersister(), event.getDeletedState());
+      if (estado != null) {
+        ejemplaresPorEstado[estado.ordinal()].decrement();
+      }
+    }
+  }
+
+  @Override
+  public void onPostUpdate(PostUpdateEvent event) {
+    if (!(event.getEntity() instanceof Ejemplar)) {
+      return;
+    }
+    // Sin estado anterior (p. ej. update de un objeto detached) no se puede saber de qué estado venía: lo corrige conciliar()
+    EstadoEjemplar anterior = leerEstado(event.getPersister(), event.getOldState());
+    EstadoEjemplar nuevo = leerEstado(event.getPersister(), event.getState());
+    if (anterior != null && nuevo != null && anterior != nuevo) {
+      registrarCambioEstado(anterior, nuevo, 1);
+    }
+  }
+
+  private static EstadoEjemplar leerEstado(EntityPersister persister, Object[] estadoFila) {
+    if (estadoFila == null) {
+      return null;
+    }
+    int indice = persister.getEntityMetamodel().getPropertyIndex("estado");
+    return (EstadoEjemplar) estadoFila[indice];
+  }
+
+  @Override
+  public boolean requiresPostCommitHandling(EntityPersister persister) {
+    Class<?> clase = persister.getMappedClass();
+    return clase == Autor.class || clase == Libro.class || clase == Ejemplar.class;
+  }
+
+  // Hibernate 5.6 aún exige implementar el nombre antiguo (con la errata); solo delega en el nuevo
+  @Override
+  @Deprecated
+  public boolean requiresPostCommitHanding(EntityPersister persister) {
+    return requiresPostCommitHandling(persister);
+  }
+
+  @Override
+  public void onPostInsertCommitFailed(PostInsertEvent event) {
+    // La fila no llegó a confirmarse: no se cuenta
+  }
+
+  @Override
+  public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+  }
+
+  @Override
+  public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+  }
+}
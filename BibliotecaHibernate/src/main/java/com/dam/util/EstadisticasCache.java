@@ -0,0 +1,72 @@
+package com.dam.util;
+
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Lectura de las estadísticas de la caché de segundo nivel por región.
+ * Aciertos, fallos e inserciones salen de las Statistics de Hibernate; los desalojos (por tamaño o caducidad)
+ * solo los conoce el proveedor JCache, que los publica en el MBean 'javax.cache:type=CacheStatistics'.
+ */
+public class EstadisticasCache {
+
+  public record EstadisticasRegion(String region, long aciertos, long fallos, long inserciones, long desalojos) {
+
+    public double ratioAciertos() {
+      long total = aciertos + fallos;
+      return total == 0 ? 0 : (double) aciertos / total;
+    }
+  }
+
+  private EstadisticasCache() {
+  }
+
+  public static List<EstadisticasRegion> obtener() {
+    Statistics estadisticas = HibernateUtil.getSessionFactory().getStatistics();
+    // La región de la caché de consultas no aparece entre las de segundo nivel, se añade aparte
+    Set<String> regiones = new TreeSet<>(Arrays.asList(estadisticas.getSecondLevelCacheRegionNames()));
+    regiones.add(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME);
+
+    List<EstadisticasRegion> resultado = new ArrayList<>();
+    for (String region : regiones) {
+      CacheRegionStatistics region2lc = estadisticas.getCacheRegionStatistics(region);
+      if (region2lc == null) {
+        continue;
+      }
+      resultado.add(new EstadisticasRegion(
+        region,
+        region2lc.getHitCount(),
+        region2lc.getMissCount(),
+        region2lc.getPutCount(),
+        leerDesalojos(region)
+      ));
+    }
+    return resultado;
+  }
+
+  // Devuelve -1 si el proveedor no publica estadísticas JCache para la región.
+  private static long leerDesalojos(String region) {
+    try {
+      MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+      Set<ObjectName> nombres = servidor.queryNames(
+        new ObjectName("javax.cache:type=CacheStatistics,Cache=" + region + ",*"), null);
+      long desalojos = 0;
+      for (ObjectName nombre : nombres) {
+        desalojos += ((Number) servidor.getAttribute(nombre, "CacheEvictions")).longValue();
+      }
+      return nombres.isEmpty() ? -1 : desalojos;
+    } catch (Exception e) {
+      return -1;
+    }
+  }
+}
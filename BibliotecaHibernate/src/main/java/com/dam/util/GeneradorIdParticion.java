@@ -0,0 +1,46 @@
+package com.dam.util;
+
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.TableGenerator;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Generador de ids por tabla (el mismo TableGenerator con bloques de la tabla 'secuencias_id') que, si hay varias
+ * particiones, añade a cada id la partición de la SessionFactory en sus bits altos (Particiones.BITS_ID_LOCAL).
+ *
+ * Cada partición numera sus filas con su propia tabla de ids; el id final dice de qué partición es la fila.
+ * Sin particiones genera los mismos ids que un TableGenerator, sin el límite de los bits locales.
+ */
+public class GeneradorIdParticion extends TableGenerator {
+  // Partición de la SessionFactory; HibernateUtil la fija en cada una al arrancar (por defecto 0)
+  public static final String PROPIEDAD_PARTICION = "biblioteca.particion";
+  // true en todas las SessionFactory cuando hay más de una partición
+  public static final String PROPIEDAD_PARTICIONADO = "biblioteca.particionado";
+
+  private int particion;
+  private boolean particionado;
+
+  @Override
+  public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) {
+    super.configure(type, params, serviceRegistry);
+    Map<?, ?> propiedades = serviceRegistry.getService(ConfigurationService.class).getSettings();
+    particion = ConfigurationHelper.getInt(PROPIEDAD_PARTICION, propiedades, 0);
+    particionado = ConfigurationHelper.getBoolean(PROPIEDAD_PARTICIONADO, propiedades, false);
+  }
+
+  @Override
+  public Serializable generate(SharedSessionContractImplementor session, Object object) {
+    Serializable id = super.generate(session, object);
+    if (!particionado) {
+      return id;
+    }
+    return Particiones.componerId(particion, ((Number) id).longValue());
+  }
+}
@@ -1,26 +1,406 @@
 package com.dam.util;
 
+import com.dam.metricas.MetricasOperaciones;
+
 import org.hibernate.SessionFactory;
-import org.hibernate.cfg.Configuration;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.cfgxml.spi.LoadedConfig;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostLoadEventListener;
+import org.hibernate.tool.hbm2ddl.SchemaValidator;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+/**
+ * Arranque y acceso a la SessionFactory.
+ *
+ * La SessionFactory se construye la primera vez que se pide (no al cargar la clase) o en segundo plano con
+ * iniciarEnSegundoPlano(), para que el arranque de Hibernate se solape con el de la interfaz; quien la pida antes
+ * de que termine espera a que acabe. El arranque se mide por fases (getFasesArranque()).
+ *
+ * Con -Dbiblioteca.replicas=url1,url2,... se crea además una SessionFactory por réplica de solo lectura
+ * (getSessionFactoryLectura()); las escrituras y las lecturas que necesitan datos al día usan siempre la principal.
+ *
+ * Con -Dbiblioteca.particiones=url1,url2,... el catálogo se reparte por autor entre la base de datos principal
+ * (partición 0) y las indicadas (particiones 1, 2...): ver Particiones. getSessionFactory() es la partición 0.
+ */
 public class HibernateUtil {
-  private static final SessionFactory sessionFactory;
-  
-  static {
-    try{
-      sessionFactory = new Configuration().configure().buildSessionFactory();
-            
-    } catch (Throwable ex){
+  // Fichero de configuración alternativo (p. ej. el de H2 de los benchmarks): -Dbiblioteca.hibernate.cfg=...
+  public static final String PROPIEDAD_CONFIGURACION = "biblioteca.hibernate.cfg";
+  // URLs JDBC de las réplicas de lectura, separadas por comas (mismo usuario y contraseña que la principal)
+  public static final String PROPIEDAD_REPLICAS = "biblioteca.replicas";
+  // URLs JDBC de las particiones 1, 2..., separadas por comas (mismo usuario y contraseña que la principal)
+  public static final String PROPIEDAD_PARTICIONES = "biblioteca.particiones";
+  // Espera máxima para obtener conexión del pool de una réplica
+  private static final long ESPERA_CONEXION_REPLICA_MS = 3000;
+
+  private static volatile SessionFactory sessionFactory;
+  private static EstadisticasBiblioteca estadisticas;
+  private static IndiceBusqueda indiceBusqueda;
+  private static DirectorioClaves directorioClaves;
+  private static DisponibilidadLibros disponibilidadLibros;
+  private static ReplicasLectura replicas;
+  private static Particiones particiones;
+  // Error del arranque, si falló: se relanza en cada acceso en lugar de reintentar
+  private static Throwable errorArranque;
+  // true mientras el hilo que arranca está dentro de arrancar() (detecta que el propio arranque pida la SessionFactory)
+  private static boolean arrancando;
+  // Duración de cada fase del arranque, en orden
+  private static final Map<String, Duration> fasesArranque = Collections.synchronizedMap(new LinkedHashMap<>());
+
+  // Lanza la construcción de la SessionFactory en un hilo aparte y vuelve enseguida
+  public static void iniciarEnSegundoPlano() {
+    Thread hilo = new Thread(() -> {
+      try {
+        arrancar();
+      } catch (RuntimeException e) {
+        // Ya se informó en arrancar(); quien pida la SessionFactory recibirá el error
+      }
+    }, "arranque-hibernate");
+    hilo.setDaemon(true);
+    hilo.start();
+  }
+
+  public static SessionFactory getSessionFactory() {
+    SessionFactory actual = sessionFactory;
+    return actual != null ? actual : arrancar();
+  }
+
+  // SessionFactory para lecturas que toleran algo de retraso: una réplica sana por turnos, o la principal si no hay
+  public static SessionFactory getSessionFactoryLectura() {
+    SessionFactory principal = getSessionFactory();
+    SessionFactory replica = replicas.elegir();
+    return replica != null ? replica : principal;
+  }
+
+  // Retira una réplica que ha fallado al conectar hasta que la comprobación periódica vuelva a verla sana
+  public static void descartarReplica(SessionFactory replica) {
+    getSessionFactory();
+    replicas.marcarCaida(replica);
+  }
+
+  // Estado de cada réplica configurada (vacío si no hay réplicas)
+  public static List<ReplicasLectura.EstadoReplica> getEstadoReplicas() {
+    getSessionFactory();
+    return replicas.getEstado();
+  }
+
+  public static Particiones getParticiones() {
+    getSessionFactory();
+    return particiones;
+  }
+
+  public static EstadisticasBiblioteca getEstadisticasBiblioteca() {
+    getSessionFactory();
+    return estadisticas;
+  }
+
+  public static IndiceBusqueda getIndiceBusqueda() {
+    getSessionFactory();
+    return indiceBusqueda;
+  }
+
+  public static DirectorioClaves getDirectorioClaves() {
+    getSessionFactory();
+    return directorioClaves;
+  }
+
+  public static DisponibilidadLibros getDisponibilidadLibros() {
+    getSessionFactory();
+    return disponibilidadLibros;
+  }
+
+  // Fases del arranque con su duración ("jvm" es el tiempo desde que arrancó la JVM hasta que empezó Hibernate)
+  public static Map<String, Duration> getFasesArranque() {
+    synchronized (fasesArranque) {
+      return new LinkedHashMap<>(fasesArranque);
+    }
+  }
+
+  public static boolean isIniciada() {
+    return sessionFactory != null;
+  }
+
+  private static synchronized SessionFactory arrancar() {
+    if (sessionFactory != null) {
+      return sessionFactory;
+    }
+    if (errorArranque != null) {
+      throw new IllegalStateException("La SessionFactory no se pudo crear", errorArranque);
+    }
+    if (arrancando) {
+      throw new IllegalStateException("Se ha pedido la SessionFactory durante su propio arranque");
+    }
+
+    arrancando = true;
+    StandardServiceRegistry registroServicios = null;
+    SessionFactory nueva = null;
+    Particiones nuevasParticiones = null;
+    try {
+      fasesArranque.put("jvm", Duration.ofMillis(System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime()));
+      Cronometro cronometro = new Cronometro();
+
+      Map<String, Object> propiedades = propiedades();
+      if (!leerUrls(PROPIEDAD_PARTICIONES).isEmpty()) {
+        // Ids con la partición en los bits altos en todas, también en la principal
+        propiedades.put(GeneradorIdParticion.PROPIEDAD_PARTICIONADO, "true");
+      }
+      // La validación del esquema se hace aparte para medirla; -Dhibernate.hbm2ddl.auto=none la omite
+      boolean validar = "validate".equals(propiedades.get(AvailableSettings.HBM2DDL_AUTO));
+      StandardServiceRegistryBuilder constructor = configuracion(propiedades);
+      if (validar) {
+        constructor.applySetting(AvailableSettings.HBM2DDL_AUTO, "none");
+      }
+      registroServicios = constructor.build();
+      cronometro.fase("servicios");
+
+      Metadata metadata = new MetadataSources(registroServicios).buildMetadata();
+      cronometro.fase("metadatos");
+
+      nueva = metadata.buildSessionFactory();
+      cronometro.fase("sessionFactory");
+
+      if (validar) {
+        new SchemaValidator().validate(metadata, registroServicios);
+        cronometro.fase("validacion");
+      }
+
+      nuevasParticiones = arrancarParticiones(nueva, propiedades);
+      cronometro.fase("particiones");
+
+      // Partición de cada ISBN y código de ejemplar (solo con varias particiones)
+      directorioClaves = new DirectorioClaves(nuevasParticiones);
+      registrarPostCommit(nuevasParticiones, directorioClaves);
+      directorioClaves.reconstruir();
+      cronometro.fase("directorioClaves");
+
+      // Contadores en memoria mantenidos por listeners post-commit; se siembran una vez al arrancar.
+      // Los ids no se repiten entre particiones, así que las de todas alimentan las mismas estructuras.
+      estadisticas = new EstadisticasBiblioteca(nuevasParticiones);
+      registrarPostCommit(nuevasParticiones, estadisticas);
+      estadisticas.conciliar();
+      cronometro.fase("estadisticas");
+
+      // Índice de búsqueda de títulos y autores, mantenido igual que las estadísticas
+      indiceBusqueda = new IndiceBusqueda(nuevasParticiones);
+      registrarPostCommit(nuevasParticiones, indiceBusqueda);
+      indiceBusqueda.reconstruir();
+      cronometro.fase("indiceBusqueda");
+
+      // Ejemplares por estado de cada libro en memoria, cargados de los contadores de 'libros'
+      disponibilidadLibros = new DisponibilidadLibros(nuevasParticiones);
+      registrarPostCommit(nuevasParticiones, disponibilidadLibros);
+      disponibilidadLibros.reconstruir();
+      cronometro.fase("disponibilidad");
+
+      // Entidades cargadas por operación (métricas de GestionBiblioteca)
+      for (SessionFactory particion : nuevasParticiones.todas()) {
+        registrarEntidadesCargadas(particion);
+      }
+
+      replicas = arrancarReplicas(propiedades);
+      cronometro.fase("replicas");
+
+      fasesArranque.put("total", cronometro.total());
+      particiones = nuevasParticiones;
+      sessionFactory = nueva;
+      return nueva;
+
+    } catch (Throwable ex) {
       System.err.println("Session Factory creation failed: " + ex);
-      throw new ExceptionInInitializerError(ex);
+      errorArranque = ex;
+      // Cerrar la SessionFactory cierra también su registro de servicios (y con él el pool)
+      if (nuevasParticiones != null) {
+        nuevasParticiones.close();
+      }
+      if (nueva != null) {
+        nueva.close();
+      } else if (registroServicios != null) {
+        StandardServiceRegistryBuilder.destroy(registroServicios);
+      }
+      throw new IllegalStateException("La SessionFactory no se pudo crear", ex);
+    } finally {
+      arrancando = false;
     }
   }
-  
-  public static SessionFactory getSessionFactory() {
-    return sessionFactory;
+
+  private static String ficheroConfiguracion() {
+    return System.getProperty(PROPIEDAD_CONFIGURACION, "hibernate.cfg.xml");
   }
-  
+
+  // Propiedades del fichero de configuración con las -Dhibernate.* de la línea de comandos, que tienen prioridad.
+  // Las particiones y las réplicas parten de una copia y cambian solo lo suyo.
+  private static Map<String, Object> propiedades() {
+    Map<String, Object> propiedades = new HashMap<>();
+    LoadedConfig fichero = new StandardServiceRegistryBuilder().getConfigLoader().loadConfigXmlResource(ficheroConfiguracion());
+    Map<?, ?> delFichero = fichero.getConfigurationValues();
+    for (Map.Entry<?, ?> propiedad : delFichero.entrySet()) {
+      propiedades.put(String.valueOf(propiedad.getKey()), propiedad.getValue());
+    }
+    for (String nombre : System.getProperties().stringPropertyNames()) {
+      if (nombre.startsWith("hibernate.")) {
+        propiedades.put(nombre, System.getProperty(nombre));
+      }
+    }
+    return propiedades;
+  }
+
+  // El fichero aporta también los mapeos y la configuración de caché de cada entidad; 'propiedades' sobrescribe sus valores
+  private static StandardServiceRegistryBuilder configuracion(Map<String, Object> propiedades) {
+    return new StandardServiceRegistryBuilder()
+      .configure(ficheroConfiguracion())
+      .applySettings(propiedades);
+  }
+
+  // Las particiones 1, 2... con la misma configuración y mapeo que la principal (incluida la validación del esquema).
+  // Cada una tiene su pool y numera sus ids con su propia tabla 'secuencias_id' (GeneradorIdParticion).
+  // Comparten la caché de entidades con la principal (los ids no se repiten), pero no la de consultas: la misma
+  // consulta con los mismos parámetros devolvería el resultado cacheado de otra partición.
+  // A diferencia de las réplicas, una partición que no arranca impide el arranque: faltaría parte del catálogo.
+  private static Particiones arrancarParticiones(SessionFactory principal, Map<String, Object> propiedades) {
+    Particiones nuevas = new Particiones(principal);
+    try {
+      for (String url : leerUrls(PROPIEDAD_PARTICIONES)) {
+        int numero = nuevas.getNumero();
+        Map<String, Object> deParticion = new HashMap<>(propiedades);
+        deParticion.put(AvailableSettings.URL, url);
+        deParticion.put(AvailableSettings.USE_QUERY_CACHE, "false");
+        deParticion.put("hibernate.hikari.poolName", propiedades.getOrDefault("hibernate.hikari.poolName", "biblioteca") + "-particion-" + numero);
+        deParticion.put(GeneradorIdParticion.PROPIEDAD_PARTICION, String.valueOf(numero));
+        StandardServiceRegistry registroServicios = configuracion(deParticion).build();
+        try {
+          nuevas.agregar(new MetadataSources(registroServicios).buildMetadata().buildSessionFactory());
+        } catch (RuntimeException e) {
+          StandardServiceRegistryBuilder.destroy(registroServicios);
+          throw new IllegalStateException("No se pudo crear la partición " + numero + " (" + url + ")", e);
+        }
+      }
+      nuevas.iniciar();
+      if (nuevas.getNumero() > 1) {
+        nuevas.comprobarIds();
+      }
+    } catch (RuntimeException e) {
+      nuevas.close();
+      throw e;
+    }
+    return nuevas;
+  }
+
+  // Registra un listener post-commit (alta, modificación y borrado) en todas las particiones
+  private static <L extends PostCommitInsertEventListener & PostCommitUpdateEventListener & PostCommitDeleteEventListener>
+      void registrarPostCommit(Particiones particiones, L listener) {
+    for (SessionFactory particion : particiones.todas()) {
+      EventListenerRegistry registro = particion.unwrap(SessionFactoryImplementor.class)
+        .getServiceRegistry().getService(EventListenerRegistry.class);
+      registro.appendListeners(EventType.POST_COMMIT_INSERT, listener);
+      registro.appendListeners(EventType.POST_COMMIT_UPDATE, listener);
+      registro.appendListeners(EventType.POST_COMMIT_DELETE, listener);
+    }
+  }
+
+  private static void registrarEntidadesCargadas(SessionFactory sessionFactory) {
+    sessionFactory.unwrap(SessionFactoryImplementor.class).getServiceRegistry().getService(EventListenerRegistry.class)
+      .appendListeners(EventType.POST_LOAD, (PostLoadEventListener) evento -> MetricasOperaciones.registrarEntidadCargada());
+  }
+
+  // URLs JDBC de una propiedad de sistema separadas por comas (vacía si no está)
+  private static List<String> leerUrls(String propiedad) {
+    List<String> urls = new ArrayList<>();
+    for (String url : System.getProperty(propiedad, "").split(",")) {
+      if (!url.isBlank()) {
+        urls.add(url.trim());
+      }
+    }
+    return urls;
+  }
+
+  // Una SessionFactory por réplica: misma configuración y mapeo que la principal, con su propio pool de solo lectura.
+  // Sin caché de segundo nivel: las escrituras de la principal no invalidarían la de la réplica.
+  // Sin listeners post-commit: en una réplica no se escribe. Una réplica que no responde al arrancar no impide el
+  // arranque (el pool se crea sin conexiones); la comprobación periódica la marca caída hasta que responda.
+  // La espera de conexión es corta para que una réplica caída falle enseguida en lugar de retener la lectura.
+  private static ReplicasLectura arrancarReplicas(Map<String, Object> propiedades) {
+    ReplicasLectura nuevas = new ReplicasLectura();
+    int numero = 0;
+    for (String url : leerUrls(PROPIEDAD_REPLICAS)) {
+      numero++;
+      Map<String, Object> deReplica = new HashMap<>(propiedades);
+      deReplica.put(AvailableSettings.URL, url);
+      deReplica.put(AvailableSettings.HBM2DDL_AUTO, "none");
+      deReplica.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, "false");
+      deReplica.put(AvailableSettings.USE_QUERY_CACHE, "false");
+      deReplica.put("hibernate.hikari.poolName", propiedades.getOrDefault("hibernate.hikari.poolName", "biblioteca") + "-replica-" + numero);
+      deReplica.put("hibernate.hikari.readOnly", "true");
+      deReplica.put("hibernate.hikari.initializationFailTimeout", "-1");
+      deReplica.put("hibernate.hikari.connectionTimeout", String.valueOf(ESPERA_CONEXION_REPLICA_MS));
+      StandardServiceRegistry registroServicios = configuracion(deReplica).build();
+      try {
+        SessionFactory replica = new MetadataSources(registroServicios).buildMetadata().buildSessionFactory();
+        registrarEntidadesCargadas(replica);
+        nuevas.agregar(url, replica);
+      } catch (RuntimeException e) {
+        System.err.println("No se pudo crear la réplica de lectura " + url + ": " + e);
+        StandardServiceRegistryBuilder.destroy(registroServicios);
+      }
+    }
+    nuevas.iniciar();
+    return nuevas;
+  }
+
+  // Mide fases consecutivas del arranque y las anota en fasesArranque
+  private static class Cronometro {
+    private final long inicio = System.nanoTime();
+    private long anterior = inicio;
+
+    void fase(String nombre) {
+      long ahora = System.nanoTime();
+      fasesArranque.put(nombre, Duration.ofNanos(ahora - anterior));
+      anterior = ahora;
+    }
+
+    Duration total() {
+      return Duration.ofNanos(System.nanoTime() - inicio);
+    }
+  }
+
+  // Estado del pool de conexiones (activas, inactivas, hilos esperando y latencia de obtención).
+  public static ProveedorConexionesMedido.EstadisticasPool getEstadisticasPool() {
+    ConnectionProvider proveedor = getSessionFactory().unwrap(SessionFactoryImplementor.class)
+      .getServiceRegistry().getService(ConnectionProvider.class);
+    if (!(proveedor instanceof ProveedorConexionesMedido medido)) {
+      throw new IllegalStateException("El ConnectionProvider configurado no es ProveedorConexionesMedido: " + proveedor.getClass().getName());
+    }
+    return medido.getEstadisticas();
+  }
+
+  // Tamaño máximo del pool; sirve para dimensionar la concurrencia de quien llama a GestionBiblioteca.
+  public static int getTamanoPool() {
+    return getEstadisticasPool().maximo();
+  }
+
   public static void shutdown(){
-    getSessionFactory().close();
+    // Si nunca llegó a arrancar no hay nada que cerrar
+    if (sessionFactory != null) {
+      replicas.close();
+      particiones.close();
+      sessionFactory.close();
+    }
   }
 }
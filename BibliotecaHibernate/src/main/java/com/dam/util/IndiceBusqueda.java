@@ -0,0 +1,405 @@
+package com.dam.util;
+
+import com.dam.modelo.Autor;
+import com.dam.modelo.Libro;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Índice invertido en memoria para buscar libros (por título) y autores (por nombre, apellidos y nacionalidad)
+ * sin consultar la base de datos.
+ *
+ * Se construye una vez al arrancar con reconstruir() y después se mantiene con listeners post-commit, igual que
+ * EstadisticasBiblioteca. Los DELETE masivos de HQL no disparan listeners: quien los ejecuta debe avisar con
+ * eliminarLibro() / eliminarAutor().
+ *
+ * Los términos se normalizan (minúsculas y sin tildes) y se guardan ordenados (TreeMap), así una consulta por
+ * prefijo ("cerv*") es un recorrido de un rango del mapa. La puntuación es BM25: los términos raros pesan más que
+ * los frecuentes y, a igualdad de coincidencias, puntúan más los textos cortos. Todos los términos de la consulta
+ * deben aparecer en el documento.
+ */
+public class IndiceBusqueda implements PostCommitInsertEventListener, PostCommitDeleteEventListener, PostCommitUpdateEventListener {
+
+  public enum TipoDocumento {
+    LIBRO,
+    AUTOR
+  }
+
+  public record ResultadoBusqueda(TipoDocumento tipo, Integer id, String texto, double puntuacion) {
+  }
+
+  // Parámetros de BM25
+  private static final double K1 = 1.2;
+  private static final double B = 0.75;
+  // Peso de cada campo en la frecuencia de un término (la nacionalidad discrimina poco)
+  private static final double PESO_TEXTO = 1.0;
+  private static final double PESO_NACIONALIDAD = 0.5;
+
+  // Un documento indexado: el texto que se muestra, sus términos (para poder desindexarlo) y su longitud
+  private record Documento(TipoDocumento tipo, Integer id, String texto, Map<String, Double> frecuencias, int longitud) {
+  }
+
+  // Aparición de un término en un documento; lleva la longitud del documento para puntuar sin buscarlo
+  private record Aparicion(double frecuencia, int longitud) {
+  }
+
+  private final Particiones particiones;
+  // término -> (clave de documento -> aparición)
+  private final NavigableMap<String, Map<Long, Aparicion>> terminos = new TreeMap<>();
+  private final Map<Long, Documento> documentos = new HashMap<>();
+  private long longitudTotal;
+  private final ReadWriteLock cerrojo = new ReentrantReadWriteLock();
+
+  public IndiceBusqueda(Particiones particiones) {
+    this.particiones = particiones;
+  }
+
+  // CONSTRUCCIÓN: recorre libros y autores con cursor (dos consultas por partición, una partición tras otra) y
+  // reemplaza el índice.
+
+  public void reconstruir() {
+    NavigableMap<String, Map<Long, Aparicion>> nuevosTerminos = new TreeMap<>();
+    Map<Long, Documento> nuevosDocumentos = new HashMap<>();
+    long[] nuevaLongitud = {0};
+
+    for (SessionFactory sessionFactory : particiones.todas()) {
+      try (Session session = sessionFactory.openSession()) {
+        session.setDefaultReadOnly(true);
+        recorrer(session, "SELECT l.idLibro, l.titulo FROM Libro l", fila ->
+          nuevaLongitud[0] += agregar(nuevosTerminos, nuevosDocumentos, documentoLibro((Integer) fila[0], (String) fila[1])));
+        recorrer(session, "SELECT a.idAutor, a.nombre, a.apellidos, a.nacionalidad FROM Autor a", fila ->
+          nuevaLongitud[0] += agregar(nuevosTerminos, nuevosDocumentos,
+            documentoAutor((Integer) fila[0], (String) fila[1], (String) fila[2], (String) fila[3])));
+      }
+    }
+
+    cerrojo.writeLock().lock();
+    try {
+      terminos.clear();
+      terminos.putAll(nuevosTerminos);
+      documentos.clear();
+      documentos.putAll(nuevosDocumentos);
+      longitudTotal = nuevaLongitud[0];
+    } finally {
+      cerrojo.writeLock().unlock();
+    }
+  }
+
+  private static void recorrer(Session session, String hql, java.util.function.Consumer<Object[]> consumidor) {
+    try (ScrollableResults cursor = session.createQuery(hql).setFetchSize(1000).scroll(ScrollMode.FORWARD_ONLY)) {
+      while (cursor.next()) {
+        consumidor.accept(cursor.get());
+      }
+    }
+  }
+
+  // BÚSQUEDA
+
+  // Devuelve como mucho 'limite' resultados ordenados por puntuación. Un término acabado en '*' es un prefijo.
+  public List<ResultadoBusqueda> buscar(String consulta, int limite) {
+    List<String> partes = new ArrayList<>();
+    for (String parte : consulta.trim().split("\\s+")) {
+      if (!parte.isEmpty()) {
+        partes.add(parte);
+      }
+    }
+    if (partes.isEmpty() || limite <= 0) {
+      return List.of();
+    }
+
+    cerrojo.readLock().lock();
+    try {
+      int totalDocumentos = documentos.size();
+      if (totalDocumentos == 0) {
+        return List.of();
+      }
+      double longitudMedia = (double) longitudTotal / totalDocumentos;
+
+      // Puntuación acumulada por documento y nº de términos de la consulta en los que aparece
+      Map<Long, double[]> acumulado = null;
+      for (String parte : partes) {
+        boolean prefijo = parte.endsWith("*");
+        List<String> tokens = tokenizar(prefijo ? parte.substring(0, parte.length() - 1) : parte);
+        for (int i = 0; i < tokens.size(); i++) {
+          // En "garcía-márquez*" solo el último trozo es prefijo
+          acumulado = puntuar(tokens.get(i), prefijo && i == tokens.size() - 1, acumulado, totalDocumentos, longitudMedia);
+          if (acumulado.isEmpty()) {
+            return List.of();
+          }
+        }
+      }
+      if (acumulado == null) {
+        return List.of();
+      }
+
+      // Top-k con un montículo de tamaño 'limite' cuya cima es el peor de los mejores
+      PriorityQueue<Map.Entry<Long, double[]>> mejores = new PriorityQueue<>(limite + 1, IndiceBusqueda::compararResultados);
+      for (Map.Entry<Long, double[]> entrada : acumulado.entrySet()) {
+        if (mejores.size() < limite) {
+          mejores.add(entrada);
+        } else if (compararResultados(entrada, mejores.peek()) > 0) {
+          mejores.poll();
+          mejores.add(entrada);
+        }
+      }
+      List<ResultadoBusqueda> resultados = new ArrayList<>(mejores.size());
+      while (!mejores.isEmpty()) {
+        Map.Entry<Long, double[]> entrada = mejores.poll();
+        Documento documento = documentos.get(entrada.getKey());
+        resultados.add(0, new ResultadoBusqueda(documento.tipo(), documento.id(), documento.texto(), entrada.getValue()[0]));
+      }
+      return resultados;
+
+    } finally {
+      cerrojo.readLock().unlock();
+    }
+  }
+
+  // Suma a cada documento candidato el BM25 del término (o de la mejor expansión del prefijo en ese documento).
+  // Con candidatos == null es el primer término y todos sus documentos son candidatos; si no, se descartan los que
+  // no contienen el término.
+  private Map<Long, double[]> puntuar(String termino, boolean prefijo, Map<Long, double[]> candidatos,
+                                      int totalDocumentos, double longitudMedia) {
+    Collection<Map<Long, Aparicion>> listas = prefijo
+      ? terminos.subMap(termino, true, termino + Character.MAX_VALUE, false).values()
+      : terminos.containsKey(termino) ? List.of(terminos.get(termino)) : List.of();
+
+    Map<Long, double[]> puntuaciones = new HashMap<>();
+    for (Map<Long, Aparicion> lista : listas) {
+      double idf = Math.log(1 + (totalDocumentos - lista.size() + 0.5) / (lista.size() + 0.5));
+      for (Map.Entry<Long, Aparicion> posting : lista.entrySet()) {
+        if (candidatos != null && !candidatos.containsKey(posting.getKey())) {
+          continue;
+        }
+        Aparicion aparicion = posting.getValue();
+        double puntuacion = idf * aparicion.frecuencia() * (K1 + 1)
+          / (aparicion.frecuencia() + K1 * (1 - B + B * aparicion.longitud() / longitudMedia));
+        double[] actual = puntuaciones.get(posting.getKey());
+        if (actual == null) {
+          puntuaciones.put(posting.getKey(), new double[] {puntuacion});
+        } else if (puntuacion > actual[0]) {
+          actual[0] = puntuacion;
+        }
+      }
+    }
+
+    if (candidatos != null) {
+      for (Map.Entry<Long, double[]> entrada : puntuaciones.entrySet()) {
+        entrada.getValue()[0] += candidatos.get(entrada.getKey())[0];
+      }
+    }
+    return puntuaciones;
+  }
+
+  // Orden ascendente de relevancia: más puntuación y, a igual puntuación, el id menor
+  private static int compararResultados(Map.Entry<Long, double[]> a, Map.Entry<Long, double[]> b) {
+    int comparacion = Double.compare(a.getValue()[0], b.getValue()[0]);
+    return comparacion != 0 ? comparacion : Long.compare(b.getKey(), a.getKey());
+  }
+
+  // Título de un libro tal como está indexado (vacío si no lo está), sin consultar la base de datos
+  public Optional<String> getTituloLibro(Integer idLibro) {
+    cerrojo.readLock().lock();
+    try {
+      Documento documento = documentos.get(clave(TipoDocumento.LIBRO, idLibro));
+      return documento == null ? Optional.empty() : Optional.of(documento.texto());
+    } finally {
+      cerrojo.readLock().unlock();
+    }
+  }
+
+  public int getTotalDocumentos() {
+    cerrojo.readLock().lock();
+    try {
+      return documentos.size();
+    } finally {
+      cerrojo.readLock().unlock();
+    }
+  }
+
+  // AVISOS DE OPERACIONES MASIVAS (llamar después del commit)
+
+  public void eliminarLibro(Integer idLibro) {
+    eliminar(clave(TipoDocumento.LIBRO, idLibro));
+  }
+
+  // Borra el autor y, como en la cascada de eliminarAutor, sus libros
+  public void eliminarAutor(Integer idAutor, Collection<Integer> idsLibros) {
+    eliminar(clave(TipoDocumento.AUTOR, idAutor));
+    for (Integer idLibro : idsLibros) {
+      eliminarLibro(idLibro);
+    }
+  }
+
+  // LISTENERS POST-COMMIT
+
+  @Override
+  public void onPostInsert(PostInsertEvent event) {
+    indexar(event.getEntity());
+  }
+
+  @Override
+  public void onPostUpdate(PostUpdateEvent event) {
+    indexar(event.getEntity());
+  }
+
+  @Override
+  public void onPostDelete(PostDeleteEvent event) {
+    Object entidad = event.getEntity();
+    if (entidad instanceof Libro libro) {
+      eliminarLibro(libro.getIdLibro());
+    } else if (entidad instanceof Autor autor) {
+      eliminar(clave(TipoDocumento.AUTOR, autor.getIdAutor()));
+    }
+  }
+
+  @Override
+  public boolean requiresPostCommitHandling(EntityPersister persister) {
+    Class<?> clase = persister.getMappedClass();
+    return clase == Autor.class || clase == Libro.class;
+  }
+
+  // Nombre antiguo, deprecado pero todavía abstracto en PostActionEventListener
+  @Override
+  @Deprecated
+  public boolean requiresPostCommitHanding(EntityPersister persister) {
+    return requiresPostCommitHandling(persister);
+  }
+
+  @Override
+  public void onPostInsertCommitFailed(PostInsertEvent event) {
+    // La fila no llegó a confirmarse: no se indexa
+  }
+
+  @Override
+  public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+  }
+
+  @Override
+  public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+  }
+
+  // MANTENIMIENTO DEL ÍNDICE
+
+  private void indexar(Object entidad) {
+    Documento documento;
+    if (entidad instanceof Libro libro) {
+      documento = documentoLibro(libro.getIdLibro(), libro.getTitulo());
+    } else if (entidad instanceof Autor autor) {
+      documento = documentoAutor(autor.getIdAutor(), autor.getNombre(), autor.getApellidos(), autor.getNacionalidad());
+    } else {
+      return;
+    }
+
+    cerrojo.writeLock().lock();
+    try {
+      quitar(clave(documento.tipo(), documento.id()));
+      longitudTotal += agregar(terminos, documentos, documento);
+    } finally {
+      cerrojo.writeLock().unlock();
+    }
+  }
+
+  private void eliminar(long clave) {
+    cerrojo.writeLock().lock();
+    try {
+      quitar(clave);
+    } finally {
+      cerrojo.writeLock().unlock();
+    }
+  }
+
+  // Requiere el cerrojo de escritura
+  private void quitar(long clave) {
+    Documento anterior = documentos.remove(clave);
+    if (anterior == null) {
+      return;
+    }
+    longitudTotal -= anterior.longitud();
+    for (String termino : anterior.frecuencias().keySet()) {
+      Map<Long, Aparicion> lista = terminos.get(termino);
+      lista.remove(clave);
+      if (lista.isEmpty()) {
+        terminos.remove(termino);
+      }
+    }
+  }
+
+  // Añade el documento a las estructuras indicadas y devuelve su longitud
+  private static int agregar(NavigableMap<String, Map<Long, Aparicion>> terminos, Map<Long, Documento> documentos, Documento documento) {
+    long clave = clave(documento.tipo(), documento.id());
+    documentos.put(clave, documento);
+    for (Map.Entry<String, Double> entrada : documento.frecuencias().entrySet()) {
+      terminos.computeIfAbsent(entrada.getKey(), t -> new HashMap<>())
+        .put(clave, new Aparicion(entrada.getValue(), documento.longitud()));
+    }
+    return documento.longitud();
+  }
+
+  private static Documento documentoLibro(Integer idLibro, String titulo) {
+    Map<String, Double> frecuencias = new HashMap<>();
+    int longitud = contar(frecuencias, titulo, PESO_TEXTO);
+    return new Documento(TipoDocumento.LIBRO, idLibro, titulo, frecuencias, longitud);
+  }
+
+  private static Documento documentoAutor(Integer idAutor, String nombre, String apellidos, String nacionalidad) {
+    Map<String, Double> frecuencias = new HashMap<>();
+    int longitud = contar(frecuencias, nombre, PESO_TEXTO)
+      + contar(frecuencias, apellidos, PESO_TEXTO)
+      + contar(frecuencias, nacionalidad, PESO_NACIONALIDAD);
+    String texto = nombre + " " + apellidos + (nacionalidad != null ? " (" + nacionalidad + ")" : "");
+    return new Documento(TipoDocumento.AUTOR, idAutor, texto, frecuencias, longitud);
+  }
+
+  private static int contar(Map<String, Double> frecuencias, String texto, double peso) {
+    List<String> tokens = tokenizar(texto);
+    for (String token : tokens) {
+      frecuencias.merge(token, peso, Double::sum);
+    }
+    return tokens.size();
+  }
+
+  // Minúsculas, sin tildes ni diéresis y partido por cualquier carácter que no sea letra o dígito
+  static List<String> tokenizar(String texto) {
+    if (texto == null || texto.isBlank()) {
+      return List.of();
+    }
+    String normalizado = Normalizer.normalize(texto.toLowerCase(Locale.ROOT), Normalizer.Form.NFD)
+      .replaceAll("\\p{M}+", "");
+    List<String> tokens = new ArrayList<>();
+    for (String token : normalizado.split("[^\\p{L}\\p{N}]+")) {
+      if (!token.isEmpty()) {
+        tokens.add(token);
+      }
+    }
+    return tokens;
+  }
+
+  private static long clave(TipoDocumento tipo, Integer id) {
+    return ((long) tipo.ordinal() << 32) | (id & 0xFFFFFFFFL);
+  }
+}
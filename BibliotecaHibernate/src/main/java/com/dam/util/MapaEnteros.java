@@ -0,0 +1,139 @@
+package com.dam.util;
+
+/**
+ * Mapa int -> long de direccionamiento abierto (sondeo lineal) sobre un único long[]: la clave y el valor de cada
+ * hueco van juntos (posiciones 2i y 2i+1), así una búsqueda toca una sola línea de caché y no hay un objeto por
+ * entrada (ni Integer, ni Long, ni nodos): el recolector solo ve un array.
+ *
+ * La clave 0 marca un hueco libre, así que las claves deben ser > 0 (los ids generados empiezan en 1).
+ * Los borrados desplazan hacia atrás las entradas siguientes en lugar de dejar marcas, por lo que el mapa no se
+ * degrada con altas y bajas.
+ *
+ * No es seguro para varios hilos: quien lo usa sincroniza las escrituras. get() sí puede llamarse mientras otro
+ * hilo escribe (lectura optimista de un StampedLock): lee el array una sola vez, nunca lanza excepciones y el
+ * sondeo está acotado; el resultado solo vale si el sello sigue siendo válido.
+ */
+class MapaEnteros {
+  private static final int CAPACIDAD_MINIMA = 16;
+  // Ocupación máxima antes de duplicar (en cuartos: 3/4)
+  private static final int OCUPACION_MAXIMA_CUARTOS = 3;
+
+  private long[] huecos;
+  private int tamano;
+
+  MapaEnteros(int esperados) {
+    huecos = new long[2 * capacidadPara(esperados)];
+  }
+
+  int size() {
+    return tamano;
+  }
+
+  // Bytes que ocupa el array de huecos (más la cabecera del array)
+  long getBytes() {
+    return 16L + 8L * huecos.length;
+  }
+
+  long get(int clave, long ausente) {
+    // El 0 marca los huecos libres: sin esta comprobación get(0) devolvería el valor de un hueco vacío.
+    // No se lanza excepción (get() puede correr a la vez que una escritura), solo se responde 'ausente'.
+    if (clave <= 0) {
+      return ausente;
+    }
+    long[] tabla = huecos;
+    int capacidad = tabla.length >>> 1;
+    int mascara = capacidad - 1;
+    int i = hash(clave) & mascara;
+    for (int sondeos = 0; sondeos < capacidad; sondeos++) {
+      long actual = tabla[2 * i];
+      if (actual == clave) {
+        return tabla[2 * i + 1];
+      }
+      if (actual == 0) {
+        return ausente;
+      }
+      i = (i + 1) & mascara;
+    }
+    return ausente;
+  }
+
+  void put(int clave, long valor) {
+    if (clave <= 0) {
+      throw new IllegalArgumentException("Las claves deben ser > 0: " + clave);
+    }
+    if (4L * (tamano + 1) > OCUPACION_MAXIMA_CUARTOS * (long) (huecos.length >>> 1)) {
+      redimensionar(huecos.length);
+    }
+    int i = buscarHueco(huecos, clave);
+    if (huecos[2 * i] == 0) {
+      huecos[2 * i] = clave;
+      tamano++;
+    }
+    huecos[2 * i + 1] = valor;
+  }
+
+  boolean remove(int clave) {
+    int mascara = (huecos.length >>> 1) - 1;
+    int i = buscarHueco(huecos, clave);
+    if (huecos[2 * i] == 0) {
+      return false;
+    }
+    // Desplaza hacia atrás las entradas de la misma racha que ya no quedarían alcanzables desde su posición ideal
+    int libre = i;
+    int j = i;
+    while (true) {
+      j = (j + 1) & mascara;
+      long siguiente = huecos[2 * j];
+      if (siguiente == 0) {
+        break;
+      }
+      int ideal = hash((int) siguiente) & mascara;
+      // 'siguiente' puede ocupar 'libre' si su posición ideal no está en el tramo circular (libre, j]
+      if (((j - ideal) & mascara) >= ((j - libre) & mascara)) {
+        huecos[2 * libre] = siguiente;
+        huecos[2 * libre + 1] = huecos[2 * j + 1];
+        libre = j;
+      }
+    }
+    huecos[2 * libre] = 0;
+    huecos[2 * libre + 1] = 0;
+    tamano--;
+    return true;
+  }
+
+  // Posición de la clave, o del hueco libre donde iría
+  private static int buscarHueco(long[] tabla, int clave) {
+    int mascara = (tabla.length >>> 1) - 1;
+    int i = hash(clave) & mascara;
+    while (tabla[2 * i] != 0 && tabla[2 * i] != clave) {
+      i = (i + 1) & mascara;
+    }
+    return i;
+  }
+
+  private void redimensionar(int longitudActual) {
+    long[] anterior = huecos;
+    long[] nueva = new long[2 * longitudActual];
+    for (int i = 0; i < anterior.length; i += 2) {
+      if (anterior[i] != 0) {
+        int j = buscarHueco(nueva, (int) anterior[i]);
+        nueva[2 * j] = anterior[i];
+        nueva[2 * j + 1] = anterior[i + 1];
+      }
+    }
+    // Se publica ya rellena: una lectura optimista ve la tabla anterior o la nueva completa
+    huecos = nueva;
+  }
+
+  // Potencia de 2 con sitio para 'esperados' claves sin pasar de la ocupación máxima
+  private static int capacidadPara(int esperados) {
+    long necesaria = Math.max(CAPACIDAD_MINIMA, (4L * esperados) / OCUPACION_MAXIMA_CUARTOS + 1);
+    return (int) Math.min(1 << 30, Long.highestOneBit(necesaria - 1) << 1);
+  }
+
+  // Mezcla de Fibonacci: los ids consecutivos quedan repartidos por toda la tabla
+  private static int hash(int clave) {
+    int h = clave * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
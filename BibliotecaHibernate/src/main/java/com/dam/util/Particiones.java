@@ -0,0 +1,193 @@
+package com.dam.util;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Partición horizontal del catálogo por autor: cada autor, con sus libros y ejemplares (el grafo de la cascada),
+ * vive entero en una base de datos. La partición 0 es la base de datos principal; -Dbiblioteca.particiones
+ * añade las demás.
+ *
+ * Con varias particiones los ids llevan su partición en los bits altos (GeneradorIdParticion): un id de autor,
+ * libro o ejemplar dice dónde está sin consultar nada. Con una sola los ids son los de siempre, sin límite propio.
+ * Al arrancar con varias se comprueba que cada partición solo tiene ids suyos (los de una base de datos anterior
+ * a las particiones valen como partición 0 si caben en los bits locales).
+ * - Por id: deEntidad(id).
+ * - Por clave natural (ISBN, código de ejemplar): DirectorioClaves, en memoria, que además garantiza su unicidad
+ *   entre particiones.
+ * - Un autor nuevo va a paraNuevoAutor() (por turnos) y su id lo genera esa partición.
+ * - Las lecturas de todo el catálogo (recuentos, listados) se reparten con enTodas(), una tarea por partición
+ *   en paralelo, y quien llama junta los resultados (lanzarEnTodas() si quiere consumirlos mientras llegan).
+ *   Las sentencias de esas tareas corren en otros hilos, así que no se suman a la medición de la operación
+ *   (MetricasOperaciones).
+ *
+ * Con una sola partición no se crea ningún hilo: todo se ejecuta en el hilo que llama, como antes.
+ */
+public class Particiones implements AutoCloseable {
+  // Bits del id que numeran dentro de la partición; los 5 de arriba (sin contar el de signo) son la partición
+  public static final int BITS_ID_LOCAL = 26;
+  public static final int MAXIMO_PARTICIONES = 1 << (Integer.SIZE - 1 - BITS_ID_LOCAL);
+  // Mayor id local: 67.108.863 autores, libros o ejemplares por partición
+  public static final long MAXIMO_ID_LOCAL = (1L << BITS_ID_LOCAL) - 1;
+  // Entidades con id generado por GeneradorIdParticion y su propiedad id
+  private static final String[][] TABLAS_CON_ID = {{"Autor", "idAutor"}, {"Libro", "idLibro"}, {"Ejemplar", "idEjemplar"}};
+
+  private final List<SessionFactory> sessionFactories = new ArrayList<>();
+  private final AtomicInteger turno = new AtomicInteger();
+  private ExecutorService ejecutor;
+
+  Particiones(SessionFactory principal) {
+    sessionFactories.add(principal);
+  }
+
+  // Se llama durante el arranque: la partición n es la n-ésima que se añade
+  void agregar(SessionFactory sessionFactory) {
+    if (sessionFactories.size() == MAXIMO_PARTICIONES) {
+      throw new IllegalStateException("No puede haber más de " + MAXIMO_PARTICIONES + " particiones");
+    }
+    sessionFactories.add(sessionFactory);
+  }
+
+  // Hilos a demanda: un recorrido largo ocupa uno por partición mientras dura y no debe dejar en cola las
+  // consultas cortas de otras operaciones (el límite real lo ponen los pools de conexiones)
+  void iniciar() {
+    if (sessionFactories.size() > 1) {
+      ejecutor = Executors.newCachedThreadPool(tarea -> {
+        Thread hilo = new Thread(tarea, "consulta-particiones");
+        hilo.setDaemon(true);
+        return hilo;
+      });
+    }
+  }
+
+  // IDS
+
+  // Partición de un id; con una sola partición todos los ids son de la 0, ocupen los bits que ocupen
+  public int particionDeId(int id) {
+    return sessionFactories.size() == 1 ? 0 : id >>> BITS_ID_LOCAL;
+  }
+
+  static int componerId(int particion, long local) {
+    if (local < 1 || local > MAXIMO_ID_LOCAL) {
+      throw new IllegalStateException("Id local fuera de rango en la partición " + particion + ": " + local);
+    }
+    return (particion << BITS_ID_LOCAL) | (int) local;
+  }
+
+  // Se llama al arrancar con varias particiones: cada una debe tener solo ids con su número en los bits altos.
+  // Basta con el mínimo y el máximo de cada tabla; un id fuera de rango se enviaría a otra partición (o a ninguna).
+  void comprobarIds() {
+    List<String> errores = new ArrayList<>();
+    for (List<String> deParticion : enTodas(particion -> {
+      List<String> fueraDeRango = new ArrayList<>();
+      long desde = ((long) particion << BITS_ID_LOCAL) + 1;
+      long hasta = ((long) particion << BITS_ID_LOCAL) + MAXIMO_ID_LOCAL;
+      try (Session session = sessionFactories.get(particion).openSession()) {
+        for (String[] tabla : TABLAS_CON_ID) {
+          Object[] rango = session.createQuery("SELECT MIN(t." + tabla[1] + "), MAX(t." + tabla[1] + ") FROM " + tabla[0] + " t", Object[].class)
+            .uniqueResult();
+          if (rango[0] != null && (((Integer) rango[0]) < desde || ((Integer) rango[1]) > hasta)) {
+            fueraDeRango.add("partición " + particion + ", " + tabla[0] + ": ids " + rango[0] + ".." + rango[1]
+              + " (se esperaban " + desde + ".." + hasta + ")");
+          }
+        }
+      }
+      return fueraDeRango;
+    })) {
+      errores.addAll(deParticion);
+    }
+    if (!errores.isEmpty()) {
+      throw new IllegalStateException("Hay ids fuera del rango de su partición: " + String.join("; ", errores));
+    }
+  }
+
+  // ELECCIÓN DE PARTICIÓN
+
+  public int getNumero() {
+    return sessionFactories.size();
+  }
+
+  public SessionFactory get(int particion) {
+    return sessionFactories.get(particion);
+  }
+
+  public List<SessionFactory> todas() {
+    return Collections.unmodifiableList(sessionFactories);
+  }
+
+  // Partición de un autor, libro o ejemplar por su id, o la principal si el id no es de ninguna de las
+  // configuradas (la operación responde "no encontrado" como siempre)
+  public SessionFactory deEntidad(Integer id) {
+    int particion = particionDeId(id);
+    return sessionFactories.get(particion < sessionFactories.size() ? particion : 0);
+  }
+
+  // Partición en la que se crea un autor nuevo (y con él sus libros y ejemplares)
+  public SessionFactory paraNuevoAutor() {
+    return sessionFactories.get(Math.floorMod(turno.getAndIncrement(), sessionFactories.size()));
+  }
+
+  // REPARTO EN PARALELO
+
+  // Ejecuta 'consulta' (recibe el número de partición) en cada partición a la vez y devuelve los resultados en
+  // orden de partición. Si alguna falla, se relanza su excepción cuando han terminado todas.
+  public <T> List<T> enTodas(IntFunction<T> consulta) {
+    List<CompletableFuture<T>> tareas = lanzarEnTodas(consulta);
+    List<T> resultados = new ArrayList<>(tareas.size());
+    RuntimeException error = null;
+    for (CompletableFuture<T> tarea : tareas) {
+      try {
+        resultados.add(tarea.join());
+      } catch (CompletionException e) {
+        if (error == null) {
+          error = e.getCause() instanceof RuntimeException causa ? causa : e;
+        }
+      }
+    }
+    if (error != null) {
+      throw error;
+    }
+    return resultados;
+  }
+
+  // Igual, sin esperar: una tarea por partición, en orden de partición. Con una sola partición la tarea se
+  // ejecuta en el hilo que llama y vuelve ya terminada.
+  public <T> List<CompletableFuture<T>> lanzarEnTodas(IntFunction<T> tarea) {
+    if (ejecutor == null) {
+      CompletableFuture<T> unica = new CompletableFuture<>();
+      try {
+        unica.complete(tarea.apply(0));
+      } catch (RuntimeException e) {
+        unica.completeExceptionally(e);
+      }
+      return List.of(unica);
+    }
+    List<CompletableFuture<T>> tareas = new ArrayList<>(sessionFactories.size());
+    for (int i = 0; i < sessionFactories.size(); i++) {
+      int particion = i;
+      tareas.add(CompletableFuture.supplyAsync(() -> tarea.apply(particion), ejecutor));
+    }
+    return tareas;
+  }
+
+  // La principal la cierra HibernateUtil
+  @Override
+  public void close() {
+    if (ejecutor != null) {
+      ejecutor.shutdownNow();
+    }
+    for (int i = 1; i < sessionFactories.size(); i++) {
+      sessionFactories.get(i).close();
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package com.dam.util;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import org.hibernate.hikaricp.internal.HikariCPConnectionProvider;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ConnectionProvider de HikariCP que además mide cuánto tarda cada petición en obtener una conexión del pool.
+ * Se activa con 'hibernate.connection.provider_class' y se configura con las propiedades 'hibernate.hikari.*'.
+ */
+public class ProveedorConexionesMedido extends HikariCPConnectionProvider {
+
+  private final LongAdder adquisiciones = new LongAdder();
+  private final LongAdder nanosEspera = new LongAdder();
+  private final LongAccumulator maxNanosEspera = new LongAccumulator(Long::max, 0);
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    long inicio = System.nanoTime();
+    Connection conexion = super.getConnection();
+    long espera = System.nanoTime() - inicio;
+
+    adquisiciones.increment();
+    nanosEspera.add(espera);
+    maxNanosEspera.accumulate(espera);
+    return conexion;
+  }
+
+  // Foto del estado actual del pool y de la latencia acumulada de obtención de conexiones.
+  public EstadisticasPool getEstadisticas() {
+    HikariDataSource dataSource = unwrap(HikariDataSource.class);
+    HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+    long total = adquisiciones.sum();
+
+    return new EstadisticasPool(
+      pool.getActiveConnections(),
+      pool.getIdleConnections(),
+      pool.getThreadsAwaitingConnection(),
+      dataSource.getMaximumPoolSize(),
+      total,
+      total == 0 ? 0 : nanosEspera.sum() / (double) total / 1_000_000,
+      maxNanosEspera.get() / 1_000_000.0
+    );
+  }
+
+  public record EstadisticasPool(int activas, int inactivas, int enEspera, int maximo,
+      long adquisiciones, double latenciaMediaMs, double latenciaMaxMs) {
+  }
+}
@@ -0,0 +1,157 @@
+package com.dam.util;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Réplicas de solo lectura a las que se envían las consultas que toleran algo de retraso (listados).
+ *
+ * - elegir() reparte por turnos (round-robin) entre las réplicas sanas; si no hay ninguna, devuelve null y quien
+ *   llama usa la base de datos principal.
+ * - Cada INTERVALO_COMPROBACION_MS se comprueba cada réplica (pide una conexión a su pool y la valida): una réplica
+ *   caída deja de recibir lecturas hasta que vuelve a responder. Una réplica recién creada no recibe lecturas hasta
+ *   pasar su primera comprobación, que se hace en segundo plano para no retrasar el arranque.
+ * - Cada réplica se comprueba en su propio hilo: una caída tarda en fallar (la espera de conexión de su pool) y
+ *   no debe retrasar la comprobación de las demás.
+ */
+public class ReplicasLectura implements AutoCloseable {
+  private static final long INTERVALO_COMPROBACION_MS = 5000;
+  // Espera máxima de Connection.isValid en cada comprobación
+  private static final int TIMEOUT_VALIDACION_S = 2;
+
+  // Estado de una réplica para mostrarlo (Main, opción 13)
+  public record EstadoReplica(String url, boolean sana, long lecturas, long fallosComprobacion) {
+  }
+
+  private static class Replica {
+    final String url;
+    final SessionFactory sessionFactory;
+    volatile boolean sana;
+    // false hasta la primera comprobación (solo lo usa la tarea que comprueba esta réplica)
+    boolean comprobada;
+    final LongAdder lecturas = new LongAdder();
+    final LongAdder fallosComprobacion = new LongAdder();
+
+    Replica(String url, SessionFactory sessionFactory) {
+      this.url = url;
+      this.sessionFactory = sessionFactory;
+    }
+  }
+
+  private final List<Replica> replicas = new ArrayList<>();
+  private final AtomicInteger turno = new AtomicInteger();
+  private ScheduledExecutorService comprobador;
+
+  ReplicasLectura() {
+  }
+
+  // Se llama durante el arranque, antes de iniciar()
+  void agregar(String url, SessionFactory sessionFactory) {
+    replicas.add(new Replica(url, sessionFactory));
+  }
+
+  void iniciar() {
+    if (replicas.isEmpty()) {
+      return;
+    }
+    comprobador = Executors.newScheduledThreadPool(replicas.size(), tarea -> {
+      Thread hilo = new Thread(tarea, "comprobacion-replicas");
+      hilo.setDaemon(true);
+      return hilo;
+    });
+    for (Replica replica : replicas) {
+      comprobador.scheduleWithFixedDelay(() -> comprobar(replica), 0, INTERVALO_COMPROBACION_MS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  // Siguiente réplica sana por turnos, o null si no hay ninguna
+  SessionFactory elegir() {
+    int total = replicas.size();
+    if (total == 0) {
+      return null;
+    }
+    int inicio = Math.floorMod(turno.getAndIncrement(), total);
+    for (int i = 0; i < total; i++) {
+      Replica replica = replicas.get((inicio + i) % total);
+      if (replica.sana) {
+        replica.lecturas.increment();
+        return replica.sessionFactory;
+      }
+    }
+    return null;
+  }
+
+  // Quien no ha podido conectar con una réplica la retira sin esperar a la siguiente comprobación
+  void marcarCaida(SessionFactory sessionFactory) {
+    for (Replica replica : replicas) {
+      if (replica.sessionFactory == sessionFactory && replica.sana) {
+        replica.sana = false;
+        System.err.println("Réplica de lectura sin conexión, sus lecturas van a la principal: " + replica.url);
+      }
+    }
+  }
+
+  List<EstadoReplica> getEstado() {
+    List<EstadoReplica> estado = new ArrayList<>(replicas.size());
+    for (Replica replica : replicas) {
+      estado.add(new EstadoReplica(replica.url, replica.sana, replica.lecturas.sum(), replica.fallosComprobacion.sum()));
+    }
+    return estado;
+  }
+
+  private static void comprobar(Replica replica) {
+    boolean sana = responde(replica);
+    if (!sana) {
+      replica.fallosComprobacion.increment();
+    }
+    if (sana != replica.sana || !replica.comprobada) {
+      replica.sana = sana;
+      replica.comprobada = true;
+      if (sana) {
+        System.out.println("Réplica de lectura disponible: " + replica.url);
+      } else {
+        System.err.println("Réplica de lectura sin respuesta, sus lecturas van a la principal: " + replica.url);
+      }
+    }
+  }
+
+  private static boolean responde(Replica replica) {
+    ConnectionProvider proveedor = replica.sessionFactory.unwrap(SessionFactoryImplementor.class)
+      .getServiceRegistry().getService(ConnectionProvider.class);
+    Connection conexion = null;
+    try {
+      conexion = proveedor.getConnection();
+      return conexion.isValid(TIMEOUT_VALIDACION_S);
+    } catch (Exception e) {
+      return false;
+    } finally {
+      if (conexion != null) {
+        try {
+          proveedor.closeConnection(conexion);
+        } catch (Exception e) {
+          // La conexión ya estaba rota: no hay nada más que hacer
+        }
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    if (comprobador != null) {
+      comprobador.shutdownNow();
+    }
+    for (Replica replica : replicas) {
+      replica.sessionFactory.close();
+    }
+  }
+}
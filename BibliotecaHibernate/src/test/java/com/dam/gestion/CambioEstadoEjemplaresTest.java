@@ -0,0 +1,120 @@
+package com.dam.gestion;
+
+import com.dam.gestion.GestionBiblioteca.ResultadoCambioEstado;
+import com.dam.modelo.Ejemplar;
+import com.dam.modelo.Ejemplar.EstadoEjemplar;
+import com.dam.util.EstadisticasBiblioteca;
+import com.dam.util.HibernateUtil;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CambioEstadoEjemplaresTest {
+  private static final GestionBiblioteca gestion = new GestionBiblioteca();
+
+  @BeforeAll
+  static void crearCatalogo() {
+    gestion.crearAutorConLibros(CatalogoPrueba.autor("Uno", 1, 4));
+    gestion.crearAutorConLibros(CatalogoPrueba.autor("Lote", 2, 4));
+    gestion.crearAutorConLibros(CatalogoPrueba.autor("Carrera", 1, 2));
+  }
+
+  @AfterAll
+  static void cerrar() {
+    HibernateUtil.shutdown();
+  }
+
+  @Test
+  void elCambioIndividualNoAplicaLaReglaDelLote() {
+    // La opción 7 es una corrección manual: puede sacar un ejemplar de BAJA (el lote no)
+    gestion.actualizarEstadoEjemplar("Uno-0-0", "BAJA");
+    assertEquals(EstadoEjemplar.BAJA, estado("Uno-0-0"));
+
+    gestion.actualizarEstadoEjemplar("Uno-0-0", "DISPONIBLE");
+    assertEquals(EstadoEjemplar.DISPONIBLE, estado("Uno-0-0"));
+
+    gestion.actualizarEstadoEjemplar("Uno-0-1", "REPARACION");
+    assertEquals(EstadoEjemplar.REPARACION, estado("Uno-0-1"));
+    assertCuadran();
+  }
+
+  @Test
+  void elLoteClasificaCadaCodigoSegunSuEstado() {
+    gestion.actualizarEstadoEjemplar("Lote-0-1", "BAJA");
+    gestion.actualizarEstadoEjemplar("Lote-0-2", "REPARACION");
+
+    Map<String, ResultadoCambioEstado> resultados = gestion.actualizarEstadoEjemplares(
+      List.of("Lote-0-0", "Lote-0-1", "Lote-0-2", "Lote-1-3", "No-existe"), EstadoEjemplar.REPARACION);
+
+    assertEquals(ResultadoCambioEstado.ACTUALIZADO, resultados.get("Lote-0-0"));
+    assertEquals(ResultadoCambioEstado.TRANSICION_INVALIDA, resultados.get("Lote-0-1"));
+    assertEquals(ResultadoCambioEstado.TRANSICION_INVALIDA, resultados.get("Lote-0-2"));
+    assertEquals(ResultadoCambioEstado.ACTUALIZADO, resultados.get("Lote-1-3"));
+    assertEquals(ResultadoCambioEstado.NO_ENCONTRADO, resultados.get("No-existe"));
+    assertEquals(EstadoEjemplar.REPARACION, estado("Lote-0-0"));
+    assertEquals(EstadoEjemplar.BAJA, estado("Lote-0-1"));
+    assertEquals(EstadoEjemplar.REPARACION, estado("Lote-1-3"));
+    assertCuadran();
+  }
+
+  // Otra transacción pasa el ejemplar al mismo estado de destino antes de que el lote lo clasifique: el lote espera
+  // a su commit y no lo cuenta como actualizado por él
+  @Test
+  void unCambioConcurrenteAlMismoEstadoNoSeAtribuyeAlLote() throws Exception {
+    CompletableFuture<Map<String, ResultadoCambioEstado>> lote;
+    try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+      Transaction transaction = session.beginTransaction();
+      Ejemplar ejemplar = session.bySimpleNaturalId(Ejemplar.class).load("Carrera-0-0");
+      ContadoresEjemplares contadores = new ContadoresEjemplares();
+      contadores.mover(ContadoresEjemplares.idLibro(ejemplar), ejemplar.getEstado(), EstadoEjemplar.REPARACION);
+      ejemplar.setEstado(EstadoEjemplar.REPARACION);
+      contadores.aplicar(session);
+      session.flush();
+
+      lote = CompletableFuture.supplyAsync(() ->
+        gestion.actualizarEstadoEjemplares(List.of("Carrera-0-0", "Carrera-0-1"), EstadoEjemplar.REPARACION));
+      Thread.sleep(300);
+      assertFalse(lote.isDone(), "El lote debería esperar al bloqueo de la fila");
+      transaction.commit();
+    }
+
+    Map<String, ResultadoCambioEstado> resultados = lote.get(10, TimeUnit.SECONDS);
+    assertEquals(ResultadoCambioEstado.TRANSICION_INVALIDA, resultados.get("Carrera-0-0"));
+    assertEquals(ResultadoCambioEstado.ACTUALIZADO, resultados.get("Carrera-0-1"));
+    assertCuadran();
+  }
+
+  private static EstadoEjemplar estado(String codigo) {
+    try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+      return session.createQuery("SELECT e.estado FROM Ejemplar e WHERE e.codigoEjemplar = :codigo", EstadoEjemplar.class)
+        .setParameter("codigo", codigo)
+        .uniqueResult();
+    }
+  }
+
+  // Los contadores de cada libro y los de EstadisticasBiblioteca coinciden con las filas de ejemplares
+  private static void assertCuadran() {
+    EstadisticasBiblioteca estadisticas = HibernateUtil.getEstadisticasBiblioteca();
+    try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+      assertTrue(ContadoresEjemplares.buscarDescuadrados(session).isEmpty(), "Contadores de libros descuadrados");
+      for (EstadoEjemplar estado : EstadoEjemplar.values()) {
+        long filas = session.createQuery("SELECT COUNT(e) FROM Ejemplar e WHERE e.estado = :estado", Long.class)
+          .setParameter("estado", estado)
+          .uniqueResult();
+        assertEquals(filas, estadisticas.getTotalEjemplares(estado), estado.name());
+      }
+    }
+  }
+}
@@ -0,0 +1,40 @@
+package com.dam.gestion;
+
+import com.dam.modelo.Autor;
+import com.dam.modelo.Ejemplar;
+import com.dam.modelo.Ejemplar.EstadoEjemplar;
+import com.dam.modelo.Libro;
+import com.dam.util.HibernateUtil;
+
+import org.hibernate.stat.Statistics;
+
+/**
+ * Datos y utilidades comunes de las pruebas (cada clase de prueba arranca con una base de datos H2 vacía).
+ */
+final class CatalogoPrueba {
+
+  private CatalogoPrueba() {
+  }
+
+  // Autor 'nombre' con 'libros' libros (ISBN "<nombre>-<n>") de 'ejemplares' ejemplares disponibles cada uno
+  // (código "<nombre>-<n>-<m>")
+  static Autor autor(String nombre, int libros, int ejemplares) {
+    Autor autor = new Autor(nombre, "Apellidos " + nombre, "ES", null);
+    for (int i = 0; i < libros; i++) {
+      Libro libro = new Libro("Título " + nombre + " " + i, nombre + "-" + i, null, 100);
+      for (int j = 0; j < ejemplares; j++) {
+        libro.addEjemplar(new Ejemplar(nombre + "-" + i + "-" + j, EstadoEjemplar.DISPONIBLE, "Sala"));
+      }
+      autor.addLibro(libro);
+    }
+    return autor;
+  }
+
+  // Estadísticas de Hibernate a cero y sin nada en las cachés, para contar las sentencias de una sola operación
+  static Statistics estadisticasLimpias() {
+    HibernateUtil.getSessionFactory().getCache().evictAllRegions();
+    Statistics estadisticas = HibernateUtil.getSessionFactory().getStatistics();
+    estadisticas.clear();
+    return estadisticas;
+  }
+}
@@ -0,0 +1,118 @@
+package com.dam.gestion;
+
+import com.dam.gestion.GestionBiblioteca.ResultadoCambioEstado;
+import com.dam.gestion.GestionBiblioteca.ResultadoOperacion;
+import com.dam.gestion.MotorPrestamos.ResultadoPrestamo;
+import com.dam.modelo.Autor;
+import com.dam.modelo.Ejemplar.EstadoEjemplar;
+import com.dam.modelo.Libro;
+import com.dam.util.HibernateUtil;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Contadores de ejemplares por estado en Libro: cada escritura los mueve con UPDATE relativos (x = x + n) y la
+// opción 23 recuenta los que no cuadran con la tabla de ejemplares
+class ContadoresEjemplaresTest {
+  private final GestionBiblioteca gestion = new GestionBiblioteca();
+  private final MotorPrestamos motor = new MotorPrestamos();
+
+  @AfterAll
+  static void cerrar() {
+    HibernateUtil.shutdown();
+  }
+
+  @Test
+  void cadaEscrituraMueveLosContadoresDeSuLibro() {
+    Autor autor = CatalogoPrueba.autor("Cont", 1, 4);
+    assertEquals(ResultadoOperacion.REALIZADO, gestion.crearAutorConLibros(autor));
+    Integer idLibro = autor.getLibros().get(0).getIdLibro();
+    // Disponibles, prestados, en reparación y de baja
+    assertArrayEquals(new int[] {4, 0, 0, 0}, contadores(idLibro));
+
+    assertEquals(ResultadoOperacion.REALIZADO, gestion.agregarEjemplarALibroExistente("Cont-0", "Cont-0-4"));
+    assertArrayEquals(new int[] {5, 0, 0, 0}, contadores(idLibro));
+
+    assertEquals(ResultadoPrestamo.REALIZADO, motor.prestar("Cont-0-0"));
+    assertArrayEquals(new int[] {4, 1, 0, 0}, contadores(idLibro));
+
+    assertEquals(ResultadoOperacion.REALIZADO, gestion.actualizarEstadoEjemplar("Cont-0-1", "REPARACION"));
+    assertArrayEquals(new int[] {3, 1, 1, 0}, contadores(idLibro));
+
+    Map<String, ResultadoCambioEstado> lote = gestion.actualizarEstadoEjemplares(List.of("Cont-0-2", "Cont-0-3"), EstadoEjemplar.BAJA);
+    assertEquals(Map.of("Cont-0-2", ResultadoCambioEstado.ACTUALIZADO, "Cont-0-3", ResultadoCambioEstado.ACTUALIZADO), lote);
+    assertArrayEquals(new int[] {1, 1, 1, 2}, contadores(idLibro));
+
+    assertEquals(ResultadoPrestamo.REALIZADO, motor.devolver("Cont-0-0"));
+    assertEquals(ResultadoOperacion.REALIZADO, gestion.eliminarEjemplar("Cont-0-4"));
+    assertArrayEquals(new int[] {1, 0, 1, 2}, contadores(idLibro));
+
+    try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+      assertTrue(ContadoresEjemplares.buscarDescuadrados(session).isEmpty());
+    }
+  }
+
+  @Test
+  void laReparacionRecuentaSoloLosLibrosDescuadrados() {
+    Autor autor = CatalogoPrueba.autor("Rep", 2, 3);
+    assertEquals(ResultadoOperacion.REALIZADO, gestion.crearAutorConLibros(autor));
+    Integer descuadrado = autor.getLibros().get(0).getIdLibro();
+    Integer correcto = autor.getLibros().get(1).getIdLibro();
+    ejecutarSql("UPDATE libros SET ejemplares_disponibles = 100, ejemplares_baja = 7 WHERE id_libro = " + descuadrado);
+
+    // El préstamo suma y resta sobre lo que hay en la fila, no recuenta: el descuadre sigue
+    assertEquals(ResultadoPrestamo.REALIZADO, motor.prestar("Rep-0-0"));
+    assertArrayEquals(new int[] {99, 1, 0, 7}, contadores(descuadrado));
+    // Deja en la caché de segundo nivel la copia descuadrada
+    assertEquals(99, cargar(descuadrado).getEjemplaresDisponibles());
+
+    assertEquals(1, gestion.repararContadoresEjemplares());
+    assertArrayEquals(new int[] {2, 1, 0, 0}, contadores(descuadrado));
+    assertArrayEquals(new int[] {3, 0, 0, 0}, contadores(correcto));
+    // La copia en caché del libro reparado se ha invalidado
+    assertEquals(2, cargar(descuadrado).getEjemplaresDisponibles());
+    assertEquals(0, cargar(descuadrado).getEjemplaresBaja());
+
+    assertEquals(0, gestion.repararContadoresEjemplares());
+  }
+
+  // Contadores de la fila en la BD (la consulta no pasa por la caché de segundo nivel)
+  private static int[] contadores(Integer idLibro) {
+    try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+      Object[] fila = session.createQuery(
+          "SELECT l.ejemplaresDisponibles, l.ejemplaresPrestados, l.ejemplaresReparacion, l.ejemplaresBaja "
+            + "FROM Libro l WHERE l.idLibro = :id", Object[].class)
+        .setParameter("id", idLibro)
+        .uniqueResult();
+      int[] valores = new int[fila.length];
+      for (int i = 0; i < fila.length; i++) {
+        valores[i] = (Integer) fila[i];
+      }
+      return valores;
+    }
+  }
+
+  private static Libro cargar(Integer idLibro) {
+    try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+      return session.get(Libro.class, idLibro);
+    }
+  }
+
+  private static void ejecutarSql(String sql) {
+    try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+      Transaction transaction = session.beginTransaction();
+      // Con un espacio de consulta propio Hibernate no vacía las cachés, como pasaría con un cambio hecho por fuera
+      session.createNativeQuery(sql).addSynchronizedQuerySpace("prueba").executeUpdate();
+      transaction.commit();
+    }
+  }
+}
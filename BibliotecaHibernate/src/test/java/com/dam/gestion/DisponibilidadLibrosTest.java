@@ -0,0 +1,141 @@
+package com.dam.gestion;
+
+import com.dam.dto.DisponibilidadLibro;
+import com.dam.gestion.GestionBiblioteca.ResultadoOperacion;
+import com.dam.gestion.MotorPrestamos.ResultadoPrestamo;
+import com.dam.modelo.Autor;
+import com.dam.modelo.Ejemplar.EstadoEjemplar;
+import com.dam.util.DisponibilidadLibros;
+import com.dam.util.HibernateUtil;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Mapa en memoria de ejemplares por estado de cada libro: tras cada escritura (por entidades, HQL masivo o
+// importación) tiene los mismos valores que los contadores de la tabla de libros
+class DisponibilidadLibrosTest {
+  private final GestionBiblioteca gestion = new GestionBiblioteca();
+  private final MotorPrestamos motor = new MotorPrestamos();
+  private final ConsultasBiblioteca consultas = new ConsultasBiblioteca();
+
+  @TempDir
+  Path directorio;
+
+  @AfterAll
+  static void cerrar() {
+    HibernateUtil.shutdown();
+  }
+
+  @Test
+  void laMemoriaCoincideConLaBDTrasCadaEscritura() throws IOException {
+    Autor autor = CatalogoPrueba.autor("Disp", 2, 3);
+    assertEquals(ResultadoOperacion.REALIZADO, gestion.crearAutorConLibros(autor));
+    Integer idLibro = autor.getLibros().get(0).getIdLibro();
+    comprobarIgualALaBD();
+
+    assertEquals(ResultadoOperacion.REALIZADO, gestion.agregarEjemplarALibroExistente("Disp-0", "Disp-0-3"));
+    comprobarIgualALaBD();
+
+    assertEquals(ResultadoPrestamo.REALIZADO, motor.prestar("Disp-0-0"));
+    comprobarIgualALaBD();
+    assertEquals(ResultadoPrestamo.REALIZADO, motor.devolver("Disp-0-0"));
+    comprobarIgualALaBD();
+
+    assertEquals(ResultadoOperacion.REALIZADO, gestion.actualizarEstadoEjemplar("Disp-0-1", "REPARACION"));
+    comprobarIgualALaBD();
+
+    gestion.actualizarEstadoEjemplares(List.of("Disp-0-2", "Disp-1-0", "Disp-1-1"), EstadoEjemplar.BAJA);
+    comprobarIgualALaBD();
+    assertArrayEquals(new int[] {2, 0, 1, 1}, HibernateUtil.getDisponibilidadLibros().getEjemplaresPorEstado(idLibro));
+
+    assertEquals(ResultadoOperacion.REALIZADO, gestion.eliminarEjemplar("Disp-0-3"));
+    comprobarIgualALaBD();
+
+    Integer otroLibro = autor.getLibros().get(1).getIdLibro();
+    assertEquals(ResultadoOperacion.REALIZADO, gestion.eliminarLibro(otroLibro));
+    assertFalse(HibernateUtil.getDisponibilidadLibros().contiene(otroLibro));
+    comprobarIgualALaBD();
+
+    Path fichero = Files.write(directorio.resolve("catalogo.jsonl"), List.of(
+      "{\"tipo\": \"AUTOR\", \"nombre\": \"Importado\", \"apellidos\": \"Jsonl\"}",
+      "{\"tipo\": \"LIBRO\", \"titulo\": \"Importado\", \"isbn\": \"IMP-1\", \"numeroPaginas\": 10}",
+      "{\"tipo\": \"EJEMPLAR\", \"codigoEjemplar\": \"IMP-1-A\", \"estado\": \"DISPONIBLE\", \"ubicacion\": \"Sala\"}",
+      "{\"tipo\": \"EJEMPLAR\", \"codigoEjemplar\": \"IMP-1-B\", \"estado\": \"PRESTADO\", \"ubicacion\": \"Sala\"}"), StandardCharsets.UTF_8);
+    new ImportadorCatalogo().importar(fichero);
+    comprobarIgualALaBD();
+
+    assertEquals(ResultadoOperacion.REALIZADO, gestion.eliminarAutor(autor.getIdAutor()));
+    assertFalse(HibernateUtil.getDisponibilidadLibros().contiene(idLibro));
+    comprobarIgualALaBD();
+  }
+
+  @Test
+  void laReparacionDeContadoresRecargaLaMemoria() {
+    Autor autor = CatalogoPrueba.autor("Recarga", 1, 2);
+    assertEquals(ResultadoOperacion.REALIZADO, gestion.crearAutorConLibros(autor));
+    Integer idLibro = autor.getLibros().get(0).getIdLibro();
+
+    try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+      Transaction transaction = session.beginTransaction();
+      session.createNativeQuery("UPDATE ejemplares SET estado = 'REPARACION' WHERE codigo_ejemplar = 'Recarga-0-0'")
+        .addSynchronizedQuerySpace("prueba").executeUpdate();
+      transaction.commit();
+    }
+    assertEquals(1, gestion.repararContadoresEjemplares());
+
+    assertArrayEquals(new int[] {1, 0, 1, 0}, HibernateUtil.getDisponibilidadLibros().getEjemplaresPorEstado(idLibro));
+    comprobarIgualALaBD();
+  }
+
+  @Test
+  void laDisponibilidadSeRespondeDesdeMemoriaSinSql() {
+    Autor autor = CatalogoPrueba.autor("Memoria", 1, 2);
+    assertEquals(ResultadoOperacion.REALIZADO, gestion.crearAutorConLibros(autor));
+    Integer idLibro = autor.getLibros().get(0).getIdLibro();
+    assertEquals(ResultadoPrestamo.REALIZADO, motor.prestar("Memoria-0-1"));
+
+    Statistics estadisticas = CatalogoPrueba.estadisticasLimpias();
+    Optional<DisponibilidadLibro> disponibilidad = consultas.consultarDisponibilidad(idLibro);
+
+    assertEquals(0, estadisticas.getPrepareStatementCount());
+    assertTrue(disponibilidad.isPresent());
+    assertEquals("Título Memoria 0", disponibilidad.get().titulo());
+    assertEquals(1, disponibilidad.get().disponibles());
+    assertEquals(1, disponibilidad.get().prestados());
+    // Un id que no está en memoria va a la BD y no encuentra nada
+    assertEquals(Optional.empty(), consultas.consultarDisponibilidad(Integer.MAX_VALUE));
+  }
+
+  // Cada libro de la tabla está en memoria con sus cuatro contadores, y no hay más libros en memoria que en la tabla
+  private static void comprobarIgualALaBD() {
+    DisponibilidadLibros memoria = HibernateUtil.getDisponibilidadLibros();
+    try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+      List<Object[]> filas = session.createQuery(
+          "SELECT l.idLibro, l.ejemplaresDisponibles, l.ejemplaresPrestados, l.ejemplaresReparacion, l.ejemplaresBaja "
+            + "FROM Libro l", Object[].class)
+        .list();
+      for (Object[] fila : filas) {
+        Integer idLibro = (Integer) fila[0];
+        int[] enTabla = {(Integer) fila[1], (Integer) fila[2], (Integer) fila[3], (Integer) fila[4]};
+        assertArrayEquals(enTabla, memoria.getEjemplaresPorEstado(idLibro), "Libro " + idLibro);
+      }
+      assertEquals(filas.size(), memoria.getTotalLibros());
+    }
+  }
+}
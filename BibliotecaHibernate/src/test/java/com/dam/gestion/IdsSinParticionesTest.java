@@ -0,0 +1,49 @@
+package com.dam.gestion;
+
+import com.dam.modelo.Autor;
+import com.dam.modelo.Libro;
+import com.dam.util.HibernateUtil;
+import com.dam.util.Particiones;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Sin particiones los ids no tienen el límite de los bits locales: una base de datos con ids por encima sigue igual
+class IdsSinParticionesTest {
+  private static final int PRIMER_ID = (int) Particiones.MAXIMO_ID_LOCAL + 1000;
+
+  @AfterAll
+  static void cerrar() {
+    HibernateUtil.shutdown();
+  }
+
+  @Test
+  void losIdsPorEncimaDeLosBitsLocalesSonDeLaParticionPrincipal() {
+    try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+      Transaction transaction = session.beginTransaction();
+      session.createNativeQuery("DELETE FROM secuencias_id").executeUpdate();
+      for (String entidad : new String[] {"autores", "libros", "ejemplares"}) {
+        session.createNativeQuery("INSERT INTO secuencias_id (entidad, siguiente_valor) VALUES (:entidad, :valor)")
+          .setParameter("entidad", entidad)
+          .setParameter("valor", PRIMER_ID)
+          .executeUpdate();
+      }
+      transaction.commit();
+    }
+
+    Autor autor = CatalogoPrueba.autor("Grande", 1, 1);
+    new GestionBiblioteca().crearAutorConLibros(autor);
+    Libro libro = autor.getLibros().get(0);
+
+    assertTrue(autor.getIdAutor() >= PRIMER_ID);
+    assertTrue(libro.getIdLibro() >= PRIMER_ID);
+    assertEquals(0, HibernateUtil.getParticiones().particionDeId(libro.getIdLibro()));
+    assertEquals("Grande-0", new ConsultasBiblioteca().buscarLibroPorId(libro.getIdLibro()).orElseThrow().isbn());
+    assertEquals(MotorPrestamos.ResultadoPrestamo.REALIZADO, new MotorPrestamos().prestar("Grande-0-0"));
+  }
+}
@@ -0,0 +1,78 @@
+package com.dam.gestion;
+
+import com.dam.gestion.ImportadorCatalogo.ResultadoImportacion;
+import com.dam.modelo.Libro;
+import com.dam.util.HibernateUtil;
+
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Importación en formato JSONL: mismos registros que el de texto, con los campos por nombre
+class ImportadorCatalogoTest {
+
+  @TempDir
+  Path directorio;
+
+  @AfterAll
+  static void cerrar() {
+    HibernateUtil.shutdown();
+  }
+
+  @Test
+  void importaUnFicheroJsonl() throws IOException {
+    Path fichero = escribir("catalogo.jsonl",
+      "{\"tipo\": \"AUTOR\", \"nombre\": \"Miguel\", \"apellidos\": \"de Cervantes\", \"nacionalidad\": \"Española\", \"fechaNacimiento\": \"29/09/1547\"}",
+      "",
+      "{\"tipo\": \"LIBRO\", \"titulo\": \"Don Quijote\", \"isbn\": \"JSON-1\", \"numeroPaginas\": 1376}",
+      "{\"tipo\": \"EJEMPLAR\", \"codigoEjemplar\": \"JSON-1-A\", \"estado\": \"DISPONIBLE\", \"ubicacion\": \"Sala\"}",
+      "{\"tipo\": \"ejemplar\", \"codigoEjemplar\": \"JSON-1-B\", \"estado\": \"prestado\", \"ubicacion\": null}");
+
+    ResultadoImportacion resultado = new ImportadorCatalogo().importar(fichero);
+    assertEquals(1, resultado.autores());
+    assertEquals(1, resultado.libros());
+    assertEquals(2, resultado.ejemplares());
+
+    try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+      Libro libro = session.bySimpleNaturalId(Libro.class).load("JSON-1");
+      assertEquals("Don Quijote", libro.getTitulo());
+      assertEquals(1376, libro.getNumeroPaginas());
+      assertNull(libro.getFechaPublicacion());
+      assertEquals("de Cervantes", libro.getAutor().getApellidos());
+      assertEquals(1, libro.getEjemplaresDisponibles());
+      assertEquals(1, libro.getEjemplaresPrestados());
+    }
+    assertEquals(MotorPrestamos.ResultadoPrestamo.REALIZADO, new MotorPrestamos().prestar("JSON-1-A"));
+  }
+
+  @Test
+  void unaLineaErroneaIndicaSuNumeroYDeshaceLoPendiente() throws IOException {
+    Path fichero = escribir("erroneo.jsonl",
+      "{\"tipo\": \"AUTOR\", \"nombre\": \"Error\", \"apellidos\": \"Pendiente\"}",
+      "{\"tipo\": \"LIBRO\", \"titulo\": \"Roto\", \"isbn\": \"JSON-2\", \"numeroPaginas\": \"muchas\"}");
+
+    IllegalStateException error = assertThrows(IllegalStateException.class, () -> new ImportadorCatalogo().importar(fichero));
+    assertTrue(error.getMessage().contains("línea 2"), error.getMessage());
+    assertTrue(error.getMessage().contains("número no válido"), error.getMessage());
+
+    try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+      assertEquals(0L, session.createQuery("SELECT COUNT(a) FROM Autor a WHERE a.apellidos = 'Pendiente'", Long.class).uniqueResult());
+    }
+  }
+
+  private Path escribir(String nombre, String... lineas) throws IOException {
+    return Files.write(directorio.resolve(nombre), List.of(lineas), StandardCharsets.UTF_8);
+  }
+}
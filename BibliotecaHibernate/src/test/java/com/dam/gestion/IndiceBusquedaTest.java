@@ -0,0 +1,93 @@
+package com.dam.gestion;
+
+import com.dam.gestion.GestionBiblioteca.ResultadoOperacion;
+import com.dam.modelo.Autor;
+import com.dam.modelo.Libro;
+import com.dam.util.HibernateUtil;
+import com.dam.util.IndiceBusqueda.ResultadoBusqueda;
+import com.dam.util.IndiceBusqueda.TipoDocumento;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Opción 20: el índice en memoria sigue a las altas, las modificaciones y los borrados (también los masivos de HQL)
+// sin reconstruirse
+class IndiceBusquedaTest {
+  private static final int LIMITE = 50;
+
+  private final ConsultasBiblioteca consultas = new ConsultasBiblioteca();
+  private final GestionBiblioteca gestion = new GestionBiblioteca();
+
+  @AfterAll
+  static void cerrar() {
+    HibernateUtil.shutdown();
+  }
+
+  @Test
+  void lasAltasYModificacionesSeVenEnLaBusqueda() {
+    Autor autor = CatalogoPrueba.autor("Zarzuela", 2, 1);
+    assertEquals(ResultadoOperacion.REALIZADO, gestion.crearAutorConLibros(autor));
+    Libro primero = autor.getLibros().get(0);
+    Libro segundo = autor.getLibros().get(1);
+
+    assertEquals(Set.of(autor.getIdAutor()), ids(buscar("zarzuela"), TipoDocumento.AUTOR));
+    assertEquals(Set.of(primero.getIdLibro(), segundo.getIdLibro()), ids(buscar("zarzuela"), TipoDocumento.LIBRO));
+
+    assertEquals(ResultadoOperacion.REALIZADO, gestion.actualizarDatosLibro(primero.getIdLibro(), "Cantar de Mio Cid", null));
+
+    assertEquals(Set.of(segundo.getIdLibro()), ids(buscar("zarzuela"), TipoDocumento.LIBRO));
+    // Sin tildes ni mayúsculas, y por prefijo
+    List<ResultadoBusqueda> cid = buscar("CANT* mío");
+    assertEquals(1, cid.size());
+    assertEquals(primero.getIdLibro(), cid.get(0).id());
+    assertEquals("Cantar de Mio Cid", cid.get(0).texto());
+    assertEquals(Optional.of("Cantar de Mio Cid"), HibernateUtil.getIndiceBusqueda().getTituloLibro(primero.getIdLibro()));
+  }
+
+  @Test
+  void unAltaQueFallaNoEntraEnElIndice() {
+    assertEquals(ResultadoOperacion.REALIZADO, gestion.crearAutorConLibros(CatalogoPrueba.autor("Original", 1, 0)));
+
+    // Mismo ISBN ("Original-0") con otro autor: la transacción se deshace entera
+    Autor repetido = CatalogoPrueba.autor("Original", 1, 0);
+    repetido.setNombre("Fallido");
+    assertNotEquals(ResultadoOperacion.REALIZADO, gestion.crearAutorConLibros(repetido));
+
+    assertTrue(buscar("fallido").isEmpty());
+    assertEquals(1, ids(buscar("original"), TipoDocumento.LIBRO).size());
+  }
+
+  @Test
+  void losBorradosMasivosSalenDelIndice() {
+    Autor autor = CatalogoPrueba.autor("Borrable", 3, 2);
+    assertEquals(ResultadoOperacion.REALIZADO, gestion.crearAutorConLibros(autor));
+    Integer idLibro = autor.getLibros().get(0).getIdLibro();
+    int documentos = HibernateUtil.getIndiceBusqueda().getTotalDocumentos();
+
+    assertEquals(ResultadoOperacion.REALIZADO, gestion.eliminarLibro(idLibro));
+    assertEquals(2, ids(buscar("borrable"), TipoDocumento.LIBRO).size());
+    assertEquals(Optional.empty(), HibernateUtil.getIndiceBusqueda().getTituloLibro(idLibro));
+    assertEquals(documentos - 1, HibernateUtil.getIndiceBusqueda().getTotalDocumentos());
+
+    assertEquals(ResultadoOperacion.REALIZADO, gestion.eliminarAutor(autor.getIdAutor()));
+    assertTrue(buscar("borrable").isEmpty());
+    assertEquals(documentos - 4, HibernateUtil.getIndiceBusqueda().getTotalDocumentos());
+  }
+
+  private List<ResultadoBusqueda> buscar(String consulta) {
+    return consultas.buscarEnCatalogo(consulta, LIMITE);
+  }
+
+  private static Set<Integer> ids(List<ResultadoBusqueda> resultados, TipoDocumento tipo) {
+    return resultados.stream().filter(r -> r.tipo() == tipo).map(ResultadoBusqueda::id).collect(Collectors.toSet());
+  }
+}
@@ -0,0 +1,74 @@
+package com.dam.gestion;
+
+import com.dam.dto.AutorResumen;
+import com.dam.dto.Pagina;
+import com.dam.util.HibernateUtil;
+
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// Opción 3: el listado de autores cuesta una SELECT por página, sea cual sea el número de autores y de libros
+class ListadoAutoresTest {
+  private static final int AUTORES = 12;
+
+  private final ConsultasBiblioteca consultas = new ConsultasBiblioteca();
+
+  @BeforeAll
+  static void crearCatalogo() {
+    GestionBiblioteca gestion = new GestionBiblioteca();
+    for (int i = 0; i < AUTORES; i++) {
+      // El autor i tiene i libros: el recuento no puede salir de cargar la colección
+      gestion.crearAutorConLibros(CatalogoPrueba.autor("A" + i, i, 1));
+    }
+  }
+
+  @AfterAll
+  static void cerrar() {
+    HibernateUtil.shutdown();
+  }
+
+  @Test
+  void unaPaginaEsUnaSolaSentenciaSinCargarEntidades() {
+    Statistics estadisticas = CatalogoPrueba.estadisticasLimpias();
+
+    Pagina<AutorResumen> pagina = consultas.listarAutoresResumen(null, ConsultasBiblioteca.TAMANO_PAGINA_AUTORES);
+
+    assertEquals(AUTORES, pagina.elementos().size());
+    assertNull(pagina.siguiente());
+    assertEquals(1, estadisticas.getPrepareStatementCount());
+    assertEquals(0, estadisticas.getEntityLoadCount());
+    assertEquals(0, estadisticas.getCollectionLoadCount());
+    for (int i = 0; i < AUTORES; i++) {
+      assertEquals(i, pagina.elementos().get(i).numeroLibros());
+    }
+  }
+
+  @Test
+  void cadaPaginaCuestaUnaSentencia() {
+    Statistics estadisticas = CatalogoPrueba.estadisticasLimpias();
+
+    List<AutorResumen> autores = new ArrayList<>();
+    int paginas = 0;
+    String token = null;
+    do {
+      Pagina<AutorResumen> pagina = consultas.listarAutoresResumen(token, 5);
+      autores.addAll(pagina.elementos());
+      token = pagina.siguiente();
+      paginas++;
+    } while (token != null);
+
+    assertEquals(AUTORES, autores.size());
+    assertEquals(3, paginas);
+    assertEquals(paginas, estadisticas.getPrepareStatementCount());
+    assertEquals(0, estadisticas.getEntityLoadCount());
+    assertEquals(0, estadisticas.getCollectionLoadCount());
+  }
+}
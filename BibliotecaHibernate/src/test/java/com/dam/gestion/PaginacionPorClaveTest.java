@@ -0,0 +1,109 @@
+package com.dam.gestion;
+
+import com.dam.dto.EjemplarResumen;
+import com.dam.dto.LibroDetalle;
+import com.dam.dto.Pagina;
+import com.dam.modelo.Autor;
+import com.dam.modelo.Ejemplar.EstadoEjemplar;
+import com.dam.util.HibernateUtil;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Paginación por clave de los listados: el token guarda el último id de la página, así las altas y bajas entre
+// una página y la siguiente no hacen que se repitan ni se salten filas (como pasaría con OFFSET)
+class PaginacionPorClaveTest {
+  private static final int LIBROS = 10;
+
+  private final ConsultasBiblioteca consultas = new ConsultasBiblioteca();
+  private final GestionBiblioteca gestion = new GestionBiblioteca();
+
+  @BeforeAll
+  static void crearCatalogo() {
+    new GestionBiblioteca().crearAutorConLibros(CatalogoPrueba.autor("K", LIBROS, 1));
+  }
+
+  @AfterAll
+  static void cerrar() {
+    HibernateUtil.shutdown();
+  }
+
+  @Test
+  void lasPaginasRecorrenElListadoEnOrdenDeIdSinRepetir() {
+    List<Integer> ids = new ArrayList<>();
+    String token = null;
+    int paginas = 0;
+    do {
+      Pagina<LibroDetalle> pagina = consultas.listarLibros(token, 4);
+      pagina.elementos().forEach(libro -> ids.add(libro.idLibro()));
+      token = pagina.siguiente();
+      paginas++;
+    } while (token != null);
+
+    assertEquals(3, paginas);
+    assertEquals(ids.stream().distinct().sorted().toList(), ids);
+    assertTrue(ids.size() >= LIBROS);
+  }
+
+  @Test
+  void lasAltasYBajasEntrePaginasNoRepitenNiSaltanFilas() {
+    Pagina<LibroDetalle> primera = consultas.listarLibros(null, 3);
+    int ultimo = primera.elementos().get(2).idLibro();
+
+    // Baja de una fila ya leída y alta al final: con OFFSET la segunda página se saltaría una fila
+    assertEquals(GestionBiblioteca.ResultadoOperacion.REALIZADO, gestion.eliminarLibro(primera.elementos().get(0).idLibro()));
+    Autor nuevo = CatalogoPrueba.autor("K2", 1, 0);
+    assertEquals(GestionBiblioteca.ResultadoOperacion.REALIZADO, gestion.crearAutorConLibros(nuevo));
+    int idNuevo = nuevo.getLibros().get(0).getIdLibro();
+
+    List<Integer> resto = new ArrayList<>();
+    String token = primera.siguiente();
+    while (token != null) {
+      Pagina<LibroDetalle> pagina = consultas.listarLibros(token, 3);
+      pagina.elementos().forEach(libro -> resto.add(libro.idLibro()));
+      token = pagina.siguiente();
+    }
+
+    assertTrue(resto.get(0) > ultimo);
+    assertEquals(idNuevo, resto.get(resto.size() - 1));
+    // Todas las filas posteriores a la primera página que siguen existiendo, sin huecos
+    List<Integer> esperados = new ArrayList<>();
+    consultas.listarLibros(null, ConsultasBiblioteca.TAMANO_PAGINA_MAXIMO).elementos().stream()
+      .map(LibroDetalle::idLibro).filter(id -> id > ultimo).forEach(esperados::add);
+    assertEquals(esperados, resto);
+  }
+
+  @Test
+  void elTokenSoloValeParaSuListadoYSuFiltro() {
+    String deLibros = consultas.listarLibros(null, 1).siguiente();
+    String deDisponibles = consultas.listarEjemplares(EstadoEjemplar.DISPONIBLE, null, 1).siguiente();
+
+    assertThrows(IllegalArgumentException.class, () -> consultas.listarAutoresResumen(deLibros, 1));
+    assertThrows(IllegalArgumentException.class, () -> consultas.listarEjemplares(EstadoEjemplar.PRESTADO, deDisponibles, 1));
+    assertThrows(IllegalArgumentException.class, () -> consultas.listarLibros("no-es-un-token", 1));
+
+    Pagina<EjemplarResumen> segunda = consultas.listarEjemplares(EstadoEjemplar.DISPONIBLE, deDisponibles, 1);
+    assertEquals(1, segunda.elementos().size());
+  }
+
+  @Test
+  void elTamanoDePaginaSeValida() {
+    assertThrows(IllegalArgumentException.class, () -> consultas.listarLibros(null, 0));
+    assertThrows(IllegalArgumentException.class, () -> consultas.listarLibros(null, ConsultasBiblioteca.TAMANO_PAGINA_MAXIMO + 1));
+  }
+
+  @Test
+  void laUltimaPaginaNoTieneToken() {
+    Pagina<LibroDetalle> todo = consultas.listarLibros(null, ConsultasBiblioteca.TAMANO_PAGINA_MAXIMO);
+    assertNull(todo.siguiente());
+  }
+}
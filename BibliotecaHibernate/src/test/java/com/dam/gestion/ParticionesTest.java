@@ -0,0 +1,187 @@
+package com.dam.gestion;
+
+import com.dam.dto.AutorResumen;
+import com.dam.dto.Pagina;
+import com.dam.gestion.GestionBiblioteca.ResultadoCambioEstado;
+import com.dam.gestion.MotorPrestamos.ResultadoPrestamo;
+import com.dam.modelo.Autor;
+import com.dam.modelo.Ejemplar;
+import com.dam.modelo.Ejemplar.EstadoEjemplar;
+import com.dam.modelo.Libro;
+import com.dam.util.HibernateUtil;
+import com.dam.util.Particiones;
+
+import org.hibernate.Session;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Catálogo repartido entre la base de datos de pruebas (partición 0) y otra H2 en memoria (partición 1)
+class ParticionesTest {
+  private static final List<Autor> autores = new ArrayList<>();
+
+  private final ConsultasBiblioteca consultas = new ConsultasBiblioteca();
+  private final GestionBiblioteca gestion = new GestionBiblioteca();
+  private final MotorPrestamos motor = new MotorPrestamos();
+
+  @BeforeAll
+  static void crearCatalogo() {
+    // Cada clase de prueba tiene su JVM: la propiedad solo afecta a esta
+    System.setProperty(HibernateUtil.PROPIEDAD_PARTICIONES, "jdbc:h2:mem:particion1;MODE=MySQL;DB_CLOSE_DELAY=-1");
+    GestionBiblioteca gestion = new GestionBiblioteca();
+    for (int i = 0; i < 4; i++) {
+      Autor autor = CatalogoPrueba.autor("P" + i, 2, 2);
+      gestion.crearAutorConLibros(autor);
+      autores.add(autor);
+    }
+  }
+
+  @AfterAll
+  static void cerrar() {
+    HibernateUtil.shutdown();
+  }
+
+  @Test
+  void losAutoresSeRepartenPorTurnosYSusIdsLlevanLaParticion() {
+    Particiones particiones = HibernateUtil.getParticiones();
+    assertEquals(2, particiones.getNumero());
+    for (int i = 0; i < autores.size(); i++) {
+      Autor autor = autores.get(i);
+      int particion = particiones.particionDeId(autor.getIdAutor());
+      assertEquals(i % 2, particion, autor.getNombre());
+      for (Libro libro : autor.getLibros()) {
+        assertEquals(particion, particiones.particionDeId(libro.getIdLibro()));
+        assertEquals(particion, particiones.particionDeId(libro.getEjemplares().get(0).getIdEjemplar()));
+        assertTrue(consultas.buscarLibroPorId(libro.getIdLibro()).isPresent(), libro.getIsbn());
+      }
+    }
+  }
+
+  @Test
+  void elListadoPaginadoRecorreLasDosParticionesEnOrdenDeId() {
+    List<Integer> ids = new ArrayList<>();
+    String siguiente = null;
+    do {
+      Pagina<AutorResumen> pagina = consultas.listarAutoresResumen(siguiente, 3);
+      pagina.elementos().forEach(autor -> ids.add(autor.idAutor()));
+      siguiente = pagina.siguiente();
+    } while (siguiente != null);
+
+    List<Integer> esperados = new ArrayList<>();
+    autores.forEach(autor -> esperados.add(autor.getIdAutor()));
+    esperados.sort(null);
+    assertEquals(esperados, ids);
+  }
+
+  @Test
+  void lasOperacionesPorIsbnYCodigoVanASuParticion() {
+    Particiones particiones = HibernateUtil.getParticiones();
+    // P1 está en la partición 1: el ejemplar nuevo va con su libro
+    gestion.agregarEjemplarALibroExistente("P1-0", "P1-0-nuevo");
+    assertEquals(1, contar("SELECT COUNT(e) FROM Ejemplar e WHERE e.codigoEjemplar = :clave", "P1-0-nuevo", 1));
+    assertEquals(particiones.get(1), GestionBiblioteca.particionDeEjemplar("P1-0-nuevo"));
+
+    assertEquals(ResultadoPrestamo.REALIZADO, motor.prestar("P1-0-nuevo"));
+    assertEquals(ResultadoPrestamo.REALIZADO, motor.devolver("P1-0-nuevo"));
+    assertEquals(ResultadoPrestamo.REALIZADO, motor.prestar("P2-1-1"));
+    assertEquals(ResultadoPrestamo.REALIZADO, motor.devolver("P2-1-1"));
+    assertEquals(ResultadoPrestamo.NO_ENCONTRADO, motor.prestar("no-existe"));
+  }
+
+  @Test
+  void unaClaveDeOtraParticionSeRechaza() {
+    // P0-0 está en la partición 0 y el código P1-1-0 en la 1
+    gestion.agregarEjemplarALibroExistente("P0-0", "P1-1-0");
+    assertEquals(1, contarEnTodas("SELECT COUNT(e) FROM Ejemplar e WHERE e.codigoEjemplar = :clave", "P1-1-0"));
+    assertEquals(HibernateUtil.getParticiones().get(1), GestionBiblioteca.particionDeEjemplar("P1-1-0"));
+
+    // El autor nuevo va a una u otra partición según el turno: en las dos se rechaza (directorio o UNIQUE)
+    Autor repetido = CatalogoPrueba.autor("R", 1, 1);
+    repetido.getLibros().get(0).addEjemplar(new Ejemplar("P3-0-0", EstadoEjemplar.DISPONIBLE, "Sala"));
+    gestion.crearAutorConLibros(repetido);
+    assertEquals(0, contarEnTodas("SELECT COUNT(l) FROM Libro l WHERE l.isbn = :clave", "R-0"));
+    assertEquals(1, contarEnTodas("SELECT COUNT(e) FROM Ejemplar e WHERE e.codigoEjemplar = :clave", "P3-0-0"));
+
+    // El rechazo libera las claves reservadas: el mismo ISBN se puede crear después
+    Autor correcto = CatalogoPrueba.autor("R", 1, 1);
+    gestion.crearAutorConLibros(correcto);
+    assertEquals(1, contarEnTodas("SELECT COUNT(l) FROM Libro l WHERE l.isbn = :clave", "R-0"));
+    int particion = HibernateUtil.getParticiones().particionDeId(correcto.getIdAutor());
+    assertEquals(HibernateUtil.getParticiones().get(particion), GestionBiblioteca.particionDeLibro("R-0"));
+    assertEquals(ResultadoPrestamo.REALIZADO, motor.prestar("R-0-0"));
+
+    // El borrado masivo quita sus claves del directorio: ya no se encuentran y se pueden volver a crear
+    gestion.eliminarAutor(correcto.getIdAutor());
+    assertEquals(ResultadoPrestamo.NO_ENCONTRADO, motor.devolver("R-0-0"));
+    assertEquals(HibernateUtil.getParticiones().get(0), GestionBiblioteca.particionDeLibro("R-0"));
+    assertEquals(HibernateUtil.getParticiones().get(0), GestionBiblioteca.particionDeEjemplar("R-0-0"));
+    Autor otraVez = CatalogoPrueba.autor("R", 1, 1);
+    gestion.crearAutorConLibros(otraVez);
+    assertEquals(1, contarEnTodas("SELECT COUNT(l) FROM Libro l WHERE l.isbn = :clave", "R-0"));
+    assertEquals(ResultadoPrestamo.REALIZADO, motor.prestar("R-0-0"));
+    gestion.eliminarAutor(otraVez.getIdAutor());
+  }
+
+  @Test
+  void borrarUnLibroQuitaSusClavesDelDirectorio() {
+    // Se busca la partición 1, para que "no está en el directorio" (la principal) se distinga de "está en la suya"
+    Autor autor = CatalogoPrueba.autor("B", 2, 2);
+    gestion.crearAutorConLibros(autor);
+    if (HibernateUtil.getParticiones().particionDeId(autor.getIdAutor()) == 0) {
+      gestion.eliminarAutor(autor.getIdAutor());
+      autor = CatalogoPrueba.autor("B", 2, 2);
+      gestion.crearAutorConLibros(autor);
+    }
+    Libro libro = autor.getLibros().get(0);
+    int particion = HibernateUtil.getParticiones().particionDeId(libro.getIdLibro());
+    assertEquals(1, particion);
+    assertEquals(HibernateUtil.getParticiones().get(particion), GestionBiblioteca.particionDeEjemplar("B-0-1"));
+
+    gestion.eliminarLibro(libro.getIdLibro());
+    assertEquals(HibernateUtil.getParticiones().get(0), GestionBiblioteca.particionDeLibro("B-0"));
+    assertEquals(HibernateUtil.getParticiones().get(0), GestionBiblioteca.particionDeEjemplar("B-0-1"));
+    // El otro libro del autor sigue en su partición
+    assertEquals(HibernateUtil.getParticiones().get(particion), GestionBiblioteca.particionDeEjemplar("B-1-0"));
+    gestion.eliminarAutor(autor.getIdAutor());
+  }
+
+  @Test
+  void elCambioPorLotesSoloTocaLasParticionesDeSusCodigos() {
+    // P1 y P3 están en la partición 1; la principal no debe abrir ninguna transacción
+    Statistics principal = HibernateUtil.getParticiones().get(0).getStatistics();
+    principal.clear();
+    Map<String, ResultadoCambioEstado> resultados = gestion.actualizarEstadoEjemplares(
+      List.of("P1-1-1", "P3-1-1"), EstadoEjemplar.REPARACION);
+    assertEquals(Map.of("P1-1-1", ResultadoCambioEstado.ACTUALIZADO, "P3-1-1", ResultadoCambioEstado.ACTUALIZADO), resultados);
+    assertEquals(0, principal.getTransactionCount());
+
+    // Un código desconocido va a la principal, que responde "no encontrado"
+    resultados = gestion.actualizarEstadoEjemplares(List.of("P1-1-1", "P0-1-1", "no-existe"), EstadoEjemplar.DISPONIBLE);
+    assertEquals(ResultadoCambioEstado.ACTUALIZADO, resultados.get("P1-1-1"));
+    assertEquals(ResultadoCambioEstado.TRANSICION_INVALIDA, resultados.get("P0-1-1"));
+    assertEquals(ResultadoCambioEstado.NO_ENCONTRADO, resultados.get("no-existe"));
+    gestion.actualizarEstadoEjemplares(List.of("P3-1-1"), EstadoEjemplar.DISPONIBLE);
+  }
+
+  private static long contar(String hql, String clave, int particion) {
+    try (Session session = HibernateUtil.getParticiones().get(particion).openSession()) {
+      return session.createQuery(hql, Long.class).setParameter("clave", clave).uniqueResult();
+    }
+  }
+
+  private static long contarEnTodas(String hql, String clave) {
+    long total = 0;
+    for (int i = 0; i < HibernateUtil.getParticiones().getNumero(); i++) {
+      total += contar(hql, clave, i);
+    }
+    return total;
+  }
+}
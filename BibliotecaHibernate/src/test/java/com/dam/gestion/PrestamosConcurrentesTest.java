@@ -0,0 +1,153 @@
+package com.dam.gestion;
+
+import com.dam.gestion.MotorPrestamos.EstadisticasPrestamos;
+import com.dam.gestion.MotorPrestamos.ResultadoPrestamo;
+import com.dam.modelo.Autor;
+import com.dam.modelo.Ejemplar;
+import com.dam.modelo.Ejemplar.EstadoEjemplar;
+import com.dam.modelo.Libro;
+import com.dam.util.DisponibilidadLibros;
+import com.dam.util.HibernateUtil;
+
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Prueba de estrés de MotorPrestamos: muchos hilos prestan y devuelven a la vez unos pocos ejemplares. Ningún
+// ejemplar puede estar prestado a dos hilos a la vez, ningún préstamo ni devolución confirmados puede perderse ni
+// contarse dos veces, y los contadores de cada libro deben coincidir con sus ejemplares al terminar.
+class PrestamosConcurrentesTest {
+  private static final int LIBROS = 4;
+  private static final int EJEMPLARES_POR_LIBRO = 3;
+  // Más hilos que conexiones en el pool, para que haya espera y conflictos de versión
+  private static final int HILOS = 32;
+  private static final int PRESTAMOS_POR_HILO = 40;
+
+  private static final List<String> codigos = new ArrayList<>();
+
+  @BeforeAll
+  static void crearCatalogo() {
+    Autor autor = CatalogoPrueba.autor("Estres", LIBROS, EJEMPLARES_POR_LIBRO);
+    new GestionBiblioteca().crearAutorConLibros(autor);
+    for (Libro libro : autor.getLibros()) {
+      for (Ejemplar ejemplar : libro.getEjemplares()) {
+        codigos.add(ejemplar.getCodigoEjemplar());
+      }
+    }
+  }
+
+  @AfterAll
+  static void cerrar() {
+    HibernateUtil.shutdown();
+  }
+
+  @Test
+  void sinPrestamosDoblesNiPerdidos() throws Exception {
+    MotorPrestamos motor = new MotorPrestamos();
+    // Por ejemplar: hilos que lo tienen prestado ahora mismo, y préstamos y devoluciones confirmados
+    Map<String, AtomicInteger> enPrestamo = new HashMap<>();
+    Map<String, AtomicLong> prestamos = new HashMap<>();
+    Map<String, AtomicLong> devoluciones = new HashMap<>();
+    for (String codigo : codigos) {
+      enPrestamo.put(codigo, new AtomicInteger());
+      prestamos.put(codigo, new AtomicLong());
+      devoluciones.put(codigo, new AtomicLong());
+    }
+    AtomicLong doblesPrestamos = new AtomicLong();
+
+    long inicio = System.nanoTime();
+    ExecutorService ejecutor = Executors.newFixedThreadPool(HILOS);
+    List<Future<?>> tareas = new ArrayList<>();
+    for (int h = 0; h < HILOS; h++) {
+      tareas.add(ejecutor.submit(() -> {
+        for (int i = 0; i < PRESTAMOS_POR_HILO; i++) {
+          String codigo = codigos.get(ThreadLocalRandom.current().nextInt(codigos.size()));
+          if (motor.prestar(codigo) != ResultadoPrestamo.REALIZADO) {
+            continue;
+          }
+          prestamos.get(codigo).incrementAndGet();
+          // Mientras este hilo lo tiene prestado nadie más puede haberlo conseguido
+          if (enPrestamo.get(codigo).incrementAndGet() != 1) {
+            doblesPrestamos.incrementAndGet();
+          }
+          // Se retiene un momento para que otros hilos intenten prestarlo mientras tanto
+          Thread.sleep(1);
+          enPrestamo.get(codigo).decrementAndGet();
+          ResultadoPrestamo devolucion;
+          do {
+            devolucion = motor.devolver(codigo);
+          } while (devolucion == ResultadoPrestamo.CONFLICTO);
+          assertEquals(ResultadoPrestamo.REALIZADO, devolucion);
+          devoluciones.get(codigo).incrementAndGet();
+        }
+        return null;
+      }));
+    }
+    ejecutor.shutdown();
+    assertTrue(ejecutor.awaitTermination(2, TimeUnit.MINUTES), "La prueba no terminó a tiempo");
+    for (Future<?> tarea : tareas) {
+      tarea.get();
+    }
+    double segundos = (System.nanoTime() - inicio) / 1e9;
+
+    EstadisticasPrestamos estadisticas = motor.getEstadisticas();
+    System.out.printf("Préstamos y devoluciones: %d en %.1f s (%.0f ops/s), reintentos: %d, agotados: %d%n",
+      estadisticas.realizados(), segundos, estadisticas.realizados() / segundos, estadisticas.reintentos(), estadisticas.agotados());
+
+    assertEquals(0, doblesPrestamos.get(), "Dos hilos tuvieron prestado el mismo ejemplar a la vez");
+
+    long totalPrestamos = 0;
+    try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+      for (String codigo : codigos) {
+        // Estado y versión de la fila en la BD (no de la caché de segundo nivel)
+        Object[] fila = session.createQuery(
+            "SELECT e.estado, e.version FROM Ejemplar e WHERE e.codigoEjemplar = :codigo", Object[].class)
+          .setParameter("codigo", codigo)
+          .uniqueResult();
+        long confirmados = prestamos.get(codigo).get();
+        totalPrestamos += confirmados;
+        assertEquals(confirmados, devoluciones.get(codigo).get(), codigo);
+        assertEquals(EstadoEjemplar.DISPONIBLE, fila[0], codigo);
+        // Cada préstamo y cada devolución confirmados suben la versión exactamente una vez: ni se pierden ni se duplican
+        assertEquals(2 * confirmados, ((Integer) fila[1]).longValue(), codigo);
+      }
+      assertTrue(ContadoresEjemplares.buscarDescuadrados(session).isEmpty(), "Contadores de libros descuadrados");
+    }
+    assertTrue(totalPrestamos > 0);
+    assertEquals(2 * totalPrestamos, estadisticas.realizados());
+
+    DisponibilidadLibros disponibilidad = HibernateUtil.getDisponibilidadLibros();
+    try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+      for (Libro libro : session.createQuery("FROM Libro", Libro.class).list()) {
+        assertEquals(EJEMPLARES_POR_LIBRO, libro.getEjemplaresDisponibles());
+        assertEquals(0, libro.getEjemplaresPrestados());
+        assertEquals(EJEMPLARES_POR_LIBRO, disponibilidad.getEjemplares(libro.getIdLibro(), EstadoEjemplar.DISPONIBLE));
+        assertEquals(0, disponibilidad.getEjemplares(libro.getIdLibro(), EstadoEjemplar.PRESTADO));
+      }
+    }
+    assertEquals(0L, HibernateUtil.getEstadisticasBiblioteca().getTotalEjemplares(EstadoEjemplar.PRESTADO));
+
+    // Tras la contención, cada ejemplar se puede volver a prestar y devolver aunque la caché de segundo nivel se haya
+    // quedado con una versión anterior
+    for (String codigo : codigos) {
+      assertEquals(ResultadoPrestamo.REALIZADO, motor.prestar(codigo), codigo);
+      assertEquals(ResultadoPrestamo.REALIZADO, motor.devolver(codigo), codigo);
+    }
+  }
+}
@@ -0,0 +1,139 @@
+package com.dam.gestion;
+
+import com.dam.dto.AutorResumen;
+import com.dam.dto.LibroDetalle;
+import com.dam.dto.Pagina;
+import com.dam.metricas.MetricaOperacion;
+import com.dam.metricas.MetricasOperaciones;
+import com.dam.metricas.PresupuestoSentencias;
+import com.dam.metricas.PresupuestoSentenciasExcedidoException;
+import com.dam.util.HibernateUtil;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Regresión de N+1: las fichas de libro (planes de carga) y el listado de autores, con presupuesto de sentencias
+// en modo FALLAR; InspectorSentencias cuenta cada sentencia que prepara la operación
+class PresupuestoSentenciasTest {
+  private static final int AUTORES = 6;
+  private static final int LIBROS_POR_AUTOR = 3;
+  private static final int EJEMPLARES_POR_LIBRO = 4;
+
+  private static final List<Integer> idsLibros = new ArrayList<>();
+
+  private final ConsultasBiblioteca consultas = new ConsultasBiblioteca();
+
+  @BeforeAll
+  static void crearCatalogo() {
+    GestionBiblioteca gestion = new GestionBiblioteca();
+    for (int i = 0; i < AUTORES; i++) {
+      gestion.crearAutorConLibros(CatalogoPrueba.autor("P" + i, LIBROS_POR_AUTOR, EJEMPLARES_POR_LIBRO));
+    }
+    for (LibroDetalle libro : new ConsultasBiblioteca().listarLibros(null, ConsultasBiblioteca.TAMANO_PAGINA_MAXIMO).elementos()) {
+      idsLibros.add(libro.idLibro());
+    }
+  }
+
+  @AfterAll
+  static void cerrar() {
+    HibernateUtil.shutdown();
+  }
+
+  @BeforeEach
+  void presupuestos() {
+    PresupuestoSentencias.setModo(PresupuestoSentencias.Modo.FALLAR);
+    PresupuestoSentencias.definir("buscarLibroPorId", 1);
+    PresupuestoSentencias.definir("buscarLibroPorIdResumen", 1);
+    PresupuestoSentencias.definir("listarAutoresResumen", 1);
+    CatalogoPrueba.estadisticasLimpias();
+    for (MetricaOperacion metrica : MetricasOperaciones.todas()) {
+      metrica.reiniciar();
+    }
+  }
+
+  @AfterEach
+  void quitarPresupuestos() {
+    PresupuestoSentencias.eliminarTodos();
+    PresupuestoSentencias.setModo(PresupuestoSentencias.Modo.REGISTRAR);
+  }
+
+  @Test
+  void fichaDetalleEnUnaSentencia() {
+    for (Integer idLibro : idsLibros) {
+      LibroDetalle libro = consultas.buscarLibroPorId(idLibro).orElseThrow();
+      assertEquals(EJEMPLARES_POR_LIBRO, libro.ejemplares().size());
+    }
+
+    MetricaOperacion metrica = MetricasOperaciones.obtener("buscarLibroPorId");
+    assertEquals(idsLibros.size(), metrica.getInvocaciones());
+    assertEquals(1.0, metrica.getSentenciasPorInvocacion());
+    // Libro + autor + ejemplares, todos de la misma SELECT
+    assertEquals(2.0 + EJEMPLARES_POR_LIBRO, metrica.getEntidadesCargadasPorInvocacion());
+    assertEquals(0, metrica.getExcesosPresupuesto());
+  }
+
+  @Test
+  void fichaResumenEnUnaSentenciaSinEjemplares() {
+    for (Integer idLibro : idsLibros) {
+      LibroDetalle libro = consultas.buscarLibroPorId(idLibro, ConsultasBiblioteca.PlanCargaLibro.RESUMEN).orElseThrow();
+      assertNull(libro.ejemplares());
+    }
+
+    MetricaOperacion metrica = MetricasOperaciones.obtener("buscarLibroPorIdResumen");
+    assertEquals(1.0, metrica.getSentenciasPorInvocacion());
+    assertEquals(2.0, metrica.getEntidadesCargadasPorInvocacion());
+  }
+
+  @Test
+  void listadoDeAutoresEnUnaSentenciaPorPagina() {
+    int autores = 0;
+    String token = null;
+    do {
+      Pagina<AutorResumen> pagina = consultas.listarAutoresResumen(token, 2);
+      for (AutorResumen autor : pagina.elementos()) {
+        assertEquals(LIBROS_POR_AUTOR, autor.numeroLibros());
+      }
+      autores += pagina.elementos().size();
+      token = pagina.siguiente();
+    } while (token != null);
+
+    assertEquals(AUTORES, autores);
+    assertEquals(1.0, MetricasOperaciones.obtener("listarAutoresResumen").getSentenciasPorInvocacion());
+  }
+
+  @Test
+  void superarElPresupuestoHaceFallarLaOperacion() {
+    PresupuestoSentencias.definir("buscarLibroPorId", 0);
+
+    PresupuestoSentenciasExcedidoException exceso =
+      assertThrows(PresupuestoSentenciasExcedidoException.class, () -> consultas.buscarLibroPorId(idsLibros.get(0)));
+
+    assertEquals("buscarLibroPorId", exceso.getOperacion());
+    MetricaOperacion metrica = MetricasOperaciones.obtener("buscarLibroPorId");
+    assertEquals(1, metrica.getExcesosPresupuesto());
+    assertTrue(metrica.getErrores() > 0);
+  }
+
+  @Test
+  void lasEscriturasTambienFallanAlSuperarElPresupuesto() {
+    PresupuestoSentencias.definir("crearAutorConLibros", 0);
+
+    assertThrows(PresupuestoSentenciasExcedidoException.class,
+      () -> new GestionBiblioteca().crearAutorConLibros(CatalogoPrueba.autor("Excedido", 1, 1)));
+
+    // La transacción se deshizo
+    assertEquals(AUTORES, consultas.listarAutoresResumen(null, ConsultasBiblioteca.TAMANO_PAGINA_AUTORES).elementos().size());
+    assertEquals(1, MetricasOperaciones.obtener("crearAutorConLibros").getErrores());
+  }
+}
@@ -0,0 +1,82 @@
+package com.dam.gestion;
+
+import com.dam.dto.EjemplarResumen;
+import com.dam.gestion.MotorPrestamos.ResultadoPrestamo;
+import com.dam.modelo.Ejemplar.EstadoEjemplar;
+import com.dam.util.HibernateUtil;
+
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// Opción 5: los ejemplares de un estado se recorren con un cursor, en una sola sentencia y sin cargar entidades,
+// aunque haya más filas que un bloque del cursor
+class RecorridoEjemplaresTest {
+  // 4 libros de 300 ejemplares: más filas que un bloque (1000), así la sesión se limpia a mitad del recorrido
+  private static final int LIBROS = 4;
+  private static final int EJEMPLARES_POR_LIBRO = 300;
+  private static final int PRESTADOS = 3;
+
+  private final ConsultasBiblioteca consultas = new ConsultasBiblioteca();
+
+  @BeforeAll
+  static void crearCatalogo() {
+    new GestionBiblioteca().crearAutorConLibros(CatalogoPrueba.autor("C", LIBROS, EJEMPLARES_POR_LIBRO));
+    MotorPrestamos motor = new MotorPrestamos();
+    for (int i = 0; i < PRESTADOS; i++) {
+      assertEquals(ResultadoPrestamo.REALIZADO, motor.prestar("C-0-" + i));
+    }
+  }
+
+  @AfterAll
+  static void cerrar() {
+    HibernateUtil.shutdown();
+  }
+
+  @Test
+  void recorreLasFilasDelEstadoEnUnaSentenciaSinCargarEntidades() {
+    Statistics estadisticas = CatalogoPrueba.estadisticasLimpias();
+    List<EjemplarResumen> filas = new ArrayList<>();
+
+    long total = consultas.recorrerEjemplaresPorEstado(EstadoEjemplar.DISPONIBLE, filas::add);
+
+    assertEquals(LIBROS * EJEMPLARES_POR_LIBRO - PRESTADOS, total);
+    assertEquals(total, filas.size());
+    assertEquals(1, estadisticas.getPrepareStatementCount());
+    assertEquals(0, estadisticas.getEntityLoadCount());
+    for (EjemplarResumen fila : filas) {
+      assertEquals(EstadoEjemplar.DISPONIBLE, fila.estado());
+    }
+    // En orden de alta (por id), con el título del libro proyectado
+    assertEquals("C-0-" + PRESTADOS, filas.get(0).codigoEjemplar());
+    assertEquals("Título C 0", filas.get(0).tituloLibro());
+    assertEquals("C-" + (LIBROS - 1) + "-" + (EJEMPLARES_POR_LIBRO - 1), filas.get(filas.size() - 1).codigoEjemplar());
+
+    assertEquals(PRESTADOS, consultas.recorrerEjemplaresPorEstado(EstadoEjemplar.PRESTADO, fila -> { }));
+  }
+
+  @Test
+  void unErrorDelConsumidorDetieneElRecorrido() {
+    AtomicInteger entregadas = new AtomicInteger();
+    IllegalStateException error = new IllegalStateException("consumidor");
+
+    IllegalStateException recibido = assertThrows(IllegalStateException.class,
+      () -> consultas.recorrerEjemplaresPorEstado(EstadoEjemplar.DISPONIBLE, fila -> {
+        if (entregadas.incrementAndGet() == 10) {
+          throw error;
+        }
+      }));
+
+    assertSame(error, recibido);
+    assertEquals(10, entregadas.get());
+  }
+}
@@ -0,0 +1,171 @@
+package com.dam.gestion;
+
+import com.dam.dto.LibroDetalle;
+import com.dam.dto.Pagina;
+import com.dam.util.HibernateUtil;
+import com.dam.util.ReplicasLectura.EstadoReplica;
+
+import org.hibernate.Session;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+// Listados repartidos entre dos réplicas H2 en memoria. Cada réplica es una copia de la base de datos de pruebas
+// hecha con SCRIPT; "cerrarla" es hacer SHUTDOWN, y como su URL lleva IFEXISTS=TRUE el pool ya no puede conectar
+// hasta que la prueba la vuelve a crear.
+class ReplicasLecturaTest {
+  private static final String[] REPLICAS = {"replica1", "replica2"};
+  // Tiempo máximo para ver el cambio de estado de una réplica (la comprobación periódica es cada 5 s)
+  private static final long ESPERA_ESTADO_MS = 20_000;
+  private static final int LIBROS = 6;
+
+  private static final List<String> copia = new ArrayList<>();
+
+  private final ConsultasBiblioteca consultas = new ConsultasBiblioteca();
+
+  @BeforeAll
+  static void arrancarReplicas() throws SQLException {
+    // Cada clase de prueba tiene su JVM: la propiedad solo afecta a esta
+    System.setProperty(HibernateUtil.PROPIEDAD_REPLICAS, url(REPLICAS[0]) + ";IFEXISTS=TRUE," + url(REPLICAS[1]) + ";IFEXISTS=TRUE");
+    new GestionBiblioteca().crearAutorConLibros(CatalogoPrueba.autor("R", LIBROS, 1));
+
+    try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+      session.doWork(conexion -> {
+        try (Statement sentencia = conexion.createStatement(); ResultSet filas = sentencia.executeQuery("SCRIPT")) {
+          while (filas.next()) {
+            copia.add(filas.getString(1));
+          }
+        }
+      });
+    }
+  }
+
+  @AfterAll
+  static void cerrar() {
+    HibernateUtil.shutdown();
+  }
+
+  // Cada prueba empieza con las dos réplicas en marcha y ya comprobadas
+  @BeforeEach
+  void abrirReplicas() throws SQLException {
+    for (int i = 0; i < REPLICAS.length; i++) {
+      abrir(i);
+      esperar(i, EstadoReplica::sana);
+    }
+  }
+
+  @Test
+  void losListadosSeRepartenPorTurnosEntreLasReplicas() {
+    long[] antes = lecturas();
+
+    for (int i = 0; i < 10; i++) {
+      assertEquals(LIBROS, listar().elementos().size());
+    }
+
+    long[] despues = lecturas();
+    assertEquals(5, despues[0] - antes[0]);
+    assertEquals(5, despues[1] - antes[1]);
+  }
+
+  @Test
+  void unaReplicaCerradaSeMarcaCaidaYSusLecturasVanALaPrincipal() throws SQLException {
+    cerrarReplica(0);
+    esperar(0, replica -> !replica.sana());
+
+    long[] antes = lecturas();
+    for (int i = 0; i < 4; i++) {
+      assertEquals(LIBROS, listar().elementos().size());
+    }
+    long[] despues = lecturas();
+    assertEquals(0, despues[0] - antes[0]);
+    assertEquals(4, despues[1] - antes[1]);
+
+    // Sin ninguna réplica sana las lecturas van a la principal
+    cerrarReplica(1);
+    esperar(1, replica -> !replica.sana());
+    antes = lecturas();
+    Statistics principal = CatalogoPrueba.estadisticasLimpias();
+    assertEquals(LIBROS, listar().elementos().size());
+    assertEquals(1, principal.getPrepareStatementCount());
+    despues = lecturas();
+    assertEquals(antes[0], despues[0]);
+    assertEquals(antes[1], despues[1]);
+  }
+
+  @Test
+  void unaReplicaVuelveARecibirLecturasCuandoResponde() throws SQLException {
+    cerrarReplica(0);
+    esperar(0, replica -> !replica.sana());
+
+    abrir(0);
+    esperar(0, EstadoReplica::sana);
+    long antes = lecturas()[0];
+    for (int i = 0; i < 4; i++) {
+      listar();
+    }
+    assertEquals(2, lecturas()[0] - antes);
+  }
+
+  private Pagina<LibroDetalle> listar() {
+    return consultas.listarLibros(null, ConsultasBiblioteca.TAMANO_PAGINA_MAXIMO);
+  }
+
+  private static long[] lecturas() {
+    List<EstadoReplica> estado = HibernateUtil.getEstadoReplicas();
+    return new long[] {estado.get(0).lecturas(), estado.get(1).lecturas()};
+  }
+
+  private static void esperar(int replica, Predicate<EstadoReplica> condicion) {
+    long limite = System.currentTimeMillis() + ESPERA_ESTADO_MS;
+    while (!condicion.test(HibernateUtil.getEstadoReplicas().get(replica))) {
+      if (System.currentTimeMillis() > limite) {
+        fail("La réplica " + REPLICAS[replica] + " no ha cambiado de estado: " + HibernateUtil.getEstadoReplicas().get(replica));
+      }
+      try {
+        Thread.sleep(100);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        fail(e);
+      }
+    }
+  }
+
+  // Crea la réplica con la copia de la principal si no existe (una réplica en marcha se deja como está)
+  private static void abrir(int replica) throws SQLException {
+    try (Connection conexion = DriverManager.getConnection(url(REPLICAS[replica]), "sa", "");
+         Statement sentencia = conexion.createStatement()) {
+      ResultSet tablas = sentencia.executeQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'LIBROS'");
+      tablas.next();
+      if (tablas.getInt(1) == 0) {
+        for (String linea : copia) {
+          sentencia.execute(linea);
+        }
+      }
+    }
+  }
+
+  private static void cerrarReplica(int replica) throws SQLException {
+    try (Connection conexion = DriverManager.getConnection(url(REPLICAS[replica]), "sa", "");
+         Statement sentencia = conexion.createStatement()) {
+      sentencia.execute("SHUTDOWN");
+    }
+  }
+
+  private static String url(String nombre) {
+    return "jdbc:h2:mem:" + nombre + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+  }
+}